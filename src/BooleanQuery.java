@@ -0,0 +1,330 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A query combining words with AND, OR, NOT and parentheses. NOT binds tightest
+ * and OR loosest, and words next to each other without an operator are combined
+ * with OR like an ordinary query. Only a line with an uppercase AND, OR or NOT
+ * is a boolean query, and parentheses only group words within one. For example:
+ *
+ * <pre>
+ * (apple OR banana) AND NOT cherry
+ * </pre>
+ *
+ * A query is a tree of nodes. A word node matches the locations it was found in,
+ * and the other nodes combine the locations their children match. The results
+ * count the matches of every word that is not below a NOT, so locations only
+ * matched through a NOT have nothing to count and are left out.
+ *
+ * @see IndexSearcher#booleanSearch(BooleanQuery, boolean, int)
+ * @author Rugved Mavidipalli
+ */
+public class BooleanQuery {
+
+	/**
+	 * The kinds of node in a query.
+	 */
+	public enum Type {
+		/** Matches the locations a word was found in */
+		WORD,
+		/** Matches the locations every child matches */
+		AND,
+		/** Matches the locations any child matches */
+		OR,
+		/** Matches the locations its only child does not match */
+		NOT
+	}
+
+	/** Matches an operator, a parenthesis or a word */
+	private static final Pattern TOKEN = Pattern.compile("\\(|\\)|[^\\s()]+");
+
+	/** Finds the operators that make a line a boolean query */
+	private static final Pattern OPERATOR = Pattern.compile("(^|[\\s()])(AND|OR|NOT)($|[\\s()])");
+
+	/** The kind of node */
+	private final Type type;
+
+	/** The stemmed word of a word node, otherwise null */
+	private final String word;
+
+	/** The children of the node, empty for a word node */
+	private final List<BooleanQuery> children;
+
+	/**
+	 * Initializes a node.
+	 *
+	 * @param type     the kind of node
+	 * @param word     the stemmed word of a word node, otherwise null
+	 * @param children the children of the node
+	 */
+	private BooleanQuery(Type type, String word, List<BooleanQuery> children) {
+		this.type = type;
+		this.word = word;
+		this.children = Collections.unmodifiableList(children);
+	}
+
+	/**
+	 * Parses a query line. Returns null if the line has no operators, as it is
+	 * then an ordinary query even if it has parentheses.
+	 *
+	 * @param line the query line
+	 * @return the query, or null if the line is not a boolean query or has no words
+	 */
+	public static BooleanQuery parse(String line) {
+		if (!OPERATOR.matcher(line).find()) {
+			return null;
+		}
+		ArrayList<String> tokens = new ArrayList<String>();
+		Matcher matcher = TOKEN.matcher(line);
+		while (matcher.find()) {
+			tokens.add(matcher.group());
+		}
+		Parser parser = new Parser(tokens);
+		BooleanQuery query = null;
+		while (parser.hasNext()) {
+			// unmatched closing parentheses are skipped
+			BooleanQuery next = parser.or();
+			if (next != null) {
+				query = query == null ? next : combine(Type.OR, List.of(query, next));
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Returns the kind of node.
+	 *
+	 * @return the type
+	 */
+	public Type type() {
+		return type;
+	}
+
+	/**
+	 * Returns the stemmed word of a word node.
+	 *
+	 * @return the word, or null if not a word node
+	 */
+	public String word() {
+		return word;
+	}
+
+	/**
+	 * Returns the children of the node.
+	 *
+	 * @return the children, empty for a word node
+	 */
+	public List<BooleanQuery> children() {
+		return children;
+	}
+
+	/**
+	 * Returns every word of the query.
+	 *
+	 * @return the sorted words
+	 */
+	public TreeSet<String> words() {
+		TreeSet<String> words = new TreeSet<String>();
+		words(words, true);
+		return words;
+	}
+
+	/**
+	 * Returns the words whose matches are counted, which are the words not below a
+	 * NOT.
+	 *
+	 * @return the sorted words
+	 */
+	public TreeSet<String> counted() {
+		TreeSet<String> words = new TreeSet<String>();
+		words(words, false);
+		return words;
+	}
+
+	/**
+	 * Adds the words of the node and its children.
+	 *
+	 * @param words   the words found so far
+	 * @param negated whether to include the words below a NOT
+	 */
+	private void words(TreeSet<String> words, boolean negated) {
+		if (type == Type.WORD) {
+			words.add(word);
+		} else if (negated || type != Type.NOT) {
+			for (BooleanQuery child : children) {
+				child.words(words, negated);
+			}
+		}
+	}
+
+	/**
+	 * Returns the query with its words stemmed, used as the query of its results.
+	 */
+	@Override
+	public String toString() {
+		switch (type) {
+		case WORD:
+			return word;
+		case NOT:
+			return "NOT " + nested(children.get(0));
+		default:
+			StringBuilder text = new StringBuilder();
+			for (BooleanQuery child : children) {
+				if (text.length() > 0) {
+					text.append(' ').append(type.name()).append(' ');
+				}
+				text.append(type == Type.AND ? nested(child) : child.toString());
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * Returns a child as text, in parentheses if it combines other nodes.
+	 *
+	 * @param child the child
+	 * @return the text of the child
+	 */
+	private static String nested(BooleanQuery child) {
+		if (child.type == Type.AND || child.type == Type.OR) {
+			return "(" + child + ")";
+		}
+		return child.toString();
+	}
+
+	/**
+	 * Combines nodes, merging children of the same type into one node.
+	 *
+	 * @param type  AND or OR
+	 * @param nodes the nodes to combine
+	 * @return the combined node, or the only node
+	 */
+	private static BooleanQuery combine(Type type, List<BooleanQuery> nodes) {
+		if (nodes.size() == 1) {
+			return nodes.get(0);
+		}
+		ArrayList<BooleanQuery> children = new ArrayList<BooleanQuery>();
+		for (BooleanQuery node : nodes) {
+			if (node.type == type) {
+				children.addAll(node.children);
+			} else {
+				children.add(node);
+			}
+		}
+		return new BooleanQuery(type, null, children);
+	}
+
+	/**
+	 * Parses tokens by recursive descent. Every method returns null if it found no
+	 * words.
+	 */
+	private static class Parser {
+		private final List<String> tokens;
+		private final CachingStemmer stemmer;
+		private int next;
+
+		/**
+		 * Initializes a parser.
+		 *
+		 * @param tokens the tokens of the line
+		 */
+		public Parser(List<String> tokens) {
+			this.tokens = tokens;
+			this.stemmer = CachingStemmer.ENGLISH;
+			this.next = 0;
+		}
+
+		/**
+		 * Checks if there are tokens left.
+		 *
+		 * @return true if there are tokens left
+		 */
+		public boolean hasNext() {
+			return next < tokens.size();
+		}
+
+		/**
+		 * Parses terms joined by OR or by nothing, until a closing parenthesis or the
+		 * end of the line.
+		 *
+		 * @return the node parsed
+		 */
+		public BooleanQuery or() {
+			ArrayList<BooleanQuery> nodes = new ArrayList<BooleanQuery>();
+			while (hasNext()) {
+				String token = tokens.get(next);
+				if (token.equals(")")) {
+					next++;
+					break;
+				} else if (token.equals("OR") || token.equals("AND")) {
+					// an operator without a left side
+					next++;
+					continue;
+				}
+				BooleanQuery node = and();
+				if (node != null) {
+					nodes.add(node);
+				}
+				if (hasNext() && tokens.get(next).equals("OR")) {
+					next++;
+				}
+			}
+			return nodes.isEmpty() ? null : combine(Type.OR, nodes);
+		}
+
+		/**
+		 * Parses terms joined by AND.
+		 *
+		 * @return the node parsed
+		 */
+		private BooleanQuery and() {
+			ArrayList<BooleanQuery> nodes = new ArrayList<BooleanQuery>();
+			BooleanQuery node = not();
+			if (node != null) {
+				nodes.add(node);
+			}
+			while (hasNext() && tokens.get(next).equals("AND")) {
+				next++;
+				node = not();
+				if (node != null) {
+					nodes.add(node);
+				}
+			}
+			return nodes.isEmpty() ? null : combine(Type.AND, nodes);
+		}
+
+		/**
+		 * Parses a word, a group in parentheses or either after NOT.
+		 *
+		 * @return the node parsed
+		 */
+		private BooleanQuery not() {
+			if (!hasNext()) {
+				return null;
+			}
+			String token = tokens.get(next++);
+			if (token.equals("NOT")) {
+				BooleanQuery child = not();
+				return child == null ? null : new BooleanQuery(Type.NOT, null, List.of(child));
+			} else if (token.equals("(")) {
+				return or();
+			} else if (token.equals(")") || token.equals("AND") || token.equals("OR")) {
+				next--;
+				return null;
+			}
+			List<String> words = TextFileStemmer.stemLine(token, stemmer);
+			if (words.isEmpty()) {
+				return null;
+			}
+			ArrayList<BooleanQuery> nodes = new ArrayList<BooleanQuery>();
+			for (String word : words) {
+				nodes.add(new BooleanQuery(Type.WORD, word, Collections.emptyList()));
+			}
+			return combine(Type.OR, nodes);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Stems words with the English {@link SnowballStemmer} shared by every thread
+ * that parses, builds or searches. A stemmer keeps state between calls, so each
+ * thread stems with its own instance, created once rather than per file, page
+ * or query.
+ *
+ * The stems found are remembered in a bounded concurrent map, so the frequent
+ * words of a text skip the stemming algorithm after their first use. The map is
+ * kept as two generations: once the recent one is full it becomes the older
+ * one, and the words of the older one used again move back to the recent one.
+ * Words not used for a whole generation are dropped, which keeps the map bounded
+ * without ordering its entries under a lock.
+ *
+ * @see TextFileStemmer
+ * @author Rugved Mavidipalli
+ */
+public class CachingStemmer implements Stemmer {
+
+	/** The default number of words kept in each generation */
+	public static final int DEFAULT_CAPACITY = 100_000;
+
+	/** The stemmer shared by the parsers, builders and searches */
+	public static final CachingStemmer ENGLISH = new CachingStemmer(DEFAULT_CAPACITY);
+
+	/** The stemmer of each thread */
+	private static final ThreadLocal<SnowballStemmer> LOCAL = ThreadLocal
+			.withInitial(() -> new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH));
+
+	/** The most words kept in each generation */
+	private final int capacity;
+
+	/** The stems of the words used since the last rotation */
+	private volatile ConcurrentHashMap<String, String> recent;
+
+	/** The stems of the words used in the generation before */
+	private volatile ConcurrentHashMap<String, String> older;
+
+	/** Words found in either generation */
+	private final LongAdder hits;
+
+	/** Words that had to be stemmed */
+	private final LongAdder misses;
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param capacity the most words kept in each generation, at least 1
+	 */
+	public CachingStemmer(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Stem cache capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.recent = new ConcurrentHashMap<String, String>();
+		this.older = new ConcurrentHashMap<String, String>();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	@Override
+	public CharSequence stem(CharSequence word) {
+		return stem(word.toString());
+	}
+
+	/**
+	 * Returns the stem of a word, from the cache if it was stemmed recently.
+	 *
+	 * @param word the cleaned word
+	 * @return the stem
+	 */
+	public String stem(String word) {
+		String stem = recent.get(word);
+		if (stem != null) {
+			hits.increment();
+			return stem;
+		}
+		stem = older.get(word);
+		if (stem != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			stem = LOCAL.get().stem(word).toString();
+		}
+		ConcurrentHashMap<String, String> current = recent;
+		current.put(word, stem);
+		if (current.size() >= capacity) {
+			rotate(current);
+		}
+		return stem;
+	}
+
+	/**
+	 * Makes a full recent generation the older one, unless another thread has
+	 * already done so.
+	 *
+	 * @param full the generation found full
+	 */
+	private synchronized void rotate(ConcurrentHashMap<String, String> full) {
+		if (recent == full) {
+			older = full;
+			recent = new ConcurrentHashMap<String, String>();
+		}
+	}
+
+	/**
+	 * Returns the number of words found in the cache.
+	 *
+	 * @return number of hits
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of words that had to be stemmed.
+	 *
+	 * @return number of misses
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of words cached in both generations, counting a word
+	 * found in both once for each.
+	 *
+	 * @return number of words
+	 */
+	public int size() {
+		return recent.size() + older.size();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits %d, misses %d, size %d/%d", hits(), misses(), size(), 2 * capacity);
+	}
+}
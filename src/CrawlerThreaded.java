@@ -6,7 +6,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -40,7 +39,8 @@ public class CrawlerThreaded {
 	}
 
 	/**
-	 * Initiates a crawl give the seed url and limit.
+	 * Initiates a crawl give the seed url and limit. Seals the index once the crawl
+	 * is done.
 	 * 
 	 * @param seed  url to start the crawl from
 	 * @param limit limit on number of urls to be crawled
@@ -53,22 +53,27 @@ public class CrawlerThreaded {
 		completedUrls.add(seedUrl);
 		worker.execute(new TheCrawler(seedUrl, base, limit));
 		worker.finish();
+		index.seal();
 	}
 
 	/**
-	 * Cleans the given html, parses it and adds it to the inverted index
+	 * Cleans the given html, parses it and adds it to the inverted index. The words
+	 * are collected in a local index first so the shared index is only updated
+	 * once per page, replacing the words of the page if it was crawled before.
 	 * 
 	 * @param processedLink the link to be added into the inverted index
 	 * @param html          the html to be cleaned and parsed
 	 */
 	public void addLink(URL processedLink, String html) {
 		int position = 1;
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		CachingStemmer stemmer = CachingStemmer.ENGLISH;
 		String location = processedLink.toString();
 		String[] words = TextParser.parse(html);
+		InvertedIndex local = new InvertedIndex();
 		for (String word : words) {
-			index.add(stemmer.stem(word).toString(), location, position++);
+			local.add(stemmer.stem(word).toString(), location, position++);
 		}
+		index.replace(List.of(location), local);
 	}
 
 	/**
@@ -0,0 +1,326 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Assigns dense integer ids to locations and stores the total word count of
+ * each location. Everything else in the index refers to a location by its id,
+ * the location strings are only resolved when results are written out.
+ *
+ * A table can hand out read only snapshots of itself for readers that do not
+ * take a lock. The location of an id is never changed once assigned, so
+ * snapshots share the locations with the table. The ids of locations change as
+ * locations are deleted and added again, so snapshots copy them along with the
+ * word counts and deleted flags.
+ *
+ * Deleting a location marks its id as deleted, a tombstone that searches and
+ * output skip, and forgets the id so the location gets a new id if it is added
+ * again. The postings of a deleted id are left in place until they are purged,
+ * and the table keeps track of which deleted ids have not been purged yet.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class DocumentTable {
+
+	/** The initial capacity of the location and word count arrays */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Maps a location to its id */
+	private final HashMap<String, Integer> ids;
+
+	/** Location of each id */
+	private String[] locations;
+
+	/** Total word count of each id */
+	private int[] wordCounts;
+
+	/** Whether each id has been deleted */
+	private boolean[] deleted;
+
+	/** The number of deleted ids */
+	private int deletedCount;
+
+	/** Deleted ids whose postings have not been purged, null in a snapshot */
+	private final BitSet unpurged;
+
+	/** The number of ids in {@link #unpurged} */
+	private int unpurgedCount;
+
+	/** The number of ids assigned */
+	private int size;
+
+	/** The total word count of the ids not deleted */
+	private long totalWords;
+
+	/** Whether this is a read only snapshot */
+	private final boolean snapshot;
+
+	/**
+	 * Initializes an empty document table.
+	 */
+	public DocumentTable() {
+		this.ids = new HashMap<String, Integer>();
+		this.locations = new String[INITIAL_CAPACITY];
+		this.wordCounts = new int[INITIAL_CAPACITY];
+		this.deleted = new boolean[INITIAL_CAPACITY];
+		this.deletedCount = 0;
+		this.unpurged = new BitSet();
+		this.unpurgedCount = 0;
+		this.size = 0;
+		this.totalWords = 0;
+		this.snapshot = false;
+	}
+
+	/**
+	 * Initializes a read only snapshot of a table.
+	 *
+	 * @param table the table to take a snapshot of
+	 */
+	private DocumentTable(DocumentTable table) {
+		synchronized (table.ids) {
+			this.ids = new HashMap<String, Integer>(table.ids);
+		}
+		this.locations = table.locations;
+		this.wordCounts = Arrays.copyOf(table.wordCounts, table.size);
+		this.deleted = Arrays.copyOf(table.deleted, table.size);
+		this.deletedCount = table.deletedCount;
+		this.unpurged = null;
+		this.unpurgedCount = 0;
+		this.size = table.size;
+		this.totalWords = table.totalWords;
+		this.snapshot = true;
+	}
+
+	/**
+	 * Returns a read only snapshot of the table as it is now. Later changes to the
+	 * table do not show up in the snapshot. Must not be called while the table is
+	 * being changed.
+	 *
+	 * @return the snapshot
+	 */
+	public DocumentTable snapshot() {
+		return new DocumentTable(this);
+	}
+
+	/**
+	 * Returns the id of a location, assigning the next id if the location has not
+	 * been seen before.
+	 *
+	 * @param location the location to look up
+	 * @return the id of the location
+	 */
+	public int add(String location) {
+		checkWritable();
+		Integer id;
+		synchronized (ids) {
+			id = ids.get(location);
+		}
+		if (id != null) {
+			return id;
+		}
+		if (size == locations.length) {
+			locations = Arrays.copyOf(locations, size * 2);
+			wordCounts = Arrays.copyOf(wordCounts, size * 2);
+			deleted = Arrays.copyOf(deleted, size * 2);
+		}
+		locations[size] = location;
+		synchronized (ids) {
+			ids.put(location, size);
+		}
+		return size++;
+	}
+
+	/**
+	 * Returns the id of a location.
+	 *
+	 * @param location the location to look up
+	 * @return the id of the location or -1 if it has no id
+	 */
+	public int id(String location) {
+		Integer id;
+		synchronized (ids) {
+			id = ids.get(location);
+		}
+		return id == null || id >= size ? -1 : id;
+	}
+
+	/**
+	 * Returns the location of an id.
+	 *
+	 * @param id the id to look up
+	 * @return the location for the id
+	 */
+	public String location(int id) {
+		return locations[id];
+	}
+
+	/**
+	 * Returns the total word count of an id.
+	 *
+	 * @param id the id to look up
+	 * @return the word count for the id
+	 */
+	public int wordCount(int id) {
+		return wordCounts[id];
+	}
+
+	/**
+	 * Adds to the word count of an id.
+	 *
+	 * @param id    the id to update
+	 * @param count the number of words to add
+	 */
+	public void addWords(int id, int count) {
+		checkWritable();
+		wordCounts[id] += count;
+		if (!deleted[id]) {
+			totalWords += count;
+		}
+	}
+
+	/**
+	 * Deletes a location, marking its id as deleted and not yet purged.
+	 *
+	 * @param location the location to delete
+	 * @return the deleted id, or -1 if the location has no id
+	 */
+	public int delete(String location) {
+		checkWritable();
+		Integer id;
+		synchronized (ids) {
+			id = ids.remove(location);
+		}
+		if (id == null) {
+			return -1;
+		}
+		deleted[id] = true;
+		deletedCount++;
+		totalWords -= wordCounts[id];
+		unpurged.set(id);
+		unpurgedCount++;
+		return id;
+	}
+
+	/**
+	 * Checks if an id has been deleted.
+	 *
+	 * @param id the id to check
+	 * @return true if the id has been deleted
+	 */
+	public boolean isDeleted(int id) {
+		return deleted[id];
+	}
+
+	/**
+	 * Returns the number of deleted ids.
+	 *
+	 * @return number of deleted ids
+	 */
+	public int deletedCount() {
+		return deletedCount;
+	}
+
+	/**
+	 * Returns the deleted ids whose postings have not been purged yet.
+	 *
+	 * @return a copy of the ids
+	 */
+	public BitSet unpurged() {
+		checkWritable();
+		return (BitSet) unpurged.clone();
+	}
+
+	/**
+	 * Returns the number of deleted ids whose postings have not been purged yet.
+	 *
+	 * @return number of ids
+	 */
+	public int unpurgedCount() {
+		return unpurgedCount;
+	}
+
+	/**
+	 * Records that the postings of the given deleted ids have been purged.
+	 *
+	 * @param ids the purged ids
+	 */
+	public void purged(BitSet ids) {
+		checkWritable();
+		unpurged.andNot(ids);
+		unpurgedCount = unpurged.cardinality();
+	}
+
+	/**
+	 * Returns the number of ids assigned.
+	 *
+	 * @return number of locations
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of ids not deleted.
+	 *
+	 * @return number of live locations
+	 */
+	public int liveCount() {
+		return size - deletedCount;
+	}
+
+	/**
+	 * Returns the average word count of the ids not deleted. Kept up to date as
+	 * words are added and locations deleted, so it costs nothing to look up.
+	 *
+	 * @return the average word count, or 0 if there are no live locations
+	 */
+	public double averageWordCount() {
+		int live = liveCount();
+		return live == 0 ? 0 : (double) totalWords / live;
+	}
+
+	/**
+	 * Returns the rank of every id when the locations are sorted in natural string
+	 * order, which is the order locations are written out in.
+	 *
+	 * @return array mapping each id to its rank
+	 */
+	public int[] ranks() {
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> locations[a].compareTo(locations[b]));
+		int[] ranks = new int[size];
+		for (int i = 0; i < size; i++) {
+			ranks[order[i]] = i;
+		}
+		return ranks;
+	}
+
+	/**
+	 * Returns the word count of every location that has not been deleted sorted
+	 * by location.
+	 *
+	 * @return map of location to word count
+	 */
+	public TreeMap<String, Integer> asMap() {
+		TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+		for (int i = 0; i < size; i++) {
+			if (!deleted[i]) {
+				map.put(locations[i], wordCounts[i]);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Makes sure the table is not a snapshot before it is changed.
+	 */
+	private void checkWritable() {
+		if (snapshot) {
+			throw new IllegalStateException("Document table snapshots are read only.");
+		}
+	}
+}
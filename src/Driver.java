@@ -14,6 +14,10 @@ import java.nio.file.Paths;
  * @author Rugved Mavidipalli
  */
 public class Driver {
+
+	/** The number of results kept for each query when -top has no value */
+	public static final int DEFAULT_TOP = 10;
+
 	/**
 	 * Parses the command-line arguments to build and use an in-memory search engine
 	 * from files or the web.
@@ -39,16 +43,51 @@ public class Driver {
 					threads = 5;
 				}
 			}
-			ThreadSafeIndex threadIndex = new ThreadSafeIndex();
+			ThreadSafeIndex threadIndex;
+			if (argument.hasFlag("-segments") == true) {
+				threadIndex = new SegmentedIndex();
+			} else if (argument.hasFlag("-snapshot") == true) {
+				threadIndex = new SnapshotIndex();
+			} else if (argument.hasFlag("-stripes") == true) {
+				int stripes = Integer.parseInt(argument.getString("-stripes", String.valueOf(StripedIndex.DEFAULT_STRIPES)));
+				if (stripes < 1) {
+					stripes = StripedIndex.DEFAULT_STRIPES;
+				}
+				threadIndex = new StripedIndex(stripes);
+			} else if (argument.hasFlag("-lock") == true) {
+				String lock = argument.getString("-lock", "writers");
+				if (lock.equals("simple")) {
+					threadIndex = new ThreadSafeIndex(new ReadWriteLock());
+				} else if (lock.equals("readers")) {
+					threadIndex = new ThreadSafeIndex(
+							new PrioritizedReadWriteLock(PrioritizedReadWriteLock.Preference.READERS));
+				} else {
+					threadIndex = new ThreadSafeIndex();
+				}
+			} else {
+				threadIndex = new ThreadSafeIndex();
+			}
 			index = threadIndex;
+			scoring(argument, index);
+			if (argument.hasFlag("-load") == true) {
+				load(argument, index);
+			}
 			WorkQueue worker = new WorkQueue(threads);
-			query = new SearchResultThreaded(threadIndex, worker);
+			QueryCache cache = new QueryCache(threadIndex, capacity(argument));
+			query = new SearchResultThreaded(threadIndex, worker, limit(argument), cache);
 			CrawlerThreaded crawler = new CrawlerThreaded(threadIndex, worker);
-			WebServer website = new WebServer(threadIndex, crawler);
+			WebServer website = new WebServer(threadIndex, crawler, cache);
 			if (argument.hasFlag("-path") == true) {
 				Path path = argument.getPath("-path");
 				try {
-					InvertedIndexBuilderThread.addFiles(path, threadIndex, worker);
+					if (argument.hasFlag("-bulk") == true) {
+						InvertedIndexBuilderThread.addFilesBulk(path, threadIndex, threads);
+					} else {
+						InvertedIndexBuilderThread.addFiles(path, threadIndex, worker);
+					}
+					if (argument.hasFlag("-watch") == true) {
+						watch(path, threadIndex);
+					}
 				} catch (NullPointerException e) {
 					System.err.println("Please provide a value with the -path flag.");
 				}
@@ -62,12 +101,21 @@ public class Driver {
 					System.err.println("Invalid url" + argument.getString("-url") + "please provide a valid url");
 				}
 			}
+			if (argument.hasFlag("-save") == true) {
+				save(argument, index);
+			}
 			website.createSite(port);
 		} else {
 			/* Single threaded code */
 			index = new InvertedIndex();
-			query = new QueryParser(index);
-			if (argument.hasFlag("-path") == true) {
+			scoring(argument, index);
+			query = new QueryParser(index, limit(argument));
+			if (argument.hasFlag("-load") == true) {
+				load(argument, index);
+			}
+			if (argument.hasFlag("-path") == true && argument.hasFlag("-external") == true) {
+				external(argument, index);
+			} else if (argument.hasFlag("-path") == true) {
 				Path path = argument.getPath("-path");
 				try {
 					InvertedIndexBuilder.addFiles(path, index);
@@ -79,10 +127,17 @@ public class Driver {
 					System.err.println("Could not build index from path: " + path);
 				}
 			}
+			if (argument.hasFlag("-save") == true && argument.hasFlag("-external") == false) {
+				save(argument, index);
+			}
 		}
 		if (argument.hasFlag("-search") == true) {
 			try {
-				query.addQueryFile(argument.getPath("-search"), argument.hasFlag("-exact"));
+				if (argument.hasFlag("-fuzzy") == true) {
+					query.addFuzzyFile(argument.getPath("-search"), distance(argument));
+				} else {
+					query.addQueryFile(argument.getPath("-search"), argument.hasFlag("-exact"));
+				}
 			} catch (Exception e) {
 				System.err.println("Could not search from path: " + argument.getPath("-search"));
 			}
@@ -112,4 +167,166 @@ public class Driver {
 			}
 		}
 	}
+
+	/**
+	 * Loads the saved index given by the -load flag into the index.
+	 *
+	 * @param argument the parsed command-line arguments
+	 * @param index    the empty index to load into
+	 */
+	private static void load(ArgumentMap argument, InvertedIndex index) {
+		Path input = argument.getPath("-load", Paths.get("index-data"));
+		try {
+			index.load(input);
+		} catch (NoSuchFileException e) {
+			System.err.println("Could not find saved index: " + input);
+		} catch (IOException e) {
+			System.err.println("Unable to load index from: " + input);
+		}
+	}
+
+	/**
+	 * Returns the most results to keep for each query, given by the -top flag.
+	 *
+	 * @param argument the parsed command-line arguments
+	 * @return the number of results, or every result without the -top flag
+	 */
+	private static int limit(ArgumentMap argument) {
+		if (argument.hasFlag("-top") == false) {
+			return IndexSearcher.ALL;
+		}
+		try {
+			int limit = Integer.parseInt(argument.getString("-top", String.valueOf(DEFAULT_TOP)));
+			if (limit > 0) {
+				return limit;
+			}
+		} catch (NumberFormatException e) {
+			// falls through to the default
+		}
+		System.err.println("Invalid number of results: " + argument.getString("-top") + ", using " + DEFAULT_TOP);
+		return DEFAULT_TOP;
+	}
+
+	/**
+	 * Returns the most queries the result cache keeps, given by the -cache flag.
+	 *
+	 * @param argument the parsed command-line arguments
+	 * @return the capacity, or the default without a valid -cache flag
+	 */
+	private static int capacity(ArgumentMap argument) {
+		if (argument.hasFlag("-cache") == false) {
+			return QueryCache.DEFAULT_CAPACITY;
+		}
+		try {
+			int capacity = Integer.parseInt(argument.getString("-cache", String.valueOf(QueryCache.DEFAULT_CAPACITY)));
+			if (capacity > 0) {
+				return capacity;
+			}
+		} catch (NumberFormatException e) {
+			// falls through to the default
+		}
+		System.err.println("Invalid cache size: " + argument.getString("-cache") + ", using " + QueryCache.DEFAULT_CAPACITY);
+		return QueryCache.DEFAULT_CAPACITY;
+	}
+
+	/**
+	 * Returns the most edits allowed in a fuzzy search, given by the -fuzzy flag as
+	 * 1 or 2, or 1 if it has no value.
+	 *
+	 * @param argument the parsed command-line arguments
+	 * @return the edit distance
+	 */
+	private static int distance(ArgumentMap argument) {
+		try {
+			int distance = Integer.parseInt(argument.getString("-fuzzy", "1"));
+			if (distance > 0 && distance <= LevenshteinAutomaton.MAX_DISTANCE) {
+				return distance;
+			}
+		} catch (NumberFormatException e) {
+			// falls through to the default
+		}
+		System.err.println("Invalid edit distance: " + argument.getString("-fuzzy") + ", using 1");
+		return 1;
+	}
+
+	/**
+	 * Sets how search results are scored, given by the -score flag as count, bm25
+	 * or tfidf, or bm25 if it has no value. Results are scored by matches divided
+	 * by word count without it.
+	 *
+	 * @param argument the parsed command-line arguments
+	 * @param index    the index to search
+	 */
+	private static void scoring(ArgumentMap argument, InvertedIndex index) {
+		if (argument.hasFlag("-score") == false) {
+			return;
+		}
+		ScoringModel scoring = ScoringModel.forName(argument.getString("-score", "bm25"));
+		if (scoring == null) {
+			System.err.println("Invalid scoring model: " + argument.getString("-score") + ", using count");
+			scoring = ScoringModel.COUNT;
+		}
+		index.setScoring(scoring);
+	}
+
+	/**
+	 * Builds a saved index of the -path files on disk within the memory budget in
+	 * megabytes given by the -external flag, writing it to the directory given by
+	 * the -save flag, and then loads it into the empty index.
+	 *
+	 * @param argument the parsed command-line arguments
+	 * @param index    the empty index to load into
+	 */
+	private static void external(ArgumentMap argument, InvertedIndex index) {
+		Path path = argument.getPath("-path");
+		Path output = argument.getPath("-save", Paths.get("index-data"));
+		long budget = ExternalIndexBuilder.DEFAULT_BUDGET;
+		try {
+			if (argument.hasValue("-external") == true) {
+				budget = Long.parseLong(argument.getString("-external")) * 1024 * 1024;
+			}
+			ExternalIndexBuilder.build(path, output, budget);
+			index.load(output);
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid memory budget: " + argument.getString("-external"));
+		} catch (NullPointerException e) {
+			System.err.println("Please provide a value with the -path flag.");
+		} catch (NoSuchFileException e) {
+			System.err.println("Could not find path: " + path);
+		} catch (IllegalStateException e) {
+			System.err.println("Cannot build on disk into an index that is not empty.");
+		} catch (IOException e) {
+			System.err.println("Could not build index on disk from path: " + path);
+		}
+	}
+
+	/**
+	 * Starts keeping the index up to date with changes to the files under the
+	 * -path directory.
+	 *
+	 * @param path  the directory to watch
+	 * @param index the index to keep up to date
+	 */
+	private static void watch(Path path, ThreadSafeIndex index) {
+		try {
+			new IndexWatcher(path, index).start();
+		} catch (IOException e) {
+			System.err.println("Unable to watch path: " + path);
+		}
+	}
+
+	/**
+	 * Saves the index to the directory given by the -save flag.
+	 *
+	 * @param argument the parsed command-line arguments
+	 * @param index    the index to save
+	 */
+	private static void save(ArgumentMap argument, InvertedIndex index) {
+		Path output = argument.getPath("-save", Paths.get("index-data"));
+		try {
+			index.save(output);
+		} catch (IOException e) {
+			System.err.println("Unable to save index to: " + output);
+		}
+	}
 }
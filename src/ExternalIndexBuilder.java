@@ -0,0 +1,488 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a saved index from a directory of text files without holding the
+ * index in memory. Every (term, location, position) found is added to an
+ * in-memory run. Once the run uses up the memory budget, its terms are sorted
+ * and it is spilled to a temporary file. At the end the runs are merged k ways
+ * at a time, first into larger runs if there are more than {@link #FAN_IN} of
+ * them, and finally straight into the {@link IndexFile} format.
+ *
+ * Memory use is bounded by the budget plus one read buffer per merged run and
+ * the positions of a single term at a single location. Locations are written
+ * out as soon as their file has been read. The grams of the merged terms are
+ * kept within the same budget, which the runs no longer use by then, and are
+ * spilled and merged the same way by the {@link KGramTableWriter}.
+ *
+ * @see IndexFileWriter
+ * @author Rugved Mavidipalli
+ */
+public class ExternalIndexBuilder {
+
+	/** The default memory budget in bytes */
+	public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	/** The most runs merged at once */
+	public static final int FAN_IN = 64;
+
+	/** The estimated bytes used by a term in a run, not counting its characters */
+	private static final int TERM_OVERHEAD = 96;
+
+	/** The name of the temporary directory holding the runs */
+	private static final String RUNS = "runs.tmp";
+
+	/** Where the saved index is written */
+	private final IndexFileWriter output;
+
+	/** The directory holding the runs */
+	private final Path spill;
+
+	/** The memory budget in bytes */
+	private final long budget;
+
+	/** The location ids and positions of each term in the current run */
+	private HashMap<String, int[]> run;
+
+	/** The estimated bytes used by the current run */
+	private long used;
+
+	/** The runs spilled so far */
+	private final ArrayList<Path> runs;
+
+	/** The id the next location gets */
+	private int documents;
+
+	/**
+	 * Initializes a builder writing to the given directory.
+	 *
+	 * @param output the writer of the saved index
+	 * @param spill  the directory to spill runs to
+	 * @param budget the memory budget in bytes
+	 */
+	private ExternalIndexBuilder(IndexFileWriter output, Path spill, long budget) {
+		this.output = output;
+		this.spill = spill;
+		this.budget = budget;
+		this.run = new HashMap<String, int[]>();
+		this.used = 0;
+		this.runs = new ArrayList<Path>();
+		this.documents = 0;
+	}
+
+	/**
+	 * Builds a saved index of every text file found in the directory path.
+	 *
+	 * @param root      directory path to find text files
+	 * @param directory the directory to save the index to
+	 * @param budget    the memory budget in bytes
+	 * @throws IOException if unable to read a file or write the index
+	 */
+	public static void build(Path root, Path directory, long budget) throws IOException {
+		List<Path> filePaths = TextFileFinder.findTextFiles(root);
+		Path spill = Files.createDirectories(directory.resolve(RUNS));
+		try (IndexFileWriter output = new IndexFileWriter(directory, budget)) {
+			ExternalIndexBuilder builder = new ExternalIndexBuilder(output, spill, budget);
+			for (Path file : filePaths) {
+				builder.addFile(file);
+			}
+			builder.merge();
+			output.finish();
+		} finally {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(spill)) {
+				for (Path file : files) {
+					Files.deleteIfExists(file);
+				}
+			}
+			Files.deleteIfExists(spill);
+		}
+	}
+
+	/**
+	 * Reads and stems a file, adding every word to the current run and the
+	 * location to the saved index. Like the in-memory index, a file without words
+	 * does not get a location id.
+	 *
+	 * @param path the file to add
+	 * @throws IOException if unable to read the file or spill the run
+	 */
+	private void addFile(Path path) throws IOException {
+		int[] position = { 1 };
+		CachingStemmer stemmer = CachingStemmer.ENGLISH;
+		try {
+			TextFileReader.tokenize(path, word -> {
+				try {
+					add(stemmer.stem(word).toString(), documents, position[0]++);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		if (position[0] > 1) {
+			output.addDocument(path.toString(), position[0] - 1);
+			documents++;
+		}
+	}
+
+	/**
+	 * Adds a position to the current run, spilling it if the budget is used up.
+	 * Each array of the run holds its used length in the first slot followed by
+	 * location id and position pairs, which are added in increasing order.
+	 *
+	 * @param term     the stemmed word
+	 * @param document the location id
+	 * @param position the position of the word
+	 * @throws IOException if unable to spill the run
+	 */
+	private void add(String term, int document, int position) throws IOException {
+		int[] pairs = run.get(term);
+		if (pairs == null) {
+			pairs = new int[5];
+			pairs[0] = 1;
+			run.put(term, pairs);
+			used += TERM_OVERHEAD + 2L * term.length() + 4L * pairs.length;
+		} else if (pairs[0] + 2 > pairs.length) {
+			used += 4L * pairs.length;
+			pairs = Arrays.copyOf(pairs, pairs.length * 2);
+			run.put(term, pairs);
+		}
+		pairs[pairs[0]++] = document;
+		pairs[pairs[0]++] = position;
+		if (used >= budget) {
+			spill();
+		}
+	}
+
+	/**
+	 * Sorts the terms of the current run and writes it to a new run file.
+	 *
+	 * @throws IOException if unable to write the run
+	 */
+	private void spill() throws IOException {
+		if (run.isEmpty()) {
+			return;
+		}
+		ArrayList<String> terms = new ArrayList<String>(run.keySet());
+		Collections.sort(terms);
+		Path path = spill.resolve("run-" + runs.size());
+		try (RunWriter out = new RunWriter(path)) {
+			int[] positions = new int[16];
+			for (String term : terms) {
+				int[] pairs = run.get(term);
+				out.startTerm(term);
+				int count = 0;
+				for (int i = 1; i < pairs[0]; i += 2) {
+					if (count > 0 && pairs[i] != pairs[i - 2]) {
+						out.addPostings(pairs[i - 2], positions, count);
+						count = 0;
+					}
+					if (count == positions.length) {
+						positions = Arrays.copyOf(positions, count * 2);
+					}
+					positions[count++] = pairs[i + 1];
+				}
+				out.addPostings(pairs[pairs[0] - 2], positions, count);
+				out.endTerm();
+			}
+		}
+		runs.add(path);
+		run = new HashMap<String, int[]>();
+		used = 0;
+	}
+
+	/**
+	 * Spills the last run and merges all runs into the saved index, merging them
+	 * into larger runs first if there are too many to merge at once.
+	 *
+	 * @throws IOException if unable to read or write a run
+	 */
+	private void merge() throws IOException {
+		spill();
+		int generation = 0;
+		List<Path> remaining = new ArrayList<Path>(runs);
+		while (remaining.size() > FAN_IN) {
+			ArrayList<Path> merged = new ArrayList<Path>();
+			for (int i = 0; i < remaining.size(); i += FAN_IN) {
+				List<Path> group = remaining.subList(i, Math.min(remaining.size(), i + FAN_IN));
+				Path path = spill.resolve("run-" + generation + "-" + merged.size());
+				try (RunWriter out = new RunWriter(path)) {
+					merge(group, out);
+				}
+				for (Path done : group) {
+					Files.delete(done);
+				}
+				merged.add(path);
+			}
+			remaining = merged;
+			generation++;
+		}
+		merge(remaining, new PostingSink() {
+			@Override
+			public void startTerm(String term) {
+				output.startTerm(term);
+			}
+
+			@Override
+			public void addPostings(int document, int[] positions, int count) throws IOException {
+				output.addPostings(document, positions, count);
+			}
+
+			@Override
+			public void endTerm() throws IOException {
+				output.endTerm();
+			}
+		});
+	}
+
+	/**
+	 * Merges runs into a sink. Runs are written in location order, so when the
+	 * same term is found in several runs their postings are taken in run order,
+	 * joining the positions of a location that was split across two runs.
+	 *
+	 * @param paths the runs to merge, in the order they were written
+	 * @param sink  where the merged postings go
+	 * @throws IOException if unable to read a run or write the result
+	 */
+	private static void merge(List<Path> paths, PostingSink sink) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+		try {
+			for (int i = 0; i < paths.size(); i++) {
+				RunReader reader = new RunReader(paths.get(i), i);
+				if (reader.next()) {
+					queue.add(reader);
+				} else {
+					reader.close();
+				}
+			}
+			int[] positions = new int[16];
+			while (!queue.isEmpty()) {
+				String term = queue.peek().term;
+				sink.startTerm(term);
+				int document = -1;
+				int count = 0;
+				while (!queue.isEmpty() && queue.peek().term.equals(term)) {
+					RunReader reader = queue.poll();
+					int next;
+					while ((next = reader.nextDocument()) >= 0) {
+						if (next != document && count > 0) {
+							sink.addPostings(document, positions, count);
+							count = 0;
+						}
+						document = next;
+						positions = reader.readPositions(positions, count);
+						count += reader.positions;
+					}
+					if (reader.next()) {
+						queue.add(reader);
+					} else {
+						reader.close();
+					}
+				}
+				sink.addPostings(document, positions, count);
+				sink.endTerm();
+			}
+		} finally {
+			for (RunReader reader : queue) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Receives postings one term at a time in sorted term and location order.
+	 */
+	private interface PostingSink {
+
+		/**
+		 * Starts the postings of a term.
+		 *
+		 * @param term the term
+		 * @throws IOException if unable to write
+		 */
+		public void startTerm(String term) throws IOException;
+
+		/**
+		 * Adds the positions of the current term at a location.
+		 *
+		 * @param document  the location id
+		 * @param positions the sorted positions, only the first count are used
+		 * @param count     the number of positions
+		 * @throws IOException if unable to write
+		 */
+		public void addPostings(int document, int[] positions, int count) throws IOException;
+
+		/**
+		 * Ends the postings of the current term.
+		 *
+		 * @throws IOException if unable to write
+		 */
+		public void endTerm() throws IOException;
+	}
+
+	/**
+	 * Writes a run file. Each term is written as its UTF-8 length and bytes,
+	 * followed by one group per location holding the location id delta plus one,
+	 * the number of positions and the position deltas, all as variable length
+	 * integers, and ended by a zero.
+	 */
+	private static class RunWriter implements PostingSink, Closeable {
+		private final DataOutputStream out;
+		private final byte[] buffer;
+		private int previous;
+
+		public RunWriter(Path path) throws IOException {
+			this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+			this.buffer = new byte[5];
+		}
+
+		@Override
+		public void startTerm(String term) throws IOException {
+			byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			previous = -1;
+		}
+
+		@Override
+		public void addPostings(int document, int[] positions, int count) throws IOException {
+			write(document - previous);
+			write(count);
+			int last = 0;
+			for (int i = 0; i < count; i++) {
+				write(positions[i] - last);
+				last = positions[i];
+			}
+			previous = document;
+		}
+
+		@Override
+		public void endTerm() throws IOException {
+			write(0);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+		private void write(int value) throws IOException {
+			out.write(buffer, 0, PostingList.writeVarInt(value, buffer, 0));
+		}
+	}
+
+	/**
+	 * Reads a run file one term at a time. Readers order by their current term and
+	 * then by the order of their runs.
+	 */
+	private static class RunReader implements Comparable<RunReader>, Closeable {
+		private final DataInputStream in;
+		private final int order;
+		private String term;
+		private int document;
+		private int positions;
+
+		public RunReader(Path path, int order) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+			this.order = order;
+		}
+
+		/**
+		 * Moves to the next term.
+		 *
+		 * @return false if there are no more terms
+		 * @throws IOException if unable to read
+		 */
+		public boolean next() throws IOException {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			term = new String(bytes, StandardCharsets.UTF_8);
+			document = -1;
+			return true;
+		}
+
+		/**
+		 * Moves to the next location of the current term and reads its number of
+		 * positions.
+		 *
+		 * @return the location id, or -1 at the end of the term
+		 * @throws IOException if unable to read
+		 */
+		public int nextDocument() throws IOException {
+			int delta = read();
+			if (delta == 0) {
+				return -1;
+			}
+			document += delta;
+			positions = read();
+			return document;
+		}
+
+		/**
+		 * Reads the positions of the current location into an array, growing it if
+		 * necessary.
+		 *
+		 * @param into  the array to read into
+		 * @param start the index to start writing at
+		 * @return the array holding the positions
+		 * @throws IOException if unable to read
+		 */
+		public int[] readPositions(int[] into, int start) throws IOException {
+			if (start + positions > into.length) {
+				into = Arrays.copyOf(into, Math.max(into.length * 2, start + positions));
+			}
+			int last = 0;
+			for (int i = 0; i < positions; i++) {
+				last += read();
+				into[start + i] = last;
+			}
+			return into;
+		}
+
+		@Override
+		public int compareTo(RunReader other) {
+			int compare = term.compareTo(other.term);
+			return compare != 0 ? compare : Integer.compare(order, other.order);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		private int read() throws IOException {
+			int value = 0;
+			int shift = 0;
+			int current;
+			do {
+				current = in.readUnsignedByte();
+				value |= (current & 0x7F) << shift;
+				shift += 7;
+			} while ((current & 0x80) != 0);
+			return value;
+		}
+	}
+}
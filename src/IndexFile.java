@@ -0,0 +1,178 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the binary on-disk index format. A saved index is a
+ * directory with four files, each starting with {@link #MAGIC} and
+ * {@link #VERSION}:
+ *
+ * <ul>
+ * <li>{@value #TERMS}: the number of terms, a table of entry offsets, then one
+ * entry per term in sorted order holding the UTF-8 term, the offset of its
+ * postings and its number of locations</li>
+ * <li>{@value #POSTINGS}: for each location of a term, the varint location id
+ * delta, position count, encoded length and the delta/varint encoded
+ * positions</li>
+ * <li>{@value #DOCUMENTS}: the number of locations, then the word count and
+ * UTF-8 location of each id</li>
+ * <li>{@value #GRAMS}: the k-gram index of the term dictionary in the layout of
+ * {@link KGramTable}. Indexes saved before it was added still load, and search
+ * wildcard patterns by scanning terms instead</li>
+ * </ul>
+ *
+ * The term, postings and gram files are read through {@link MappedSegment} and
+ * all four are written through {@link IndexFileWriter}.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class IndexFile {
+
+	/** Identifies an index file */
+	public static final int MAGIC = 0x53454958;
+
+	/** The version of the format written */
+	public static final int VERSION = 1;
+
+	/** The term dictionary file name */
+	public static final String TERMS = "terms.idx";
+
+	/** The postings file name */
+	public static final String POSTINGS = "postings.idx";
+
+	/** The document table file name */
+	public static final String DOCUMENTS = "documents.idx";
+
+	/** The k-gram index file name */
+	public static final String GRAMS = "grams.idx";
+
+	/** The number of bytes in a file header */
+	public static final int HEADER = 8;
+
+	/**
+	 * Writes the index to the given directory, creating it if necessary. Deleted
+	 * locations are left out and the remaining locations are given consecutive
+	 * ids in the saved index.
+	 *
+	 * @param index     the terms and postings to write
+	 * @param documents the location ids used by the postings
+	 * @param directory the directory to write to
+	 * @throws IOException if unable to write the files
+	 */
+	public static void write(TreeMap<String, TermPostings> index, DocumentTable documents, Path directory)
+			throws IOException {
+		int[] ids = new int[documents.size()];
+		try (IndexFileWriter out = new IndexFileWriter(directory)) {
+			int next = 0;
+			for (int i = 0; i < documents.size(); i++) {
+				if (documents.isDeleted(i)) {
+					ids[i] = -1;
+				} else {
+					ids[i] = next++;
+					out.addDocument(documents.location(i), documents.wordCount(i));
+				}
+			}
+			for (Entry<String, TermPostings> entry : index.entrySet()) {
+				TermPostings term = entry.getValue();
+				boolean started = false;
+				for (int j = 0; j < term.size(); j++) {
+					if (ids[term.document(j)] < 0) {
+						continue;
+					}
+					if (!started) {
+						out.startTerm(entry.getKey());
+						started = true;
+					}
+					int[] positions = term.positions(j).toArray();
+					out.addPostings(ids[term.document(j)], positions, positions.length);
+				}
+				if (started) {
+					out.endTerm();
+				}
+			}
+			out.finish();
+		}
+	}
+
+	/**
+	 * Reads the document table of a saved index into the given table.
+	 *
+	 * @param directory the directory of the saved index
+	 * @param documents the table to add the locations to
+	 * @throws IOException if unable to read the file or the format is not supported
+	 */
+	public static void readDocuments(Path directory, DocumentTable documents) throws IOException {
+		Path path = directory.resolve(DOCUMENTS);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			checkHeader(in.readInt(), in.readInt(), path);
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				int wordCount = in.readInt();
+				byte[] location = new byte[in.readInt()];
+				in.readFully(location);
+				int id = documents.add(new String(location, StandardCharsets.UTF_8));
+				documents.addWords(id, wordCount);
+			}
+		}
+	}
+
+	/**
+	 * Checks the magic number and version read from the start of a file.
+	 *
+	 * @param magic   the magic number read
+	 * @param version the version read
+	 * @param path    the file read from
+	 * @throws IOException if the file is not an index file of a supported version
+	 */
+	public static void checkHeader(int magic, int version, Path path) throws IOException {
+		if (magic != MAGIC) {
+			throw new IOException("Not an index file: " + path);
+		}
+		if (version != VERSION) {
+			throw new IOException("Unsupported index version " + version + ": " + path);
+		}
+	}
+
+	/**
+	 * Reads a variable length integer from a buffer without changing its position.
+	 *
+	 * @param buffer the buffer to read from
+	 * @param offset single element array holding the offset to read at, which is
+	 *               advanced past the value
+	 * @return the value read
+	 * @see PostingList#writeVarInt(int, byte[], int)
+	 */
+	public static int readVarInt(ByteBuffer buffer, int[] offset) {
+		int value = 0;
+		int shift = 0;
+		byte current;
+		do {
+			current = buffer.get(offset[0]++);
+			value |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Opens a file for writing and writes the header.
+	 *
+	 * @param path the file to open
+	 * @return the output stream positioned after the header
+	 * @throws IOException if unable to open the file
+	 */
+	public static DataOutputStream open(Path path) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		return out;
+	}
+}
@@ -0,0 +1,300 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes a saved index in the {@link IndexFile} format one term at a time, so an
+ * index can be written without holding all of it in memory. Terms must be
+ * written in sorted order and the locations of a term in increasing id order.
+ *
+ * The term dictionary and document table start with a count that is only known
+ * at the end, so their entries are written to temporary files in the target
+ * directory first and copied behind the count by {@link #finish()}. The grams
+ * of the terms are collected by a {@link KGramTableWriter}, which spills them to
+ * temporary files too once they use up the memory budget.
+ *
+ * <pre>
+ * try (IndexFileWriter out = new IndexFileWriter(directory)) {
+ * 	out.addDocument(location, wordCount);
+ * 	out.startTerm(term);
+ * 	out.addPostings(document, positions, count);
+ * 	out.endTerm();
+ * 	out.finish();
+ * }
+ * </pre>
+ *
+ * @see IndexFile
+ * @author Rugved Mavidipalli
+ */
+public class IndexFileWriter implements Closeable {
+
+	/** The suffix of the temporary files */
+	private static final String TEMPORARY = ".tmp";
+
+	/** The directory written to */
+	private final Path directory;
+
+	/** The postings file */
+	private final DataOutputStream postings;
+
+	/** The term entries, without the count and offset table */
+	private final DataOutputStream entries;
+
+	/** The offset of each term entry relative to the first entry */
+	private final DataOutputStream offsets;
+
+	/** The document entries, without the count */
+	private final DataOutputStream documents;
+
+	/** The grams of the terms written */
+	private final KGramTableWriter grams;
+
+	/** Scratch space for one variable length integer */
+	private final byte[] buffer;
+
+	/** The number of terms written */
+	private int termCount;
+
+	/** The number of locations written */
+	private int documentCount;
+
+	/** The size of the term entries written */
+	private long entrySize;
+
+	/** The size of the postings file so far, including its header */
+	private long postingSize;
+
+	/** The term being written, or null */
+	private byte[] term;
+
+	/** The term being written as text */
+	private String text;
+
+	/** Where the postings of the current term start */
+	private long termStart;
+
+	/** The number of locations of the current term */
+	private int termDocuments;
+
+	/** The previous location id of the current term */
+	private int previous;
+
+	/** Whether {@link #finish()} has been called */
+	private boolean finished;
+
+	/**
+	 * Creates the directory if necessary and opens the files of a new saved index,
+	 * keeping the grams of up to {@link ExternalIndexBuilder#DEFAULT_BUDGET} bytes
+	 * of terms in memory.
+	 *
+	 * @param directory the directory to write to
+	 * @throws IOException if unable to create the files
+	 */
+	public IndexFileWriter(Path directory) throws IOException {
+		this(directory, ExternalIndexBuilder.DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Creates the directory if necessary and opens the files of a new saved index.
+	 *
+	 * @param directory the directory to write to
+	 * @param budget    the memory budget in bytes of the grams of the terms, which
+	 *                  are spilled to temporary files beyond it
+	 * @throws IOException if unable to create the files
+	 */
+	public IndexFileWriter(Path directory, long budget) throws IOException {
+		Files.createDirectories(directory);
+		this.directory = directory;
+		this.postings = IndexFile.open(directory.resolve(IndexFile.POSTINGS));
+		this.entries = IndexFile.open(temporary(IndexFile.TERMS));
+		this.offsets = IndexFile.open(temporary(IndexFile.TERMS + ".offsets"));
+		this.documents = IndexFile.open(temporary(IndexFile.DOCUMENTS));
+		this.grams = new KGramTableWriter(directory, budget);
+		this.buffer = new byte[5];
+		this.termCount = 0;
+		this.documentCount = 0;
+		this.entrySize = 0;
+		this.postingSize = IndexFile.HEADER;
+		this.term = null;
+		this.finished = false;
+	}
+
+	/**
+	 * Adds the next location. Locations get ids in the order they are added.
+	 *
+	 * @param location  the location
+	 * @param wordCount the number of words at the location
+	 * @throws IOException if unable to write
+	 */
+	public void addDocument(String location, int wordCount) throws IOException {
+		byte[] bytes = location.getBytes(StandardCharsets.UTF_8);
+		documents.writeInt(wordCount);
+		documents.writeInt(bytes.length);
+		documents.write(bytes);
+		documentCount++;
+	}
+
+	/**
+	 * Starts the postings of a term. Must be greater than the previous term.
+	 *
+	 * @param term the term
+	 */
+	public void startTerm(String term) {
+		this.text = term;
+		this.term = term.getBytes(StandardCharsets.UTF_8);
+		this.termStart = postingSize;
+		this.termDocuments = 0;
+		this.previous = 0;
+	}
+
+	/**
+	 * Adds the positions of the current term at a location. Must be called with
+	 * increasing location ids.
+	 *
+	 * @param document  the location id
+	 * @param positions the sorted positions, only the first count are used
+	 * @param count     the number of positions
+	 * @throws IOException if unable to write
+	 */
+	public void addPostings(int document, int[] positions, int count) throws IOException {
+		byte[] encoded = PostingList.encode(positions, count);
+		write(document - previous);
+		write(count);
+		write(encoded.length);
+		postings.write(encoded);
+		postingSize += encoded.length;
+		previous = document;
+		termDocuments++;
+	}
+
+	/**
+	 * Ends the postings of the current term and writes its dictionary entry.
+	 *
+	 * @throws IOException if unable to write or the index is larger than the
+	 *                     format supports
+	 */
+	public void endTerm() throws IOException {
+		if (postingSize >= Integer.MAX_VALUE) {
+			throw new IOException("Postings file is larger than the format supports.");
+		}
+		offsets.writeInt((int) entrySize);
+		entries.writeInt(term.length);
+		entries.write(term);
+		entries.writeLong(termStart);
+		entries.writeInt(termDocuments);
+		entrySize += 4 + term.length + 8 + 4;
+		grams.add(text);
+		termCount++;
+		term = null;
+	}
+
+	/**
+	 * Writes the term dictionary and document table behind their counts, writes
+	 * the k-gram index of the terms and removes the temporary files.
+	 *
+	 * @throws IOException if unable to write or the index is larger than the
+	 *                     format supports
+	 */
+	public void finish() throws IOException {
+		postings.close();
+		entries.close();
+		offsets.close();
+		documents.close();
+
+		long base = IndexFile.HEADER + 4 + 4L * termCount;
+		if (base + entrySize >= Integer.MAX_VALUE) {
+			throw new IOException("Term dictionary is larger than the format supports.");
+		}
+		try (DataOutputStream out = IndexFile.open(directory.resolve(IndexFile.TERMS));
+				DataInputStream in = input(temporary(IndexFile.TERMS + ".offsets"))) {
+			out.writeInt(termCount);
+			for (int i = 0; i < termCount; i++) {
+				out.writeInt((int) base + in.readInt());
+			}
+			copy(temporary(IndexFile.TERMS), out);
+		}
+		try (DataOutputStream out = IndexFile.open(directory.resolve(IndexFile.DOCUMENTS))) {
+			out.writeInt(documentCount);
+			copy(temporary(IndexFile.DOCUMENTS), out);
+		}
+		grams.write(directory.resolve(IndexFile.GRAMS));
+		finished = true;
+		close();
+	}
+
+	/**
+	 * Closes the files and removes the temporary files. If {@link #finish()} was
+	 * not called the saved index is incomplete.
+	 *
+	 * @throws IOException if unable to close or remove the files
+	 */
+	@Override
+	public void close() throws IOException {
+		postings.close();
+		entries.close();
+		offsets.close();
+		documents.close();
+		Files.deleteIfExists(temporary(IndexFile.TERMS));
+		Files.deleteIfExists(temporary(IndexFile.TERMS + ".offsets"));
+		Files.deleteIfExists(temporary(IndexFile.DOCUMENTS));
+		grams.close();
+		if (!finished) {
+			Files.deleteIfExists(directory.resolve(IndexFile.POSTINGS));
+		}
+	}
+
+	/**
+	 * Writes a variable length integer to the postings.
+	 *
+	 * @param value the value to write
+	 * @throws IOException if unable to write
+	 */
+	private void write(int value) throws IOException {
+		int length = PostingList.writeVarInt(value, buffer, 0);
+		postings.write(buffer, 0, length);
+		postingSize += length;
+	}
+
+	/**
+	 * Returns the path of a temporary file.
+	 *
+	 * @param name the name of the file it is for
+	 * @return the temporary path
+	 */
+	private Path temporary(String name) {
+		return directory.resolve(name + TEMPORARY);
+	}
+
+	/**
+	 * Opens a temporary file for reading, skipping its header.
+	 *
+	 * @param path the file to open
+	 * @return the input stream
+	 * @throws IOException if unable to open the file
+	 */
+	private static DataInputStream input(Path path) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+		in.readInt();
+		in.readInt();
+		return in;
+	}
+
+	/**
+	 * Copies a temporary file without its header to an output stream.
+	 *
+	 * @param path the file to copy
+	 * @param out  the stream to copy to
+	 * @throws IOException if unable to copy
+	 */
+	private static void copy(Path path, DataOutputStream out) throws IOException {
+		try (InputStream in = input(path)) {
+			in.transferTo(out);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ * A multi-reader single-writer lock used to guard an index. Neither lock is
+ * reentrant: a thread holding a lock must not try to take it again.
+ *
+ * @author Rugved Mavidipalli
+ * @see ReadWriteLock
+ * @see PrioritizedReadWriteLock
+ */
+public interface IndexLock {
+
+	/**
+	 * Waits until reads are allowed and then acquires the read lock. If the thread
+	 * is interrupted while waiting it keeps waiting, and returns with its
+	 * interrupted status set.
+	 */
+	public void lockReadOnly();
+
+	/**
+	 * Releases the read lock.
+	 */
+	public void unlockReadOnly();
+
+	/**
+	 * Waits until there are no other readers or writers and then acquires the
+	 * write lock. If the thread is interrupted while waiting it keeps waiting, and
+	 * returns with its interrupted status set.
+	 */
+	public void lockReadWrite();
+
+	/**
+	 * Releases the write lock.
+	 */
+	public void unlockReadWrite();
+
+	/**
+	 * Returns the wait and hold time metrics of the lock.
+	 *
+	 * @return the metrics
+	 */
+	public LockMetrics metrics();
+}
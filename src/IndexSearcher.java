@@ -0,0 +1,932 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Searches a list of {@link IndexSegment} sharing one {@link DocumentTable}.
+ * Results for the same location found in different segments are combined, and
+ * locations deleted from the table are skipped. Matches are counted in the
+ * {@link ScoreAccumulator} of the searching thread, and results are only
+ * created for the locations returned. Results are scored and sorted by a
+ * {@link ScoringModel}, which weighs each query word once per search by the
+ * number of locations it was found in.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class IndexSearcher {
+
+	/** The number of results to ask for to get every result */
+	public static final int ALL = Integer.MAX_VALUE;
+
+	/** The segments to search */
+	private final List<? extends IndexSegment> segments;
+
+	/** The table the location ids of the segments refer to */
+	private final DocumentTable documents;
+
+	/** How results are scored */
+	private final ScoringModel scoring;
+
+	/** Whether word scores are added up, which the count model does not need */
+	private final boolean scored;
+
+	/**
+	 * Initializes a searcher over the given segments that scores results by
+	 * matches divided by word count.
+	 *
+	 * @param segments  the segments to search
+	 * @param documents the table the location ids of the segments refer to
+	 */
+	public IndexSearcher(List<? extends IndexSegment> segments, DocumentTable documents) {
+		this(segments, documents, ScoringModel.COUNT);
+	}
+
+	/**
+	 * Initializes a searcher over the given segments.
+	 *
+	 * @param segments  the segments to search
+	 * @param documents the table the location ids of the segments refer to
+	 * @param scoring   how results are scored
+	 */
+	public IndexSearcher(List<? extends IndexSegment> segments, DocumentTable documents, ScoringModel scoring) {
+		this.segments = segments;
+		this.documents = documents;
+		this.scoring = scoring;
+		this.scored = !(scoring instanceof ScoringModel.Count);
+	}
+
+	/**
+	 * Checks if word exists in any segment
+	 *
+	 * @param word word to check
+	 * @return True if words exists else false
+	 */
+	public boolean contains(String word) {
+		for (IndexSegment segment : segments) {
+			TermPostings postings = segment.postings(word);
+			if (postings != null) {
+				for (int i = 0; i < postings.size(); i++) {
+					if (!documents.isDeleted(postings.document(i))) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a word was found in a location in any segment
+	 *
+	 * @param word word to check
+	 * @param file location to check
+	 * @return True if word and file exist else false
+	 */
+	public boolean contains(String word, String file) {
+		int document = documents.id(file);
+		if (document >= 0) {
+			for (IndexSegment segment : segments) {
+				TermPostings postings = segment.postings(word);
+				if (postings != null && postings.get(document) != null) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a word was found at a position of a location in any segment
+	 *
+	 * @param word     word to check
+	 * @param file     location to check
+	 * @param position postion to check
+	 * @return True if exist else false
+	 */
+	public boolean contains(String word, String file, int position) {
+		int document = documents.id(file);
+		if (document >= 0) {
+			for (IndexSegment segment : segments) {
+				TermPostings postings = segment.postings(word);
+				if (postings != null && postings.get(document) != null && postings.get(document).contains(position)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Takes the query words and finds all the words that match exactly and returns
+	 * the results
+	 *
+	 * @param queryWords stemmed words from a single query line
+	 * @return Arraylist of results
+	 */
+	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords) {
+		return exactSearch(queryWords, ALL);
+	}
+
+	/**
+	 * Takes the query words and returns the best k results for the words that
+	 * match exactly, in the order of {@link SearchResult#compareTo(SearchResult)}.
+	 * A query word with a {@link KGramIndex#WILDCARD} matches every word matching
+	 * the pattern.
+	 *
+	 * @param queryWords stemmed words from a single query line
+	 * @param k          the most results to return
+	 * @return Arraylist of at most k results
+	 */
+	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords, int k) {
+		return search(queryWords, true, 0, k);
+	}
+
+	/**
+	 * Takes the query words and returns all the partial search results
+	 *
+	 * @param queryWords the query words from a single line to search for
+	 * @return parital search results Arraylist<SearchResult>
+	 */
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords) {
+		return partialSearch(queryWords, ALL);
+	}
+
+	/**
+	 * Takes the query words and returns the best k partial search results, in the
+	 * order of {@link SearchResult#compareTo(SearchResult)}.
+	 *
+	 * @param queryWords the query words from a single line to search for
+	 * @param k          the most results to return
+	 * @return parital search results Arraylist<SearchResult> of at most k results
+	 */
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords, int k) {
+		return search(queryWords, false, 0, k);
+	}
+
+	/**
+	 * Returns the best k results for the words within an edit distance of the query
+	 * words, in the order of {@link SearchResult#compareTo(SearchResult)}. The
+	 * words are found with a {@link LevenshteinAutomaton} over the term dictionary
+	 * of each segment.
+	 *
+	 * @param queryWords the query words from a single line to search for
+	 * @param distance   the most edits allowed, 1 or 2
+	 * @param k          the most results to return
+	 * @return Arraylist of at most k results
+	 */
+	public ArrayList<SearchResult> fuzzySearch(TreeSet<String> queryWords, int distance, int k) {
+		return search(queryWords, true, distance, k);
+	}
+
+	/**
+	 * Returns the best k results for the query words. When only some of the results
+	 * are asked for and the postings are long, the locations that cannot make it
+	 * into them are skipped with {@link #prune(List, double[], int)}, and otherwise
+	 * the matches of every word are counted.
+	 *
+	 * Pruning visits locations one at a time, which costs more per posting than
+	 * counting, so it is only used once the postings add up to as many as there
+	 * are locations. It is not used with the count model, as a word found often in
+	 * one short location gives every location of the word too high a bound to skip
+	 * any.
+	 *
+	 * @param queryWords the query words from a single line to search for
+	 * @param exact      whether words must match exactly rather than by prefix
+	 * @param distance   the most edits allowed, or 0 to not search fuzzily
+	 * @param k          the most results to return
+	 * @return Arraylist of at most k results
+	 */
+	private ArrayList<SearchResult> search(TreeSet<String> queryWords, boolean exact, int distance, int k) {
+		ArrayList<TermPostings> lists = new ArrayList<TermPostings>();
+		double[] weights = new double[0];
+		long found = 0;
+		for (String word : queryWords) {
+			boolean fuzzy = distance > 0 && !KGramIndex.isPattern(word);
+			ArrayList<TermPostings> postings = fuzzy ? fuzzy(word, distance) : postings(word, exact);
+			double[] weight = weights(postings, !fuzzy && exact && !KGramIndex.isPattern(word));
+			weights = Arrays.copyOf(weights, lists.size() + postings.size());
+			System.arraycopy(weight, 0, weights, lists.size(), weight.length);
+			lists.addAll(postings);
+			for (TermPostings list : postings) {
+				found += list.size();
+			}
+		}
+		if (scored && k < ALL && lists.size() > 1 && found >= documents.liveCount()) {
+			return prune(lists, weights, k);
+		}
+		ScoreAccumulator matches = ScoreAccumulator.get(documents.size());
+		for (int i = 0; i < lists.size(); i++) {
+			searchHelper(lists.get(i), matches, weights[i]);
+		}
+		return top(matches, k);
+	}
+
+	/**
+	 * Returns the best k results of the postings of the query words with MaxScore.
+	 * The postings are ordered by the largest score any of their locations can add.
+	 * Once the heap of the best k results is full, the postings with the lowest
+	 * bounds whose bounds add up to less than the worst result on the heap cannot
+	 * make a location good enough on their own. Only the locations in the other
+	 * postings are visited, and the low postings are only looked up, skipping ahead
+	 * to the location, while the score so far plus their bounds could still beat
+	 * the heap. Returns exactly the results {@link #top(ScoreAccumulator, int)}
+	 * would.
+	 *
+	 * @param lists   the postings of the query words
+	 * @param weights the weight of the word of each of the postings
+	 * @param k       the most results to return
+	 * @return the sorted results
+	 */
+	private ArrayList<SearchResult> prune(List<TermPostings> lists, double[] weights, int k) {
+		double average = documents.averageWordCount();
+		int n = lists.size();
+		double[] bounds = new double[n];
+		Integer[] sorting = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			bounds[i] = lists.get(i).maxScore(scoring, documents, average, weights[i]);
+			sorting[i] = i;
+		}
+		Arrays.sort(sorting, (a, b) -> Double.compare(bounds[a], bounds[b]));
+
+		// the postings ordered by bound, and the index of each in the query order
+		TermPostings[] sorted = new TermPostings[n];
+		int[] origin = new int[n];
+		double[] weight = new double[n];
+		double[] below = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			origin[i] = sorting[i];
+			sorted[i] = lists.get(origin[i]);
+			weight[i] = weights[origin[i]];
+			sum += bounds[origin[i]];
+			below[i] = sum;
+		}
+
+		int[] indexes = new int[n];
+		int[] current = new int[n];
+		for (int i = 0; i < n; i++) {
+			current[i] = sorted[i].size() > 0 ? sorted[i].document(0) : Integer.MAX_VALUE;
+		}
+		double[] parts = new double[n];
+		int essential = 0;
+		double threshold = 0;
+		int next = first(current, 0);
+		PriorityQueue<SearchResult> heap = new PriorityQueue<SearchResult>(k, Collections.reverseOrder());
+		while (next != Integer.MAX_VALUE) {
+			int document = next;
+			next = Integer.MAX_VALUE;
+			int wordCount = documents.wordCount(document);
+			double score = 0;
+			int count = 0;
+			for (int i = essential; i < n; i++) {
+				if (current[i] == document) {
+					int frequency = sorted[i].frequency(indexes[i]++);
+					current[i] = indexes[i] < sorted[i].size() ? sorted[i].document(indexes[i]) : Integer.MAX_VALUE;
+					parts[origin[i]] = scoring.score(frequency, wordCount, average, weight[i]);
+					score += parts[origin[i]];
+					count += frequency;
+				}
+				next = Math.min(next, current[i]);
+			}
+
+			int stop = documents.isDeleted(document) ? essential : -1;
+			for (int i = essential - 1; i > stop; i--) {
+				if (heap.size() == k && lower(score + below[i], threshold)) {
+					stop = i;
+					break;
+				}
+				indexes[i] = sorted[i].advance(document, indexes[i]);
+				if (indexes[i] < sorted[i].size() && sorted[i].document(indexes[i]) == document) {
+					int frequency = sorted[i].frequency(indexes[i]++);
+					parts[origin[i]] = scoring.score(frequency, wordCount, average, weight[i]);
+					score += parts[origin[i]];
+					count += frequency;
+				}
+			}
+			if (stop >= 0) {
+				// skipped, so only the scores of the postings looked at need resetting
+				for (int i = stop; i < n; i++) {
+					parts[origin[i]] = 0;
+				}
+				continue;
+			}
+
+			// adds the scores up in the same order as the other searches to get the same sum
+			score = 0;
+			for (int i = 0; i < n; i++) {
+				score += parts[i];
+				parts[i] = 0;
+			}
+			String location = documents.location(document);
+			double total = scoring.total(score, count, wordCount);
+			if (heap.size() == k) {
+				if (SearchResult.compare(location, total, count, heap.peek()) >= 0) {
+					continue;
+				}
+				heap.poll();
+			}
+			heap.add(new SearchResult(location, wordCount, count, total));
+			if (heap.size() == k) {
+				threshold = heap.peek().score();
+				int before = essential;
+				while (essential < n && lower(below[essential], threshold)) {
+					essential++;
+				}
+				if (essential > before) {
+					next = first(current, essential);
+				}
+			}
+		}
+		ArrayList<SearchResult> results = new ArrayList<SearchResult>(heap);
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Returns the smallest location id the postings from an index on are at.
+	 *
+	 * @param current the location id each of the postings is at
+	 * @param from    the first of the postings to look at
+	 * @return the smallest location id, or {@link Integer#MAX_VALUE} if none
+	 */
+	private static int first(int[] current, int from) {
+		int first = Integer.MAX_VALUE;
+		for (int i = from; i < current.length; i++) {
+			first = Math.min(first, current[i]);
+		}
+		return first;
+	}
+
+	/**
+	 * Checks if a bound on a score is lower than the worst score kept, leaving
+	 * room for the rounding of adding up scores in a different order.
+	 *
+	 * @param bound     the bound on a score
+	 * @param threshold the worst score kept
+	 * @return true if the bound is certainly lower
+	 */
+	private static boolean lower(double bound, double threshold) {
+		return bound < threshold - Math.abs(threshold) * 1e-9;
+	}
+
+	/**
+	 * Returns the best k results of a phrase or proximity query. Only the locations
+	 * of the word found in the fewest locations are checked, and the positions of
+	 * the other words are only looked up for those. The query is scored as a single
+	 * word, found as often as the query matches and in as many locations as it
+	 * matches.
+	 *
+	 * @param query the query
+	 * @param exact whether words must match exactly rather than by prefix
+	 * @param k     the most results to return
+	 * @return Arraylist of at most k results
+	 * @see PhraseQuery
+	 */
+	public ArrayList<SearchResult> phraseSearch(PhraseQuery query, boolean exact, int k) {
+		ArrayList<ArrayList<TermPostings>> postings = new ArrayList<ArrayList<TermPostings>>(query.size());
+		int rarest = 0;
+		long fewest = Long.MAX_VALUE;
+		for (int i = 0; i < query.size(); i++) {
+			ArrayList<TermPostings> matching = postings(query.word(i), exact);
+			long found = 0;
+			for (TermPostings list : matching) {
+				found += list.size();
+			}
+			if (found < fewest) {
+				fewest = found;
+				rarest = i;
+			}
+			postings.add(matching);
+		}
+
+		ScoreAccumulator matches = ScoreAccumulator.get(documents.size());
+		for (TermPostings list : postings.get(rarest)) {
+			searchHelper(list, matches, 0);
+		}
+		int[] candidates = new int[matches.size()];
+		for (int i = 0; i < candidates.length; i++) {
+			candidates[i] = matches.document(i);
+		}
+
+		matches = ScoreAccumulator.get(documents.size());
+		int[][] positions = new int[query.size()][];
+		for (int document : candidates) {
+			boolean found = true;
+			for (int i = 0; i < query.size() && found; i++) {
+				positions[i] = positions(postings.get(i), document);
+				found = positions[i].length > 0;
+			}
+			int count = found ? count(query, positions) : 0;
+			if (count > 0) {
+				matches.add(document, count);
+			}
+		}
+		if (scored) {
+			double weight = scoring.weight(matches.size(), documents.liveCount());
+			double average = documents.averageWordCount();
+			for (int i = 0; i < matches.size(); i++) {
+				int document = matches.document(i);
+				matches.addScore(document,
+						scoring.score(matches.count(document), documents.wordCount(document), average, weight));
+			}
+		}
+		return top(matches, k);
+	}
+
+	/**
+	 * Returns the best k results of a boolean query. The children of an AND are
+	 * checked in order of how many locations they may match, so the locations of
+	 * the rarest child are found first and the others are only checked for those
+	 * locations, skipping ahead through their postings rather than reading all of
+	 * them.
+	 *
+	 * @param query the query
+	 * @param exact whether words must match exactly rather than by prefix
+	 * @param k     the most results to return
+	 * @return Arraylist of at most k results
+	 * @see BooleanQuery
+	 */
+	public ArrayList<SearchResult> booleanSearch(BooleanQuery query, boolean exact, int k) {
+		HashMap<String, ArrayList<TermPostings>> postings = new HashMap<String, ArrayList<TermPostings>>();
+		int[] found = match(query, exact, postings);
+		ScoreAccumulator matches = ScoreAccumulator.get(documents.size());
+		double average = documents.averageWordCount();
+		for (String word : query.counted()) {
+			ArrayList<TermPostings> lists = postings(word, exact, postings);
+			double[] weights = weights(lists, exact && !KGramIndex.isPattern(word));
+			for (int i = 0; i < lists.size(); i++) {
+				TermPostings list = lists.get(i);
+				double weight = weights[i];
+				int index = 0;
+				for (int document : found) {
+					index = list.advance(document, index);
+					if (index == list.size()) {
+						break;
+					} else if (list.document(index) == document) {
+						add(matches, document, list.frequency(index), average, weight);
+					}
+				}
+			}
+		}
+		return top(matches, k);
+	}
+
+	/**
+	 * Returns the live locations a node of a boolean query matches.
+	 *
+	 * @param node     the node
+	 * @param exact    whether words must match exactly rather than by prefix
+	 * @param postings the postings of the words looked up so far
+	 * @return the sorted location ids
+	 */
+	private int[] match(BooleanQuery node, boolean exact, HashMap<String, ArrayList<TermPostings>> postings) {
+		switch (node.type()) {
+		case WORD: {
+			BitSet union = new BitSet(documents.size());
+			for (TermPostings list : postings(node.word(), exact, postings)) {
+				for (int i = 0; i < list.size(); i++) {
+					union.set(list.document(i));
+				}
+			}
+			return live(union);
+		}
+		case OR: {
+			BitSet union = new BitSet(documents.size());
+			for (BooleanQuery child : node.children()) {
+				for (int document : match(child, exact, postings)) {
+					union.set(document);
+				}
+			}
+			return live(union);
+		}
+		case NOT: {
+			BitSet complement = new BitSet(documents.size());
+			complement.set(0, documents.size());
+			for (int document : match(node.children().get(0), exact, postings)) {
+				complement.clear(document);
+			}
+			return live(complement);
+		}
+		default:
+			return intersect(node, exact, postings);
+		}
+	}
+
+	/**
+	 * Returns the live locations every child of an AND node matches. Starts from
+	 * the cheapest child that is not a NOT and filters its locations by the other
+	 * children, cheapest first, until none are left.
+	 *
+	 * @param node     the AND node
+	 * @param exact    whether words must match exactly rather than by prefix
+	 * @param postings the postings of the words looked up so far
+	 * @return the sorted location ids
+	 */
+	private int[] intersect(BooleanQuery node, boolean exact, HashMap<String, ArrayList<TermPostings>> postings) {
+		ArrayList<BooleanQuery> children = new ArrayList<BooleanQuery>(node.children());
+		HashMap<BooleanQuery, Long> costs = new HashMap<BooleanQuery, Long>();
+		for (BooleanQuery child : children) {
+			costs.put(child, cost(child, exact, postings));
+		}
+		children.sort((a, b) -> Long.compare(costs.get(a), costs.get(b)));
+
+		int[] found = null;
+		for (BooleanQuery child : children) {
+			if (child.type() != BooleanQuery.Type.NOT) {
+				found = match(child, exact, postings);
+				children.remove(child);
+				break;
+			}
+		}
+		if (found == null) {
+			BitSet all = new BitSet(documents.size());
+			all.set(0, documents.size());
+			found = live(all);
+		}
+
+		int size = found.length;
+		for (BooleanQuery child : children) {
+			if (size == 0) {
+				break;
+			}
+			boolean exclude = child.type() == BooleanQuery.Type.NOT;
+			BooleanQuery filter = exclude ? child.children().get(0) : child;
+			if (filter.type() == BooleanQuery.Type.WORD) {
+				size = filter(found, size, postings(filter.word(), exact, postings), exclude);
+			} else {
+				size = filter(found, size, match(filter, exact, postings), exclude);
+			}
+		}
+		return Arrays.copyOf(found, size);
+	}
+
+	/**
+	 * Keeps the locations that are in, or not in, any of the postings. Skips ahead
+	 * through each of the postings to the next location kept so far.
+	 *
+	 * @param found   the sorted location ids kept so far, changed in place
+	 * @param size    the number of location ids kept so far
+	 * @param lists   the postings to check
+	 * @param exclude whether to keep the locations not in the postings
+	 * @return the number of location ids kept
+	 */
+	private static int filter(int[] found, int size, List<TermPostings> lists, boolean exclude) {
+		int[] indexes = new int[lists.size()];
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			int document = found[i];
+			boolean in = false;
+			for (int j = 0; j < indexes.length && !in; j++) {
+				TermPostings list = lists.get(j);
+				indexes[j] = list.advance(document, indexes[j]);
+				in = indexes[j] < list.size() && list.document(indexes[j]) == document;
+			}
+			if (in != exclude) {
+				found[kept++] = document;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Keeps the locations that are in, or not in, another sorted list of locations.
+	 *
+	 * @param found   the sorted location ids kept so far, changed in place
+	 * @param size    the number of location ids kept so far
+	 * @param other   the sorted location ids to check
+	 * @param exclude whether to keep the locations not in the other list
+	 * @return the number of location ids kept
+	 */
+	private static int filter(int[] found, int size, int[] other, boolean exclude) {
+		int index = 0;
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			int document = found[i];
+			index = TermPostings.gallop(other, other.length, document, index);
+			boolean in = index < other.length && other[index] == document;
+			if (in != exclude) {
+				found[kept++] = document;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Estimates how many locations a node may match from the number of locations
+	 * of its words, without reading their postings.
+	 *
+	 * @param node     the node
+	 * @param exact    whether words must match exactly rather than by prefix
+	 * @param postings the postings of the words looked up so far
+	 * @return the estimated number of locations
+	 */
+	private long cost(BooleanQuery node, boolean exact, HashMap<String, ArrayList<TermPostings>> postings) {
+		switch (node.type()) {
+		case WORD: {
+			long cost = 0;
+			for (TermPostings list : postings(node.word(), exact, postings)) {
+				cost += list.size();
+			}
+			return cost;
+		}
+		case OR: {
+			long cost = 0;
+			for (BooleanQuery child : node.children()) {
+				cost += cost(child, exact, postings);
+			}
+			return Math.min(cost, documents.size());
+		}
+		case AND: {
+			long cost = documents.size();
+			for (BooleanQuery child : node.children()) {
+				if (child.type() != BooleanQuery.Type.NOT) {
+					cost = Math.min(cost, cost(child, exact, postings));
+				}
+			}
+			return cost;
+		}
+		default:
+			return documents.size();
+		}
+	}
+
+	/**
+	 * Returns the postings of a word, looking them up only once per query.
+	 *
+	 * @param word     the word
+	 * @param exact    whether the word must match exactly rather than by prefix
+	 * @param postings the postings of the words looked up so far
+	 * @return the postings of the word
+	 */
+	private ArrayList<TermPostings> postings(String word, boolean exact,
+			HashMap<String, ArrayList<TermPostings>> postings) {
+		ArrayList<TermPostings> found = postings.get(word);
+		if (found == null) {
+			found = postings(word, exact);
+			postings.put(word, found);
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the locations in a set that have not been deleted.
+	 *
+	 * @param set the location ids
+	 * @return the sorted location ids not deleted
+	 */
+	private int[] live(BitSet set) {
+		int[] found = new int[set.cardinality()];
+		int size = 0;
+		for (int document = set.nextSetBit(0); document >= 0; document = set.nextSetBit(document + 1)) {
+			if (!documents.isDeleted(document)) {
+				found[size++] = document;
+			}
+		}
+		return size == found.length ? found : Arrays.copyOf(found, size);
+	}
+
+	/**
+	 * Returns the postings of a word in every segment, or of every word starting
+	 * with it. A wildcard pattern is looked up the same either way.
+	 *
+	 * @param word  the word or wildcard pattern
+	 * @param exact whether the word must match exactly rather than by prefix
+	 * @return the postings found
+	 */
+	private ArrayList<TermPostings> postings(String word, boolean exact) {
+		ArrayList<TermPostings> found = new ArrayList<TermPostings>();
+		boolean pattern = KGramIndex.isPattern(word);
+		for (IndexSegment segment : segments) {
+			if (pattern) {
+				segment.wildcard(word, found);
+			} else if (exact) {
+				TermPostings postings = segment.postings(word);
+				if (postings != null) {
+					found.add(postings);
+				}
+			} else {
+				segment.prefixed(word, found);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the postings of every word in every segment within an edit distance
+	 * of a word.
+	 *
+	 * @param word     the word
+	 * @param distance the most edits allowed
+	 * @return the postings found
+	 */
+	private ArrayList<TermPostings> fuzzy(String word, int distance) {
+		ArrayList<TermPostings> found = new ArrayList<TermPostings>();
+		LevenshteinAutomaton automaton = new LevenshteinAutomaton(word, distance);
+		for (IndexSegment segment : segments) {
+			automaton.intersect(segment, found);
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the sorted positions of a location in any of the postings.
+	 *
+	 * @param postings the postings of a word
+	 * @param document the location id
+	 * @return the positions, empty if the word is not in the location
+	 */
+	private static int[] positions(List<TermPostings> postings, int document) {
+		int[] positions = null;
+		for (TermPostings list : postings) {
+			PostingList found = list.get(document);
+			if (found == null) {
+				continue;
+			}
+			if (positions == null) {
+				positions = found.toArray();
+			} else {
+				int[] more = found.toArray();
+				int[] combined = Arrays.copyOf(positions, positions.length + more.length);
+				System.arraycopy(more, 0, combined, positions.length, more.length);
+				Arrays.sort(combined);
+				positions = combined;
+			}
+		}
+		return positions == null ? new int[0] : positions;
+	}
+
+	/**
+	 * Counts the positions of the first word from which every following word can
+	 * be reached within the allowed offsets. Works back from the last word, keeping
+	 * only the positions of each word from which the rest of the query can be
+	 * reached, with one merge-like pass over each pair of neighbouring lists.
+	 *
+	 * @param query     the query
+	 * @param positions the sorted positions of each word
+	 * @return the number of matches
+	 */
+	private static int count(PhraseQuery query, int[][] positions) {
+		int[] reachable = positions[query.size() - 1];
+		int size = reachable.length;
+		for (int i = query.size() - 2; i >= 0 && size > 0; i--) {
+			int[] current = positions[i];
+			int[] kept = new int[current.length];
+			int keptSize = 0;
+			int next = 0;
+			for (int position : current) {
+				long low = (long) position + query.min(i);
+				long high = (long) position + query.max(i);
+				while (next < size && reachable[next] < low) {
+					next++;
+				}
+				int candidate = next;
+				if (candidate < size && reachable[candidate] == position) {
+					candidate++;
+				}
+				if (candidate < size && reachable[candidate] <= high) {
+					kept[keptSize++] = position;
+				}
+			}
+			reachable = kept;
+			size = keptSize;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the weight of each of the postings a query word matched, from the
+	 * number of locations in them. The postings of an exact word are the same word
+	 * in different segments and share the weight of their locations added up. A
+	 * prefix, pattern or fuzzy word matches other words, and the postings of each
+	 * are weighted by their own locations, so a location matching more of them
+	 * scores higher rather than lower. Deleted locations are counted until they are
+	 * purged, so the locations are compared to every location id rather than only
+	 * the live ones.
+	 *
+	 * @param postings the postings of the word
+	 * @param same     whether the postings are all of the same word
+	 * @return the weight of each of the postings, or 0 if results are not scored by
+	 *         word
+	 */
+	private double[] weights(List<TermPostings> postings, boolean same) {
+		double[] weights = new double[postings.size()];
+		if (!scored) {
+			return weights;
+		}
+		int total = documents.size();
+		if (same) {
+			int found = 0;
+			for (TermPostings list : postings) {
+				found += list.size();
+			}
+			Arrays.fill(weights, scoring.weight(Math.min(found, total), total));
+		} else {
+			for (int i = 0; i < weights.length; i++) {
+				weights[i] = scoring.weight(Math.min(postings.get(i).size(), total), total);
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * Adds the matches of a word to the count of each location it was found in.
+	 *
+	 * @param postings the postings of a word matching the search query
+	 * @param matches  the matches found so far
+	 * @param weight   the weight of the word
+	 */
+	private void searchHelper(TermPostings postings, ScoreAccumulator matches, double weight) {
+		double average = documents.averageWordCount();
+		for (int i = 0; i < postings.size(); i++) {
+			int document = postings.document(i);
+			if (!documents.isDeleted(document)) {
+				add(matches, document, postings.frequency(i), average, weight);
+			}
+		}
+	}
+
+	/**
+	 * Adds the matches of a word in a location, with their score if results are
+	 * scored by word.
+	 *
+	 * @param matches   the matches found so far
+	 * @param document  the location id
+	 * @param frequency the number of times the word was found in the location
+	 * @param average   the average word count of the locations
+	 * @param weight    the weight of the word
+	 */
+	private void add(ScoreAccumulator matches, int document, int frequency, double average, double weight) {
+		if (scored) {
+			matches.add(document, frequency,
+					scoring.score(frequency, documents.wordCount(document), average, weight));
+		} else {
+			matches.add(document, frequency);
+		}
+	}
+
+	/**
+	 * Creates the results of the best k locations found and sorts them. Keeps a
+	 * heap of the k best results so far with the worst on top, and only creates a
+	 * result for a location that beats it, so a query matching most locations
+	 * neither creates nor sorts a result for each of them.
+	 *
+	 * @param matches the matches found
+	 * @param k       the most results to return
+	 * @return the sorted results
+	 */
+	private ArrayList<SearchResult> top(ScoreAccumulator matches, int k) {
+		ArrayList<SearchResult> results;
+		if (k <= 0) {
+			return new ArrayList<SearchResult>();
+		} else if (matches.size() <= k) {
+			results = new ArrayList<SearchResult>(matches.size());
+			for (int i = 0; i < matches.size(); i++) {
+				results.add(result(matches, matches.document(i)));
+			}
+		} else {
+			PriorityQueue<SearchResult> heap = new PriorityQueue<SearchResult>(k, Collections.reverseOrder());
+			for (int i = 0; i < matches.size(); i++) {
+				int document = matches.document(i);
+				int count = matches.count(document);
+				if (heap.size() < k) {
+					heap.add(result(matches, document));
+				} else if (SearchResult.compare(documents.location(document), score(matches, document), count,
+						heap.peek()) < 0) {
+					heap.poll();
+					heap.add(result(matches, document));
+				}
+			}
+			results = new ArrayList<SearchResult>(heap);
+		}
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Returns the score of a location found.
+	 *
+	 * @param matches  the matches found
+	 * @param document the location id
+	 * @return the score of the location
+	 */
+	private double score(ScoreAccumulator matches, int document) {
+		return scoring.total(matches.score(document), matches.count(document), documents.wordCount(document));
+	}
+
+	/**
+	 * Creates the result of a location.
+	 *
+	 * @param matches  the matches found
+	 * @param document the location id
+	 * @return the result
+	 */
+	private SearchResult result(ScoreAccumulator matches, int document) {
+		return new SearchResult(documents.location(document), documents.wordCount(document),
+				matches.count(document), score(matches, document));
+	}
+}
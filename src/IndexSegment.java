@@ -0,0 +1,71 @@
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A sorted term dictionary and the postings for each term. Location ids in the
+ * postings refer to the {@link DocumentTable} of the index the segment belongs
+ * to.
+ *
+ * @author Rugved Mavidipalli
+ */
+public interface IndexSegment {
+
+	/**
+	 * Returns the postings of a term.
+	 *
+	 * @param term the term to look up
+	 * @return the postings or null if the segment does not contain the term
+	 */
+	public TermPostings postings(String term);
+
+	/**
+	 * Returns the terms of the segment in sorted order, starting at the first term
+	 * greater than or equal to the given term.
+	 *
+	 * @param from the term to start at
+	 * @return iterator over the sorted terms
+	 */
+	public Iterator<String> terms(String from);
+
+	/**
+	 * Adds the postings of every term starting with a prefix, in sorted order of
+	 * the terms.
+	 *
+	 * @param prefix the prefix
+	 * @param found  the postings found so far
+	 */
+	public default void prefixed(String prefix, List<TermPostings> found) {
+		Iterator<String> terms = terms(prefix);
+		while (terms.hasNext()) {
+			String term = terms.next();
+			if (term.startsWith(prefix) == false) {
+				break;
+			}
+			found.add(postings(term));
+		}
+	}
+
+	/**
+	 * Adds the postings of every term matching a wildcard pattern, in sorted order
+	 * of the terms. Checks every term starting with the characters before the
+	 * first wildcard, so segments with a k-gram index look the terms up there
+	 * instead.
+	 *
+	 * @param pattern the pattern
+	 * @param found   the postings found so far
+	 * @see KGramIndex#matches(String, String)
+	 */
+	public default void wildcard(String pattern, List<TermPostings> found) {
+		String prefix = KGramIndex.prefix(pattern);
+		Iterator<String> terms = terms(prefix);
+		while (terms.hasNext()) {
+			String term = terms.next();
+			if (term.startsWith(prefix) == false) {
+				break;
+			}
+			if (KGramIndex.matches(pattern, term)) {
+				found.add(postings(term));
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps an index up to date with the text files under a directory. Watches the
+ * directory and every directory below it for created, modified and deleted
+ * text files, and reindexes only the files that changed. Deleting or moving
+ * away a directory removes every file indexed below it.
+ *
+ * Changes are debounced: once a file changes, the watcher waits until no more
+ * changes have come in for {@link #QUIET_PERIOD} milliseconds, or at most
+ * {@link #MAX_DELAY} milliseconds, and then applies every changed file as one
+ * batch. The changed files are read into a local index first, so the index is
+ * only locked once per batch for {@link InvertedIndex#replace}.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class IndexWatcher extends Thread {
+	public static final Logger log = LogManager.getLogger();
+
+	/** The milliseconds without changes before a batch is applied */
+	public static final long QUIET_PERIOD = 500;
+
+	/** The most milliseconds a change waits before its batch is applied */
+	public static final long MAX_DELAY = 5000;
+
+	/** The index to keep up to date */
+	private final ThreadSafeIndex index;
+
+	/** The directory watched */
+	private final Path root;
+
+	/** Receives the change events */
+	private final WatchService watcher;
+
+	/** The directory each watch key belongs to */
+	private final HashMap<WatchKey, Path> directories;
+
+	/** The files changed since the last batch, in the order they changed */
+	private final LinkedHashSet<Path> changed;
+
+	/**
+	 * Initializes a watcher for the directory and every directory below it. Call
+	 * {@link #start()} to start applying changes.
+	 *
+	 * @param root  the directory to watch
+	 * @param index the index to keep up to date
+	 * @throws IOException if unable to watch the directories
+	 */
+	public IndexWatcher(Path root, ThreadSafeIndex index) throws IOException {
+		super("IndexWatcher");
+		this.index = index;
+		this.root = root;
+		this.watcher = root.getFileSystem().newWatchService();
+		this.directories = new HashMap<WatchKey, Path>();
+		this.changed = new LinkedHashSet<Path>();
+		setDaemon(true);
+		register(root, false);
+	}
+
+	/**
+	 * Stops watching. Changes not applied yet are dropped.
+	 */
+	public void shutdown() {
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			System.err.println("Unable to stop watching " + root.toString());
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			long first = 0;
+			long last = 0;
+			while (true) {
+				WatchKey key;
+				if (changed.isEmpty()) {
+					key = watcher.take();
+				} else {
+					long now = System.currentTimeMillis();
+					long wait = Math.min(last + QUIET_PERIOD, first + MAX_DELAY) - now;
+					key = wait > 0 ? watcher.poll(wait, TimeUnit.MILLISECONDS) : null;
+				}
+				if (key == null) {
+					apply();
+					continue;
+				}
+				boolean empty = changed.isEmpty();
+				handle(key);
+				last = System.currentTimeMillis();
+				if (empty) {
+					first = last;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			log.debug("Stopped watching {}", root);
+		}
+	}
+
+	/**
+	 * Collects the text files changed by the events of a watch key.
+	 *
+	 * @param key the watch key with events
+	 */
+	private void handle(WatchKey key) {
+		Path directory = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				log.warn("Missed changes under {}, reindexing every file", root);
+				rescan(root);
+				continue;
+			}
+			if (directory == null) {
+				continue;
+			}
+			Path path = directory.resolve((Path) event.context());
+			if (event.kind() == ENTRY_CREATE && TextFileFinder.isDirectory(path)) {
+				try {
+					register(path, true);
+				} catch (IOException e) {
+					System.err.println("Unable to watch " + path.toString());
+				}
+			} else if (TextFileFinder.isTextFile(path)) {
+				changed.add(path);
+			} else if (event.kind() == ENTRY_DELETE) {
+				forget(path);
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+	}
+
+	/**
+	 * Watches a directory and every directory below it.
+	 *
+	 * @param directory the directory to watch
+	 * @param created   whether the directory was just created, in which case the
+	 *                  text files already in it are treated as changed
+	 * @throws IOException if unable to watch a directory
+	 */
+	private void register(Path directory, boolean created) throws IOException {
+		directories.put(directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+		try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+			for (Path path : listing) {
+				if (TextFileFinder.isDirectory(path)) {
+					register(path, created);
+				} else if (created && TextFileFinder.isTextFile(path)) {
+					changed.add(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops watching a deleted directory and every directory below it, and treats
+	 * every indexed location below it as changed so it is removed. The directory
+	 * is gone, so its files cannot be listed and no events come in for them.
+	 *
+	 * @param directory the deleted directory
+	 */
+	private void forget(Path directory) {
+		Iterator<Entry<WatchKey, Path>> iterator = directories.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<WatchKey, Path> entry = iterator.next();
+			if (entry.getValue().startsWith(directory)) {
+				entry.getKey().cancel();
+				iterator.remove();
+			}
+		}
+		String prefix = directory.toString() + directory.getFileSystem().getSeparator();
+		for (String location : index.locations().keySet()) {
+			if (location.startsWith(prefix)) {
+				changed.add(directory.getFileSystem().getPath(location));
+			}
+		}
+	}
+
+	/**
+	 * Treats every text file below a directory as changed.
+	 *
+	 * @param directory the directory to scan
+	 */
+	private void rescan(Path directory) {
+		try {
+			changed.addAll(TextFileFinder.findTextFiles(directory));
+		} catch (IOException e) {
+			System.err.println("Unable to rescan " + directory.toString());
+		}
+	}
+
+	/**
+	 * Reads the changed files that still exist into a local index and replaces
+	 * the changed files in the index with it, removing the files that are gone.
+	 */
+	private void apply() {
+		InvertedIndex local = new InvertedIndex();
+		ArrayList<String> removed = new ArrayList<String>();
+		for (Path path : changed) {
+			if (TextFileFinder.isFile(path)) {
+				try {
+					InvertedIndexBuilder.addFile(path, local);
+				} catch (IOException e) {
+					System.err.println("Unable to add path" + path.toString());
+				}
+			}
+			removed.add(path.toString());
+		}
+		log.info("Reindexing {} changed files", changed.size());
+		changed.clear();
+		index.replace(removed, local);
+	}
+}
@@ -1,12 +1,15 @@
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Data structure to store strings and their positions.
@@ -14,18 +17,50 @@ import java.util.TreeSet;
 public class InvertedIndex {
 
 	/**
-	 * Stores a mapping of words to the positions the words were found and file they
-	 * were found in.
+	 * Stores a mapping of words to the ids of the locations the words were found
+	 * in and their positions in those locations.
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
-	private final TreeMap<String, Integer> locations;
+	private final TreeMap<String, TermPostings> index;
+
+	/**
+	 * Maps the k-grams of the words to the words, kept up to date with the index
+	 * for wildcard searches.
+	 */
+	private final KGramIndex grams;
+
+	/**
+	 * Stores the id and word count of every location.
+	 */
+	private final DocumentTable documents;
+
+	/**
+	 * The segments searched by the index: read only segments loaded from disk
+	 * followed by the in-memory index.
+	 */
+	private final ArrayList<IndexSegment> segments;
+
+	/**
+	 * How search results are scored.
+	 */
+	private volatile ScoringModel scoring;
+
+	/**
+	 * Counts the changes visible to searches, so results cached for one generation
+	 * of the index can tell they are out of date.
+	 */
+	private final LongAdder changes;
 
 	/**
 	 * Initializes the index.
 	 */
 	public InvertedIndex() {
-		this.index = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
-		this.locations = new TreeMap<String, Integer>();
+		this.index = new TreeMap<String, TermPostings>();
+		this.grams = new KGramIndex();
+		this.documents = new DocumentTable();
+		this.segments = new ArrayList<IndexSegment>();
+		this.segments.add(new MemorySegment(index, grams));
+		this.scoring = ScoringModel.COUNT;
+		this.changes = new LongAdder();
 	}
 
 	/**
@@ -35,7 +70,11 @@ public class InvertedIndex {
 	 */
 	public InvertedIndex(InvertedIndex convertIndex) {
 		this.index = convertIndex.index;
-		this.locations = new TreeMap<String, Integer>();
+		this.grams = convertIndex.grams;
+		this.documents = convertIndex.documents;
+		this.segments = convertIndex.segments;
+		this.scoring = convertIndex.scoring;
+		this.changes = convertIndex.changes;
 	}
 
 	/**
@@ -61,10 +100,13 @@ public class InvertedIndex {
 	 * @param position the postion the word was found
 	 */
 	public void add(String word, String location, int position) {
-		index.putIfAbsent(word, new TreeMap<String, TreeSet<Integer>>());
-		index.get(word).putIfAbsent(location, new TreeSet<>());
-		index.get(word).get(location).add(position);
-		locations.put(location, locations.getOrDefault(location, 0) + 1);
+		int document = documents.add(location);
+		if (index.putIfAbsent(word, new TermPostings()) == null) {
+			grams.add(word);
+		}
+		index.get(word).getOrCreate(document).add(position);
+		documents.addWords(document, 1);
+		changed();
 	}
 
 	/**
@@ -76,7 +118,7 @@ public class InvertedIndex {
 	 * @throws IOException
 	 */
 	public void sendIndex(Writer writer) throws IOException {
-		TreeJSONWriter.asDoubleNestedObject(this.index, writer);
+		TreeJSONWriter.asDoubleNestedObject(merged(), this.documents, writer);
 	}
 
 	/**
@@ -87,7 +129,16 @@ public class InvertedIndex {
 	 * @throws IOException
 	 */
 	public void sendLocations(Writer writer) throws IOException {
-		TreeJSONWriter.asObject(this.locations, writer);
+		TreeJSONWriter.asObject(locations(), writer);
+	}
+
+	/**
+	 * Returns the word count of every location in the index
+	 * 
+	 * @return sorted map of locations to word counts
+	 */
+	public TreeMap<String, Integer> locations() {
+		return this.documents.asMap();
 	}
 
 	/**
@@ -97,7 +148,7 @@ public class InvertedIndex {
 	 * @return True if words exists else false
 	 */
 	public boolean contains(String word) {
-		return index.containsKey(word);
+		return searcher().contains(word);
 	}
 
 	/**
@@ -108,7 +159,7 @@ public class InvertedIndex {
 	 * @return True if word and file exist else false
 	 */
 	public boolean contains(String word, String file) {
-		return index.containsKey(word) && index.get(word).containsKey(file);
+		return searcher().contains(word, file);
 	}
 
 	/**
@@ -120,7 +171,7 @@ public class InvertedIndex {
 	 * @return True if exist else false
 	 */
 	public boolean contains(String word, String file, int position) {
-		return contains(word, file) && (index.get(word).get(file).contains(position));
+		return searcher().contains(word, file, position);
 	}
 
 	/**
@@ -131,37 +182,19 @@ public class InvertedIndex {
 	 * @return Arraylist of results
 	 */
 	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords) {
-		HashMap<String, SearchResult> check = new HashMap<String, SearchResult>();
-		ArrayList<SearchResult> results = new ArrayList<SearchResult>();
-		for (String word : queryWords) {
-			if (index.containsKey(word)) {
-				searchHelper(word, check, results);
-			}
-		}
-		Collections.sort(results);
-		return results;
+		return exactSearch(queryWords, IndexSearcher.ALL);
 	}
 
 	/**
-	 * Builds and adds SearchResult objects to the results list.
-	 * 
-	 * @param query   the search query
-	 * @param check   data structure that contains the query and search results
-	 * @param results the array list of results
-	 * @return results list with SearchResults for the particular query
-	 */
-	private ArrayList<SearchResult> searchHelper(String query, HashMap<String, SearchResult> check,
-			ArrayList<SearchResult> results) {
-		for (String file : index.get(query).keySet()) {
-			if (check.containsKey(file)) {
-				check.get(file).updateCount(index.get(query).get(file).size());
-			} else {
-				SearchResult result = new SearchResult(file, locations.get(file), index.get(query).get(file).size());
-				check.put(file, result);
-				results.add(result);
-			}
-		}
-		return results;
+	 * Returns the best k exact search results in sorted order.
+	 *
+	 * @param queryWords stemmed words from a single query line
+	 * @param k          the most results to return
+	 * @return Arraylist of at most k results
+	 * @see IndexSearcher#exactSearch(TreeSet, int)
+	 */
+	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords, int k) {
+		return searcher().exactSearch(queryWords, k);
 	}
 
 	/**
@@ -171,48 +204,272 @@ public class InvertedIndex {
 	 * @return parital search results Arraylist<SearchResult>
 	 */
 	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords) {
-		HashMap<String, SearchResult> check = new HashMap<String, SearchResult>();
-		ArrayList<SearchResult> results = new ArrayList<SearchResult>();
-		for (String word : queryWords) {
-			for (Entry<String, TreeMap<String, TreeSet<Integer>>> stem : index.tailMap(word).entrySet()) {
-				if (stem.getKey().startsWith(word) == true) {
-					searchHelper(stem.getKey(), check, results);
-				} else {
-					break;
-				}
+		return partialSearch(queryWords, IndexSearcher.ALL);
+	}
+
+	/**
+	 * Returns the best k partial search results in sorted order.
+	 *
+	 * @param queryWords the query words from a single line to search for
+	 * @param k          the most results to return
+	 * @return Arraylist of at most k results
+	 * @see IndexSearcher#partialSearch(TreeSet, int)
+	 */
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords, int k) {
+		return searcher().partialSearch(queryWords, k);
+	}
+
+	/**
+	 * Returns the best k results for the words within an edit distance of the query
+	 * words in sorted order.
+	 *
+	 * @param queryWords the query words from a single line to search for
+	 * @param distance   the most edits allowed, 1 or 2
+	 * @param k          the most results to return
+	 * @return Arraylist of at most k results
+	 * @see IndexSearcher#fuzzySearch(TreeSet, int, int)
+	 */
+	public ArrayList<SearchResult> fuzzySearch(TreeSet<String> queryWords, int distance, int k) {
+		return searcher().fuzzySearch(queryWords, distance, k);
+	}
+
+	/**
+	 * Returns the best k results of a phrase or proximity query in sorted order.
+	 *
+	 * @param query the query
+	 * @param exact whether words must match exactly rather than by prefix
+	 * @param k     the most results to return
+	 * @return Arraylist of at most k results
+	 * @see IndexSearcher#phraseSearch(PhraseQuery, boolean, int)
+	 */
+	public ArrayList<SearchResult> phraseSearch(PhraseQuery query, boolean exact, int k) {
+		return searcher().phraseSearch(query, exact, k);
+	}
+
+	/**
+	 * Returns the best k results of a boolean query in sorted order.
+	 *
+	 * @param query the query
+	 * @param exact whether words must match exactly rather than by prefix
+	 * @param k     the most results to return
+	 * @return Arraylist of at most k results
+	 * @see IndexSearcher#booleanSearch(BooleanQuery, boolean, int)
+	 */
+	public ArrayList<SearchResult> booleanSearch(BooleanQuery query, boolean exact, int k) {
+		return searcher().booleanSearch(query, exact, k);
+	}
+
+	/**
+	 * Returns the in-memory words and postings of the index.
+	 *
+	 * @return sorted map of words to postings
+	 */
+	protected TreeMap<String, TermPostings> terms() {
+		return index;
+	}
+
+	/**
+	 * Returns the location ids and word counts of the index.
+	 *
+	 * @return the document table
+	 */
+	protected DocumentTable documents() {
+		return documents;
+	}
+
+	/**
+	 * Sets how search results are scored. Searches already running keep the model
+	 * they started with.
+	 *
+	 * @param scoring the scoring model
+	 */
+	public void setScoring(ScoringModel scoring) {
+		this.scoring = scoring;
+	}
+
+	/**
+	 * Returns how search results are scored.
+	 *
+	 * @return the scoring model
+	 */
+	public ScoringModel scoring() {
+		return scoring;
+	}
+
+	/**
+	 * Returns the generation of the index, which goes up with every change that can
+	 * change search results. Taking no lock, a search started after reading a
+	 * generation sees at least the changes counted in it.
+	 *
+	 * @return the current generation
+	 * @see QueryCache
+	 */
+	public long generation() {
+		return changes.sum();
+	}
+
+	/**
+	 * Starts a new generation. Called after each change, once searches can see it.
+	 */
+	protected void changed() {
+		changes.increment();
+	}
+
+	/**
+	 * Returns a searcher over the segments of the index.
+	 *
+	 * @return the searcher
+	 */
+	private IndexSearcher searcher() {
+		return new IndexSearcher(segments, documents, scoring);
+	}
+
+	/**
+	 * Saves the index in the binary on-disk format.
+	 *
+	 * @param directory the directory to save the index to
+	 * @throws IOException if unable to write the index
+	 * @see IndexFile
+	 */
+	public void save(Path directory) throws IOException {
+		IndexFile.write(merged(), documents, directory);
+	}
+
+	/**
+	 * Loads an index saved with {@link #save(Path)}. The locations are read into
+	 * memory, while the words and positions are searched straight from the mapped
+	 * files. Words added afterwards are kept in memory as usual.
+	 *
+	 * @param directory the directory the index was saved to
+	 * @throws IOException if unable to read the index
+	 * @see MappedSegment
+	 */
+	public void load(Path directory) throws IOException {
+		if (documents.size() > 0) {
+			throw new IllegalStateException("Can only load into an empty index.");
+		}
+		MappedSegment segment = new MappedSegment(directory);
+		IndexFile.readDocuments(directory, documents);
+		segments.add(segments.size() - 1, segment);
+		changed();
+	}
+
+	/**
+	 * Returns the words of every segment with their postings combined, leaving
+	 * out deleted locations. Returns the in-memory index itself if nothing has
+	 * been loaded or deleted.
+	 *
+	 * @return sorted map of words to postings
+	 */
+	private TreeMap<String, TermPostings> merged() {
+		if (segments.size() == 1 && documents.deletedCount() == 0) {
+			return index;
+		}
+		return MemorySegment.merge(segments, documents);
+	}
+
+	/**
+	 * Deletes a location. The id of the location is marked as deleted so searches
+	 * and output skip it right away, while its postings are only reclaimed by
+	 * {@link #purge()}.
+	 *
+	 * @param location the location to delete
+	 * @see DocumentTable#delete(String)
+	 */
+	public void delete(String location) {
+		documents.delete(location);
+		changed();
+	}
+
+	/**
+	 * Deletes the given locations and the locations of the local index, then adds
+	 * the local index. Replaced locations get new ids, so the cost depends on the
+	 * size of the replaced locations and not on the size of the index.
+	 *
+	 * @param locations the locations to delete
+	 * @param local     the new words of the locations to replace
+	 */
+	public void replace(Collection<String> locations, InvertedIndex local) {
+		for (String location : locations) {
+			documents.delete(location);
+		}
+		for (int i = 0; i < local.documents.size(); i++) {
+			documents.delete(local.documents.location(i));
+		}
+		merge(local);
+	}
+
+	/**
+	 * Removes the postings of deleted locations from the in-memory index in one
+	 * pass. Postings in a loaded index stay until the index is saved again, as
+	 * the mapped files are read only.
+	 */
+	public void purge() {
+		BitSet removed = documents.unpurged();
+		if (removed.isEmpty()) {
+			return;
+		}
+		ArrayList<String> emptied = new ArrayList<String>();
+		Iterator<Entry<String, TermPostings>> iterator = index.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<String, TermPostings> entry = iterator.next();
+			if (entry.getValue().removeAll(removed) == 0) {
+				emptied.add(entry.getKey());
+				iterator.remove();
 			}
 		}
-		Collections.sort(results);
-		return results;
+		grams.removeAll(emptied);
+		documents.purged(removed);
+		changed();
 	}
 
 	/**
-	 * Adds a local InvertedIndex in to the Global InvertedIndex
+	 * Seals every posting list in the index so the positions are stored encoded.
+	 * Should be called once the locations in the index are complete.
 	 * 
+	 * @see PostingList#seal()
+	 */
+	public void seal() {
+		for (TermPostings postings : index.values()) {
+			postings.seal();
+		}
+	}
+
+	/**
+	 * Adds a local InvertedIndex in to the Global InvertedIndex. The location ids
+	 * of the local index are mapped to ids in this index and the posting lists
+	 * taken from the local index are sealed.
+	 *
 	 * @param local
 	 */
 	public void addAll(InvertedIndex local) {
-		for (String word : local.index.keySet()) {
-			if (!index.containsKey(word)) {
-				index.put(word, local.index.get(word));
-			} else {
-				for (String file : local.index.get(word).keySet()) {
-					if (!index.get(word).containsKey(file)) {
-						index.get(word).put(file, local.index.get(word).get(file));
-					} else {
-						index.get(word).get(file).addAll(local.index.get(word).get(file));
-					}
-				}
-			}
+		merge(local);
+	}
+
+	/**
+	 * Adds a local index without going through methods subclasses override.
+	 *
+	 * @param local the index to add
+	 * @see #addAll(InvertedIndex)
+	 */
+	private void merge(InvertedIndex local) {
+		int[] ids = new int[local.documents.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = documents.add(local.documents.location(i));
+			documents.addWords(ids[i], local.documents.wordCount(i));
 		}
-		for (String location : local.locations.keySet()) {
-			if (this.locations.containsKey(location)) {
-				this.locations.put(location, this.locations.getOrDefault(location, 0) + local.locations.get(location));
-			} else {
-				this.locations.put(location, local.locations.get(location));
+		for (Entry<String, TermPostings> entry : local.index.entrySet()) {
+			TermPostings from = entry.getValue();
+			if (index.putIfAbsent(entry.getKey(), new TermPostings()) == null) {
+				grams.add(entry.getKey());
+			}
+			TermPostings postings = index.get(entry.getKey());
+			for (int i = 0; i < from.size(); i++) {
+				postings.put(ids[from.document(i)], from.positions(i));
+				postings.get(ids[from.document(i)]).seal();
 			}
 		}
-
+		changed();
 	}
 
 }
@@ -1,19 +1,16 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.List;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-
 /**
  * @author rmavidipalli InvertedIndexBuilder reads a file and stem's the file
  */
 public class InvertedIndexBuilder {
 
 	/**
-	 * Adds all text files for given directory path and index
+	 * Adds all text files for given directory path and index, sealing the index
+	 * once every file has been added
 	 * 
 	 * @param root  directory path to find text files
 	 * @param index InvertedIndex to add text files
@@ -24,28 +21,44 @@ public class InvertedIndexBuilder {
 		for (Path file : filePaths) {
 			InvertedIndexBuilder.addFile(file, index);
 		}
+		index.seal();
 	}
 
 	/**
 	 * Takes a path and index reads the file and stems the file, Lastly adds the
-	 * stemwords to the index and updates the location
+	 * stemwords to the index and updates the location. The file is tokenized
+	 * straight from its bytes, numbering the words from 1 across the whole file.
 	 * 
 	 * @param path  path to parse and into the InvertedIndex
 	 * @param index the InvertedIndex
 	 * @throws IOException
+	 * @see TextFileReader#tokenize(Path, java.util.function.Consumer)
 	 */
 	public static void addFile(Path path, InvertedIndex index) throws IOException {
-		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);) {
-			String line = null;
-			int position = 1;
-			SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-			String location = path.toString();
-			while ((line = reader.readLine()) != null) {
-				String[] words = TextParser.parse(line);
-				for (String word : words) {
-					index.add(stemmer.stem(word).toString(), location, position++);
-				}
-			}
-		}
+		int[] position = { 1 };
+		CachingStemmer stemmer = CachingStemmer.ENGLISH;
+		String location = path.toString();
+		TextFileReader.tokenize(path, word -> index.add(stemmer.stem(word).toString(), location, position[0]++));
+	}
+
+	/**
+	 * Stems and adds the words of a range of a file starting at a line break,
+	 * numbering them from 1 as if the range were the whole file. The positions
+	 * are moved past the words of the ranges before once those are known.
+	 * 
+	 * @param channel  the open file
+	 * @param start    the offset of the first byte
+	 * @param end      the offset after the last byte
+	 * @param location the location of the file
+	 * @param index    the InvertedIndex
+	 * @throws IOException if unable to read the file or it is not valid UTF-8
+	 * @see TextFileReader#split(FileChannel, long)
+	 */
+	public static void addRange(FileChannel channel, long start, long end, String location, InvertedIndex index)
+			throws IOException {
+		int[] position = { 1 };
+		CachingStemmer stemmer = CachingStemmer.ENGLISH;
+		TextFileReader.tokenize(channel, start, end,
+				word -> index.add(stemmer.stem(word).toString(), location, position[0]++));
 	}
 }
@@ -1,6 +1,13 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -11,8 +18,15 @@ import org.apache.logging.log4j.Logger;
 public class InvertedIndexBuilderThread {
 	public static final Logger log = LogManager.getLogger();
 
+	/** The smallest file split into ranges indexed in parallel */
+	public static final long SPLIT_THRESHOLD = 64L << 20;
+
+	/** The length of a range of a split file */
+	public static final long RANGE = 32L << 20;
+
 	/**
-	 * Creates a thread to add every single text file found in the directory path
+	 * Creates a thread to add every single text file found in the directory path,
+	 * then seals the index once every file has been added
 	 * 
 	 * @param root  directory path to find text files
 	 * @param index InvertedIndex to add files too
@@ -30,6 +44,177 @@ public class InvertedIndexBuilderThread {
 			System.err.println("Unable to add file " + root.toString());
 		} finally {
 			queue.finish();
+			index.seal();
+		}
+	}
+
+	/**
+	 * Adds every text file found in the directory path using a fork/join
+	 * reduction. Groups of files are indexed into local indexes in parallel, the
+	 * local indexes are merged pairwise in parallel, and the final result is added
+	 * to the index once before the index is sealed. Only the last step takes the
+	 * lock of the index, so the build scales with the number of threads instead of
+	 * queueing up on the index.
+	 *
+	 * @param root    directory path to find text files
+	 * @param index   InvertedIndex to add files too
+	 * @param threads the number of threads to use
+	 */
+	public static void addFilesBulk(Path root, ThreadSafeIndex index, int threads) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Path> filePaths = TextFileFinder.findTextFiles(root);
+			int leaf = Math.max(1, filePaths.size() / (threads * Reducer.LEAVES_PER_THREAD));
+			InvertedIndex local = pool.invoke(new Reducer(filePaths, 0, filePaths.size(), leaf));
+			index.addAll(local);
+		} catch (IOException e) {
+			System.err.println("Unable to add file " + root.toString());
+		} finally {
+			pool.shutdown();
+			index.seal();
+		}
+	}
+
+	/**
+	 * Adds a file to a local index. A file of at least {@link #SPLIT_THRESHOLD}
+	 * bytes is split into ranges of lines that are indexed in parallel, so a
+	 * single large file uses every core. The ranges run in the pool of the calling
+	 * task, or in the common pool when called from a work queue.
+	 *
+	 * @param path  the file to add
+	 * @param local the local index to add to
+	 * @throws IOException if unable to read the file or it is not valid UTF-8
+	 * @see Splitter
+	 */
+	public static void addFile(Path path, InvertedIndex local) throws IOException {
+		if (Files.size(path) < SPLIT_THRESHOLD) {
+			InvertedIndexBuilder.addFile(path, local);
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long[] offsets = TextFileReader.split(channel, RANGE);
+			log.info("Split {} into {} ranges", path.toString(), offsets.length - 1);
+			local.addAll(new Splitter(channel, path.toString(), offsets, 0, offsets.length - 1).invoke());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Indexes a range of files by splitting it in half until it is small enough to
+	 * index directly, then merging the two halves.
+	 */
+	private static class Reducer extends RecursiveTask<InvertedIndex> {
+		private static final long serialVersionUID = 1L;
+
+		/** The number of leaves per thread, so that threads finishing early find more work */
+		public static final int LEAVES_PER_THREAD = 8;
+
+		private final List<Path> files;
+		private final int start;
+		private final int end;
+		private final int leaf;
+
+		/**
+		 * Initializes a task for the files from start inclusive to end exclusive.
+		 *
+		 * @param files the files to index
+		 * @param start the first file of the range
+		 * @param end   the end of the range
+		 * @param leaf  the largest range that is indexed without splitting it
+		 */
+		public Reducer(List<Path> files, int start, int end, int leaf) {
+			this.files = files;
+			this.start = start;
+			this.end = end;
+			this.leaf = leaf;
+		}
+
+		@Override
+		protected InvertedIndex compute() {
+			if (end - start <= leaf) {
+				InvertedIndex local = new InvertedIndex();
+				for (int i = start; i < end; i++) {
+					try {
+						log.info("Add files {}", files.get(i).toString());
+						addFile(files.get(i), local);
+					} catch (IOException e) {
+						System.err.println("Unable to add path" + files.get(i).toString());
+					}
+				}
+				return local;
+			}
+			int middle = (start + end) >>> 1;
+			Reducer left = new Reducer(files, start, middle, leaf);
+			left.fork();
+			InvertedIndex right = new Reducer(files, middle, end, leaf).compute();
+			InvertedIndex merged = left.join();
+			merged.addAll(right);
+			return merged;
+		}
+	}
+
+	/**
+	 * Indexes the ranges of a split file by splitting them in half until a single
+	 * range is left, indexing it with positions numbered from 1, then merging the
+	 * two halves. The positions of the right half are moved past the words of the
+	 * left half before merging, so the result is the same as indexing the whole
+	 * file in order.
+	 */
+	private static class Splitter extends RecursiveTask<InvertedIndex> {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final String location;
+		private final long[] offsets;
+		private final int start;
+		private final int end;
+
+		/**
+		 * Initializes a task for the ranges from start inclusive to end exclusive.
+		 *
+		 * @param channel  the open file
+		 * @param location the location of the file
+		 * @param offsets  the offsets the ranges start at followed by the size of the
+		 *                 file
+		 * @param start    the first range
+		 * @param end      the end of the ranges
+		 */
+		public Splitter(FileChannel channel, String location, long[] offsets, int start, int end) {
+			this.channel = channel;
+			this.location = location;
+			this.offsets = offsets;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected InvertedIndex compute() {
+			if (end - start == 1) {
+				InvertedIndex local = new InvertedIndex();
+				try {
+					InvertedIndexBuilder.addRange(channel, offsets[start], offsets[end], location, local);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return local;
+			}
+			int middle = (start + end) >>> 1;
+			Splitter left = new Splitter(channel, location, offsets, start, middle);
+			left.fork();
+			InvertedIndex right = new Splitter(channel, location, offsets, middle, end).compute();
+			InvertedIndex merged = left.join();
+			int id = merged.documents().id(location);
+			if (id >= 0) {
+				int offset = merged.documents().wordCount(id);
+				for (TermPostings postings : right.terms().values()) {
+					for (int i = 0; i < postings.size(); i++) {
+						postings.positions(i).shift(offset);
+					}
+				}
+			}
+			merged.addAll(right);
+			return merged;
 		}
 	}
 
@@ -52,7 +237,7 @@ public class InvertedIndexBuilderThread {
 			try {
 				log.info("Add files {}", path.toString());
 				InvertedIndex local = new InvertedIndex();
-				InvertedIndexBuilder.addFile(path, local);
+				addFile(path, local);
 				index.addAll(local);
 			} catch (IOException e) {
 				System.err.println("Unable to add path" + path.toString());
@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Maps every k-gram of the terms of an in-memory index to the terms containing
+ * it, so wildcard patterns such as {@code *ing} or {@code re*ion} find their
+ * terms without scanning the whole dictionary. A term is padded with
+ * {@link #BOUNDARY} on both sides before it is cut into grams of {@link #K}
+ * characters, so the grams of a pattern also pin down where its pieces start
+ * and end.
+ *
+ * The grams of a pattern only narrow down the terms, so the terms of its rarest
+ * gram are checked against the pattern. The work is about the number of terms
+ * sharing that gram rather than the size of the dictionary.
+ *
+ * Changed together with the map it indexes, under the same lock.
+ *
+ * @see KGramTable
+ * @see MemorySegment#wildcard(String, List)
+ * @author Rugved Mavidipalli
+ */
+public class KGramIndex {
+
+	/** The number of characters in a gram */
+	public static final int K = 3;
+
+	/** Marks the start and end of a term */
+	public static final char BOUNDARY = '$';
+
+	/** Matches any number of characters in a pattern */
+	public static final char WILDCARD = '*';
+
+	/** Maps each gram to the terms containing it */
+	private final HashMap<String, ArrayList<String>> grams;
+
+	/**
+	 * Initializes an empty index.
+	 */
+	public KGramIndex() {
+		this.grams = new HashMap<String, ArrayList<String>>();
+	}
+
+	/**
+	 * Adds a term new to the indexed map.
+	 *
+	 * @param term the term
+	 */
+	public void add(String term) {
+		for (String gram : grams(term)) {
+			grams.computeIfAbsent(gram, key -> new ArrayList<String>()).add(term);
+		}
+	}
+
+	/**
+	 * Removes terms no longer in the indexed map, going through the terms of each
+	 * gram involved once.
+	 *
+	 * @param terms the terms to remove
+	 */
+	public void removeAll(Collection<String> terms) {
+		HashSet<String> removed = new HashSet<String>(terms);
+		HashSet<String> changed = new HashSet<String>();
+		for (String term : removed) {
+			changed.addAll(grams(term));
+		}
+		for (String gram : changed) {
+			ArrayList<String> list = grams.get(gram);
+			if (list != null) {
+				list.removeIf(removed::contains);
+				if (list.isEmpty()) {
+					grams.remove(gram);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the terms sharing the rarest gram of a pattern, which include every
+	 * term matching it.
+	 *
+	 * @param pattern the pattern
+	 * @return the terms to check against the pattern in no particular order, or
+	 *         null if the terms starting with the prefix of the pattern should be
+	 *         checked instead
+	 * @see #usePrefix(String)
+	 */
+	public List<String> candidates(String pattern) {
+		if (usePrefix(pattern)) {
+			return null;
+		}
+		List<String> rarest = null;
+		for (String gram : patternGrams(pattern)) {
+			List<String> terms = grams.get(gram);
+			if (terms == null) {
+				return List.of();
+			}
+			if (rarest == null || terms.size() < rarest.size()) {
+				rarest = terms;
+			}
+		}
+		return rarest;
+	}
+
+	/**
+	 * Checks if the terms starting with the characters of a pattern before its
+	 * first wildcard should be checked rather than the terms of a gram. They are
+	 * no more than the terms of the first gram once there are {@code K - 1} of
+	 * them, and are found in sorted order, while a pattern without grams has
+	 * nothing else to go on.
+	 *
+	 * @param pattern the pattern
+	 * @return true if the prefix should be used
+	 */
+	public static boolean usePrefix(String pattern) {
+		return prefix(pattern).length() >= K - 1 || patternGrams(pattern).isEmpty();
+	}
+
+	/**
+	 * Returns the distinct grams of a term padded with {@link #BOUNDARY}.
+	 *
+	 * @param term the term
+	 * @return the grams in order of first appearance
+	 */
+	public static Collection<String> grams(String term) {
+		String padded = BOUNDARY + term + BOUNDARY;
+		LinkedHashSet<String> found = new LinkedHashSet<String>();
+		for (int i = 0; i + K <= padded.length(); i++) {
+			found.add(padded.substring(i, i + K));
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the grams every term matching a pattern contains, which are the
+	 * grams of the padded pattern not crossing a {@link #WILDCARD}.
+	 *
+	 * @param pattern the pattern
+	 * @return the grams, empty if no piece of the pattern is long enough
+	 */
+	public static Collection<String> patternGrams(String pattern) {
+		String padded = BOUNDARY + pattern + BOUNDARY;
+		LinkedHashSet<String> found = new LinkedHashSet<String>();
+		int start = 0;
+		while (start < padded.length()) {
+			int end = padded.indexOf(WILDCARD, start);
+			end = end < 0 ? padded.length() : end;
+			for (int i = start; i + K <= end; i++) {
+				found.add(padded.substring(i, i + K));
+			}
+			start = end + 1;
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the characters of a pattern before its first {@link #WILDCARD},
+	 * which every matching term starts with.
+	 *
+	 * @param pattern the pattern
+	 * @return the prefix, empty if the pattern starts with a wildcard
+	 */
+	public static String prefix(String pattern) {
+		int wildcard = pattern.indexOf(WILDCARD);
+		return wildcard < 0 ? pattern : pattern.substring(0, wildcard);
+	}
+
+	/**
+	 * Checks if a pattern has a {@link #WILDCARD}.
+	 *
+	 * @param word the query word
+	 * @return true if the word is a pattern
+	 */
+	public static boolean isPattern(String word) {
+		return word.indexOf(WILDCARD) >= 0;
+	}
+
+	/**
+	 * Checks if a term matches a pattern, where each {@link #WILDCARD} matches
+	 * any number of characters.
+	 *
+	 * @param pattern the pattern
+	 * @param term    the term
+	 * @return true if the whole term matches
+	 */
+	public static boolean matches(String pattern, String term) {
+		int p = 0;
+		int t = 0;
+		// where to resume after the last wildcard if the characters stop matching
+		int star = -1;
+		int resume = 0;
+		while (t < term.length()) {
+			if (p < pattern.length() && pattern.charAt(p) == WILDCARD) {
+				star = p++;
+				resume = t;
+			} else if (p < pattern.length() && pattern.charAt(p) == term.charAt(t)) {
+				p++;
+				t++;
+			} else if (star >= 0) {
+				p = star + 1;
+				t = ++resume;
+			} else {
+				return false;
+			}
+		}
+		while (p < pattern.length() && pattern.charAt(p) == WILDCARD) {
+			p++;
+		}
+		return p == pattern.length();
+	}
+}
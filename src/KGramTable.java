@@ -0,0 +1,323 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * An immutable k-gram index over a sorted term dictionary, mapping each gram to
+ * the indexes of the terms containing it. Read in place from a buffer in the
+ * layout it is saved in, so a sealed segment keeps it in a heap buffer and a
+ * loaded segment searches the mapped {@value IndexFile#GRAMS} file without
+ * copying it:
+ *
+ * <ul>
+ * <li>the number of grams and a table of entry offsets</li>
+ * <li>one entry per gram in sorted order holding the gram, its number of
+ * terms, the length of its term indexes and the varint encoded deltas of the
+ * increasing term indexes</li>
+ * </ul>
+ *
+ * Grams are cut from terms one UTF-16 char at a time, so a letter outside the
+ * Basic Multilingual Plane may be split between two grams. Grams are therefore
+ * encoded like the terms of a {@link TermDictionary}, which keeps the halves of
+ * a split letter and sorts bytes in the same order as the grams, and are
+ * searched by comparing bytes in place.
+ *
+ * @see KGramIndex
+ * @author Rugved Mavidipalli
+ */
+public class KGramTable {
+
+	/** The estimated bytes used by a gram being built, not counting its chars */
+	private static final int GRAM_OVERHEAD = 96;
+
+	/** The table */
+	private final ByteBuffer buffer;
+
+	/** The offset of the table in the buffer */
+	private final int base;
+
+	/** The number of grams */
+	private final int size;
+
+	/**
+	 * Initializes a table read from a buffer.
+	 *
+	 * @param buffer the buffer holding the table
+	 * @param base   the offset of the table in the buffer
+	 */
+	public KGramTable(ByteBuffer buffer, int base) {
+		this.buffer = buffer;
+		this.base = base;
+		this.size = buffer.getInt(base);
+	}
+
+	/**
+	 * Returns the indexes of the terms sharing the rarest gram of a pattern, which
+	 * include every term matching it.
+	 *
+	 * @param pattern the pattern
+	 * @return the increasing term indexes to check against the pattern, or null if
+	 *         the terms starting with the prefix of the pattern should be checked
+	 *         instead
+	 * @see KGramIndex#usePrefix(String)
+	 */
+	public int[] candidates(String pattern) {
+		if (KGramIndex.usePrefix(pattern)) {
+			return null;
+		}
+		int rarest = -1;
+		int fewest = Integer.MAX_VALUE;
+		for (String gram : KGramIndex.patternGrams(pattern)) {
+			int index = search(gram);
+			if (index < 0) {
+				return new int[0];
+			}
+			int offset = entry(index);
+			int count = buffer.getInt(offset + 4 + buffer.getInt(offset));
+			if (count < fewest) {
+				rarest = offset;
+				fewest = count;
+			}
+		}
+		int[] position = { rarest + 4 + buffer.getInt(rarest) + 8 };
+		int[] terms = new int[fewest];
+		int term = 0;
+		for (int i = 0; i < fewest; i++) {
+			term += IndexFile.readVarInt(buffer, position);
+			terms[i] = term;
+		}
+		return terms;
+	}
+
+	/**
+	 * Binary searches the sorted grams.
+	 *
+	 * @param gram the gram to look for
+	 * @return the index of the gram, or a negative value if not found
+	 */
+	private int search(String gram) {
+		byte[] key = TermDictionary.encode(gram);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compare = compare(middle, key);
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Compares the gram at an index to a key as unsigned bytes, reading it in
+	 * place.
+	 *
+	 * @param index the index between 0 and the number of grams
+	 * @param key   the encoded gram to compare to
+	 * @return negative if the gram at the index sorts first
+	 */
+	private int compare(int index, byte[] key) {
+		int offset = entry(index);
+		int length = buffer.getInt(offset);
+		int limit = Math.min(length, key.length);
+		for (int i = 0; i < limit; i++) {
+			byte b = buffer.get(offset + 4 + i);
+			if (b != key[i]) {
+				return (b & 0xFF) - (key[i] & 0xFF);
+			}
+		}
+		return length - key.length;
+	}
+
+	/**
+	 * Returns the offset of the entry at an index.
+	 *
+	 * @param index the index between 0 and the number of grams
+	 * @return the offset of the entry
+	 */
+	private int entry(int index) {
+		return base + buffer.getInt(base + 4 + 4 * index);
+	}
+
+	/**
+	 * Collects the grams of terms added in sorted order and writes the table.
+	 */
+	public static class Builder {
+		/** The term indexes of each gram */
+		private final HashMap<String, Postings> grams;
+
+		/** The index of the next term */
+		private int next;
+
+		/** The estimated bytes used by the grams and their postings */
+		private long memory;
+
+		/**
+		 * Initializes an empty builder.
+		 */
+		public Builder() {
+			this(0);
+		}
+
+		/**
+		 * Initializes an empty builder for the terms of a dictionary starting at an
+		 * index, so a dictionary too large to hold its grams in memory can be built
+		 * in runs.
+		 *
+		 * @param first the index of the first term added
+		 * @see #writeRun(DataOutputStream)
+		 */
+		public Builder(int first) {
+			this.grams = new HashMap<String, Postings>();
+			this.next = first;
+			this.memory = 0;
+		}
+
+		/**
+		 * Adds the next term of the dictionary.
+		 *
+		 * @param term the term
+		 */
+		public void add(String term) {
+			for (String gram : KGramIndex.grams(term)) {
+				Postings postings = grams.get(gram);
+				if (postings == null) {
+					postings = new Postings();
+					grams.put(gram, postings);
+					memory += GRAM_OVERHEAD + 2L * gram.length() + postings.bytes.length;
+				}
+				int capacity = postings.bytes.length;
+				postings.add(next);
+				memory += postings.bytes.length - capacity;
+			}
+			next++;
+		}
+
+		/**
+		 * Returns the estimated bytes used by the grams added so far.
+		 *
+		 * @return the estimated memory use
+		 */
+		public long memory() {
+			return memory;
+		}
+
+		/**
+		 * Returns the table of the terms added so far.
+		 *
+		 * @return the table
+		 */
+		public KGramTable build() {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try {
+				write(new DataOutputStream(bytes));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return new KGramTable(ByteBuffer.wrap(bytes.toByteArray()), 0);
+		}
+
+		/**
+		 * Writes the table of the terms added so far.
+		 *
+		 * @param out the stream to write to
+		 * @throws IOException if unable to write or the table is larger than the
+		 *                     format supports
+		 */
+		public void write(DataOutputStream out) throws IOException {
+			TreeMap<String, byte[]> sorted = new TreeMap<String, byte[]>();
+			for (Entry<String, Postings> entry : grams.entrySet()) {
+				sorted.put(entry.getKey(), TermDictionary.encode(entry.getKey()));
+			}
+			long offset = 4 + 4L * sorted.size();
+			int[] offsets = new int[sorted.size()];
+			int index = 0;
+			for (Entry<String, byte[]> entry : sorted.entrySet()) {
+				offsets[index++] = (int) offset;
+				offset += 4 + entry.getValue().length + 8 + grams.get(entry.getKey()).length;
+			}
+			if (offset >= Integer.MAX_VALUE) {
+				throw new IOException("Gram table is larger than the format supports.");
+			}
+			out.writeInt(sorted.size());
+			for (int value : offsets) {
+				out.writeInt(value);
+			}
+			for (Entry<String, byte[]> entry : sorted.entrySet()) {
+				Postings postings = grams.get(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+				out.writeInt(postings.count);
+				out.writeInt(postings.length);
+				out.write(postings.bytes, 0, postings.length);
+			}
+			out.flush();
+		}
+
+		/**
+		 * Writes the grams of the terms added so far as a sorted run, to be merged
+		 * with the runs of the terms before and after it. Each gram is written as
+		 * its encoded length and bytes, its number of terms, its last term index,
+		 * the length of its term indexes and their deltas, the first of which is
+		 * the first term index itself.
+		 *
+		 * @param out the stream to write to
+		 * @throws IOException if unable to write
+		 * @see KGramTableWriter
+		 */
+		public void writeRun(DataOutputStream out) throws IOException {
+			for (Entry<String, Postings> entry : new TreeMap<String, Postings>(grams).entrySet()) {
+				byte[] gram = TermDictionary.encode(entry.getKey());
+				Postings postings = entry.getValue();
+				out.writeInt(gram.length);
+				out.write(gram);
+				out.writeInt(postings.count);
+				out.writeInt(postings.last);
+				out.writeInt(postings.length);
+				out.write(postings.bytes, 0, postings.length);
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * The varint encoded term indexes of a gram being built.
+	 */
+	private static class Postings {
+		/** The encoded deltas */
+		private byte[] bytes = new byte[8];
+
+		/** The number of bytes used */
+		private int length = 0;
+
+		/** The number of terms */
+		private int count = 0;
+
+		/** The last term index added */
+		private int last = 0;
+
+		/**
+		 * Adds a term index greater than the last.
+		 *
+		 * @param term the term index
+		 */
+		public void add(int term) {
+			if (length + 5 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			length = PostingList.writeVarInt(term - last, bytes, length);
+			last = term;
+			count++;
+		}
+	}
+}
@@ -0,0 +1,346 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Writes the {@link KGramTable} of a term dictionary added one term at a time
+ * in sorted order, within a memory budget. The grams are collected by a
+ * {@link KGramTable.Builder} until it uses up the budget, when they are sorted
+ * and spilled to a run in the target directory. Runs hold consecutive ranges of
+ * term indexes, so the postings of a gram found in several runs are joined in
+ * run order. Like {@link ExternalIndexBuilder}, runs are merged into larger runs
+ * first if there are more than {@link ExternalIndexBuilder#FAN_IN} of them, and
+ * finally into the table.
+ *
+ * If no run was spilled the table is written straight from memory.
+ *
+ * @see IndexFileWriter
+ * @author Rugved Mavidipalli
+ */
+public class KGramTableWriter implements Closeable {
+
+	/** The suffix of the temporary files */
+	private static final String TEMPORARY = ".tmp";
+
+	/** The directory written to */
+	private final Path directory;
+
+	/** The memory budget in bytes */
+	private final long budget;
+
+	/** The grams of the current run */
+	private KGramTable.Builder grams;
+
+	/** The index of the next term */
+	private int next;
+
+	/** The temporary files written so far */
+	private final ArrayList<Path> temporaries;
+
+	/** The runs waiting to be merged */
+	private final ArrayList<Path> runs;
+
+	/** Scratch space for one variable length integer */
+	private final byte[] buffer;
+
+	/**
+	 * Initializes a writer spilling to the given directory.
+	 *
+	 * @param directory the directory to spill runs to
+	 * @param budget    the memory budget in bytes
+	 */
+	public KGramTableWriter(Path directory, long budget) {
+		this.directory = directory;
+		this.budget = budget;
+		this.grams = new KGramTable.Builder();
+		this.next = 0;
+		this.temporaries = new ArrayList<Path>();
+		this.runs = new ArrayList<Path>();
+		this.buffer = new byte[5];
+	}
+
+	/**
+	 * Adds the next term of the dictionary, spilling the current run if it uses
+	 * up the budget.
+	 *
+	 * @param term the term
+	 * @throws IOException if unable to spill
+	 */
+	public void add(String term) throws IOException {
+		grams.add(term);
+		next++;
+		if (grams.memory() >= budget) {
+			spill();
+		}
+	}
+
+	/**
+	 * Writes the table of every term added to a saved index file.
+	 *
+	 * @param path the file to write
+	 * @throws IOException if unable to read a run or write the table, or the table
+	 *                     is larger than the format supports
+	 */
+	public void write(Path path) throws IOException {
+		if (runs.isEmpty()) {
+			try (DataOutputStream out = IndexFile.open(path)) {
+				grams.write(out);
+			}
+			return;
+		}
+		spill();
+		int generation = 0;
+		List<Path> remaining = runs;
+		while (remaining.size() > ExternalIndexBuilder.FAN_IN) {
+			ArrayList<Path> merged = new ArrayList<Path>();
+			for (int i = 0; i < remaining.size(); i += ExternalIndexBuilder.FAN_IN) {
+				List<Path> group = remaining.subList(i, Math.min(remaining.size(), i + ExternalIndexBuilder.FAN_IN));
+				Path run = temporary("run-" + generation + "-" + merged.size());
+				try (DataOutputStream out = output(run)) {
+					merge(group, out, null);
+				}
+				for (Path done : group) {
+					Files.delete(done);
+				}
+				merged.add(run);
+			}
+			remaining = merged;
+			generation++;
+		}
+
+		Path entries = temporary("entries");
+		Path offsets = temporary("offsets");
+		long size;
+		try (DataOutputStream out = output(entries); DataOutputStream table = output(offsets)) {
+			size = merge(remaining, out, table);
+		}
+		long count = Files.size(offsets) / 4;
+		long base = 4 + 4 * count;
+		if (base + size >= Integer.MAX_VALUE) {
+			throw new IOException("Gram table is larger than the format supports.");
+		}
+		try (DataOutputStream out = IndexFile.open(path);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(offsets)))) {
+			out.writeInt((int) count);
+			for (int i = 0; i < count; i++) {
+				out.writeInt((int) base + in.readInt());
+			}
+			try (InputStream copy = Files.newInputStream(entries)) {
+				copy.transferTo(out);
+			}
+		}
+	}
+
+	/**
+	 * Removes the temporary files.
+	 *
+	 * @throws IOException if unable to remove a file
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Path path : temporaries) {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * Spills the grams of the current run and starts the next one.
+	 *
+	 * @throws IOException if unable to write the run
+	 */
+	private void spill() throws IOException {
+		Path run = temporary("run-" + runs.size());
+		try (DataOutputStream out = output(run)) {
+			grams.writeRun(out);
+		}
+		runs.add(run);
+		grams = new KGramTable.Builder(next);
+	}
+
+	/**
+	 * Merges runs into a run, or into the entries of a table along with their
+	 * offsets. When the same gram is found in several runs, the first term index
+	 * of each later run is written as a delta from the last of the run before.
+	 *
+	 * @param paths   the runs to merge, in the order they were written
+	 * @param out     where the merged grams go
+	 * @param offsets where the offset of each table entry goes relative to the
+	 *                first, or null to write a run
+	 * @return the number of bytes written to out
+	 * @throws IOException if unable to read a run or write the result
+	 */
+	private long merge(List<Path> paths, DataOutputStream out, DataOutputStream offsets) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+		ArrayList<RunReader> same = new ArrayList<RunReader>();
+		long size = 0;
+		try {
+			for (int i = 0; i < paths.size(); i++) {
+				RunReader reader = new RunReader(paths.get(i), i);
+				if (reader.next()) {
+					queue.add(reader);
+				} else {
+					reader.close();
+				}
+			}
+			while (!queue.isEmpty()) {
+				byte[] gram = queue.peek().gram;
+				int count = 0;
+				int length = 0;
+				int last = 0;
+				while (!queue.isEmpty() && Arrays.equals(queue.peek().gram, gram)) {
+					RunReader reader = queue.poll();
+					count += reader.count;
+					length += PostingList.writeVarInt(reader.first - last, buffer, 0) + reader.remaining;
+					last = reader.last;
+					same.add(reader);
+				}
+				if (offsets != null) {
+					offsets.writeInt((int) size);
+				}
+				out.writeInt(gram.length);
+				out.write(gram);
+				out.writeInt(count);
+				if (offsets == null) {
+					out.writeInt(last);
+				}
+				out.writeInt(length);
+				size += 4 + gram.length + 4 + (offsets == null ? 4 : 0) + 4 + length;
+				if (size >= Integer.MAX_VALUE) {
+					throw new IOException("Gram table is larger than the format supports.");
+				}
+				last = 0;
+				for (RunReader reader : same) {
+					out.write(buffer, 0, PostingList.writeVarInt(reader.first - last, buffer, 0));
+					reader.copy(out);
+					last = reader.last;
+					if (reader.next()) {
+						queue.add(reader);
+					} else {
+						reader.close();
+					}
+				}
+				same.clear();
+			}
+		} finally {
+			for (RunReader reader : queue) {
+				reader.close();
+			}
+			for (RunReader reader : same) {
+				reader.close();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the path of a temporary file, remembering it so it is removed on
+	 * close.
+	 *
+	 * @param name the name of the file
+	 * @return the temporary path
+	 */
+	private Path temporary(String name) {
+		Path path = directory.resolve(IndexFile.GRAMS + "." + name + TEMPORARY);
+		temporaries.add(path);
+		return path;
+	}
+
+	/**
+	 * Opens a temporary file for writing.
+	 *
+	 * @param path the file to open
+	 * @return the output stream
+	 * @throws IOException if unable to open the file
+	 */
+	private static DataOutputStream output(Path path) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+	}
+
+	/**
+	 * Reads a run one gram at a time, up to the start of its term indexes after
+	 * the first. Readers order by their current gram as unsigned bytes and then by
+	 * the order of their runs.
+	 */
+	private static class RunReader implements Comparable<RunReader>, Closeable {
+		private final DataInputStream in;
+		private final int order;
+		private byte[] gram;
+		private int count;
+		private int last;
+		private int first;
+		private int remaining;
+
+		public RunReader(Path path, int order) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+			this.order = order;
+		}
+
+		/**
+		 * Moves to the next gram, reading its first term index.
+		 *
+		 * @return false if there are no more grams
+		 * @throws IOException if unable to read
+		 */
+		public boolean next() throws IOException {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+			gram = new byte[length];
+			in.readFully(gram);
+			count = in.readInt();
+			last = in.readInt();
+			remaining = in.readInt();
+			first = 0;
+			int shift = 0;
+			int current;
+			do {
+				current = in.readUnsignedByte();
+				first |= (current & 0x7F) << shift;
+				shift += 7;
+				remaining--;
+			} while ((current & 0x80) != 0);
+			return true;
+		}
+
+		/**
+		 * Copies the term index deltas of the current gram after the first.
+		 *
+		 * @param out the stream to copy to
+		 * @throws IOException if unable to read or write
+		 */
+		public void copy(DataOutputStream out) throws IOException {
+			byte[] bytes = new byte[Math.min(remaining, 8192)];
+			while (remaining > 0) {
+				int read = Math.min(remaining, bytes.length);
+				in.readFully(bytes, 0, read);
+				out.write(bytes, 0, read);
+				remaining -= read;
+			}
+		}
+
+		@Override
+		public int compareTo(RunReader other) {
+			int compare = Arrays.compareUnsigned(gram, other.gram);
+			return compare != 0 ? compare : Integer.compare(order, other.order);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Accepts the words within an edit distance of a word, counting inserted,
+ * deleted and replaced characters. A state is a row of the edit distance table
+ * of the word against the characters read so far, with values capped at one
+ * more than the distance, so a state can no longer reach an accepted word once
+ * every value in its row is over the distance.
+ *
+ * The automaton is intersected with the sorted term dictionary of a segment by
+ * walking the terms in order. Terms sharing a prefix with the term before reuse
+ * the states of that prefix, and when a prefix reaches a dead state every term
+ * starting with it is skipped by seeking the dictionary past the prefix, so only
+ * a small part of the dictionary is read.
+ *
+ * @see IndexSearcher#fuzzySearch(java.util.TreeSet, int, int)
+ * @author Rugved Mavidipalli
+ */
+public class LevenshteinAutomaton {
+
+	/** The largest edit distance supported */
+	public static final int MAX_DISTANCE = 2;
+
+	/** The word to match */
+	private final String word;
+
+	/** The most edits allowed */
+	private final int distance;
+
+	/**
+	 * Initializes an automaton.
+	 *
+	 * @param word     the word to match
+	 * @param distance the most edits allowed, between 0 and {@link #MAX_DISTANCE}
+	 */
+	public LevenshteinAutomaton(String word, int distance) {
+		if (distance < 0 || distance > MAX_DISTANCE) {
+			throw new IllegalArgumentException("Edit distance must be between 0 and " + MAX_DISTANCE + ": " + distance);
+		}
+		this.word = word;
+		this.distance = distance;
+	}
+
+	/**
+	 * Returns the state before any characters are read.
+	 *
+	 * @return the start state
+	 */
+	public int[] start() {
+		int[] row = new int[word.length() + 1];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = Math.min(i, distance + 1);
+		}
+		return row;
+	}
+
+	/**
+	 * Returns the state after reading a character.
+	 *
+	 * @param row the current state
+	 * @param c   the character read
+	 * @return the next state
+	 */
+	public int[] step(int[] row, char c) {
+		int[] next = new int[row.length];
+		next[0] = Math.min(row[0] + 1, distance + 1);
+		for (int i = 1; i < row.length; i++) {
+			int replace = row[i - 1] + (word.charAt(i - 1) == c ? 0 : 1);
+			int cost = Math.min(replace, Math.min(row[i], next[i - 1]) + 1);
+			next[i] = Math.min(cost, distance + 1);
+		}
+		return next;
+	}
+
+	/**
+	 * Checks if the characters read are within the distance of the word.
+	 *
+	 * @param row the state
+	 * @return true if the state accepts
+	 */
+	public boolean isMatch(int[] row) {
+		return row[row.length - 1] <= distance;
+	}
+
+	/**
+	 * Checks if reading more characters could still reach an accepted word.
+	 *
+	 * @param row the state
+	 * @return false if the state is dead
+	 */
+	public boolean canMatch(int[] row) {
+		for (int value : row) {
+			if (value <= distance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the postings of every term of a segment the automaton accepts.
+	 *
+	 * @param segment the segment to search
+	 * @param found   the postings found so far
+	 */
+	public void intersect(IndexSegment segment, List<TermPostings> found) {
+		int[][] states = new int[word.length() + distance + 2][];
+		states[0] = start();
+		String previous = "";
+		// the number of characters of the previous term with a state
+		int known = 0;
+		Iterator<String> terms = segment.terms("");
+		while (terms.hasNext()) {
+			String term = terms.next();
+			int depth = 0;
+			int limit = Math.min(known, term.length());
+			while (depth < limit && previous.charAt(depth) == term.charAt(depth)) {
+				depth++;
+			}
+			boolean dead = false;
+			while (depth < term.length() && !dead) {
+				if (depth + 1 == states.length) {
+					states = Arrays.copyOf(states, states.length * 2);
+				}
+				states[depth + 1] = step(states[depth], term.charAt(depth));
+				depth++;
+				dead = !canMatch(states[depth]);
+			}
+			previous = term;
+			known = depth;
+			if (dead) {
+				String next = successor(term, depth);
+				if (next == null) {
+					break;
+				}
+				terms = segment.terms(next);
+			} else if (isMatch(states[depth])) {
+				found.add(segment.postings(term));
+			}
+		}
+	}
+
+	/**
+	 * Returns the first string after every string starting with a prefix of a
+	 * term.
+	 *
+	 * @param term   the term
+	 * @param length the length of the prefix
+	 * @return the string to seek to, or null if no string follows the prefix
+	 */
+	private static String successor(String term, int length) {
+		while (length > 0 && term.charAt(length - 1) == Character.MAX_VALUE) {
+			length--;
+		}
+		if (length == 0) {
+			return null;
+		}
+		return term.substring(0, length - 1) + (char) (term.charAt(length - 1) + 1);
+	}
+}
@@ -0,0 +1,184 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often a lock is taken and how long threads wait for it and hold
+ * it. Several locks can share one instance, for example the stripes of a
+ * {@link StripedIndex}, to get totals for all of them.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class LockMetrics {
+
+	/** Read lock acquisitions */
+	private final LongAdder reads;
+
+	/** Write lock acquisitions */
+	private final LongAdder writes;
+
+	/** Total nanoseconds spent waiting for the read lock */
+	private final LongAdder readWait;
+
+	/** Total nanoseconds spent waiting for the write lock */
+	private final LongAdder writeWait;
+
+	/** Total nanoseconds the read lock was held */
+	private final LongAdder readHold;
+
+	/** Total nanoseconds the write lock was held */
+	private final LongAdder writeHold;
+
+	/** Longest wait for the read lock in nanoseconds */
+	private final LongAccumulator maxReadWait;
+
+	/** Longest wait for the write lock in nanoseconds */
+	private final LongAccumulator maxWriteWait;
+
+	/**
+	 * Initializes empty metrics.
+	 */
+	public LockMetrics() {
+		this.reads = new LongAdder();
+		this.writes = new LongAdder();
+		this.readWait = new LongAdder();
+		this.writeWait = new LongAdder();
+		this.readHold = new LongAdder();
+		this.writeHold = new LongAdder();
+		this.maxReadWait = new LongAccumulator(Math::max, 0);
+		this.maxWriteWait = new LongAccumulator(Math::max, 0);
+	}
+
+	/**
+	 * Records a read lock acquisition.
+	 *
+	 * @param wait the nanoseconds spent waiting
+	 */
+	public void readAcquired(long wait) {
+		reads.increment();
+		readWait.add(wait);
+		maxReadWait.accumulate(wait);
+	}
+
+	/**
+	 * Records a read lock release.
+	 *
+	 * @param hold the nanoseconds the lock was held
+	 */
+	public void readReleased(long hold) {
+		readHold.add(hold);
+	}
+
+	/**
+	 * Records a write lock acquisition.
+	 *
+	 * @param wait the nanoseconds spent waiting
+	 */
+	public void writeAcquired(long wait) {
+		writes.increment();
+		writeWait.add(wait);
+		maxWriteWait.accumulate(wait);
+	}
+
+	/**
+	 * Records a write lock release.
+	 *
+	 * @param hold the nanoseconds the lock was held
+	 */
+	public void writeReleased(long hold) {
+		writeHold.add(hold);
+	}
+
+	/**
+	 * Returns the number of read lock acquisitions.
+	 *
+	 * @return number of reads
+	 */
+	public long reads() {
+		return reads.sum();
+	}
+
+	/**
+	 * Returns the number of write lock acquisitions.
+	 *
+	 * @return number of writes
+	 */
+	public long writes() {
+		return writes.sum();
+	}
+
+	/**
+	 * Returns the total time spent waiting for the read lock.
+	 *
+	 * @return nanoseconds
+	 */
+	public long readWait() {
+		return readWait.sum();
+	}
+
+	/**
+	 * Returns the total time spent waiting for the write lock.
+	 *
+	 * @return nanoseconds
+	 */
+	public long writeWait() {
+		return writeWait.sum();
+	}
+
+	/**
+	 * Returns the total time the read lock was held.
+	 *
+	 * @return nanoseconds
+	 */
+	public long readHold() {
+		return readHold.sum();
+	}
+
+	/**
+	 * Returns the total time the write lock was held.
+	 *
+	 * @return nanoseconds
+	 */
+	public long writeHold() {
+		return writeHold.sum();
+	}
+
+	/**
+	 * Returns the longest wait for the read lock.
+	 *
+	 * @return nanoseconds
+	 */
+	public long maxReadWait() {
+		return maxReadWait.get();
+	}
+
+	/**
+	 * Returns the longest wait for the write lock.
+	 *
+	 * @return nanoseconds
+	 */
+	public long maxWriteWait() {
+		return maxWriteWait.get();
+	}
+
+	/*
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format(
+				"reads=%d readWaitMs=%.3f maxReadWaitMs=%.3f readHoldMs=%.3f "
+						+ "writes=%d writeWaitMs=%.3f maxWriteWaitMs=%.3f writeHoldMs=%.3f",
+				reads(), millis(readWait()), millis(maxReadWait()), millis(readHold()), writes(), millis(writeWait()),
+				millis(maxWriteWait()), millis(writeHold()));
+	}
+
+	/**
+	 * Converts nanoseconds to milliseconds.
+	 *
+	 * @param nanos the nanoseconds
+	 * @return milliseconds
+	 */
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read only {@link IndexSegment} served straight from the term dictionary and
+ * postings files of a saved index through {@link FileChannel#map}. Nothing is
+ * copied onto the heap until a term is looked up, and then only the postings of
+ * that term are decoded. Only reads absolute positions of the mapped buffers, so
+ * a segment can be searched by many threads at once.
+ *
+ * Terms are looked up by comparing the mapped bytes in place. The decoded
+ * postings of recently used terms are kept in a bounded map of two generations,
+ * the way {@link CachingStemmer} keeps stems, so searching the same words again
+ * neither decodes their postings nor loses the scoring bounds cached with them.
+ *
+ * @see IndexFile
+ * @author Rugved Mavidipalli
+ */
+public class MappedSegment implements IndexSegment {
+
+	/** The number of decoded terms kept in each generation */
+	public static final int CACHE_CAPACITY = 1024;
+
+	/** The mapped term dictionary */
+	private final MappedByteBuffer terms;
+
+	/** The mapped postings */
+	private final MappedByteBuffer postings;
+
+	/** The number of terms in the dictionary */
+	private final int size;
+
+	/** The mapped k-gram index, or null if the index was saved without one */
+	private final KGramTable grams;
+
+	/** The postings of the terms decoded since the last rotation, by term index */
+	private volatile ConcurrentHashMap<Integer, TermPostings> recent;
+
+	/** The postings of the terms decoded in the generation before */
+	private volatile ConcurrentHashMap<Integer, TermPostings> older;
+
+	/**
+	 * Maps the term dictionary and postings of the saved index in a directory.
+	 *
+	 * @param directory the directory of the saved index
+	 * @throws IOException if unable to map the files or the format is not supported
+	 */
+	public MappedSegment(Path directory) throws IOException {
+		this.terms = map(directory.resolve(IndexFile.TERMS));
+		this.postings = map(directory.resolve(IndexFile.POSTINGS));
+		this.size = terms.getInt(IndexFile.HEADER);
+		Path grams = directory.resolve(IndexFile.GRAMS);
+		this.grams = Files.exists(grams) ? new KGramTable(map(grams), IndexFile.HEADER) : null;
+		this.recent = new ConcurrentHashMap<Integer, TermPostings>();
+		this.older = new ConcurrentHashMap<Integer, TermPostings>();
+	}
+
+	/**
+	 * Returns the number of terms in the segment.
+	 *
+	 * @return number of terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the term at an index of the sorted dictionary.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the term
+	 */
+	public String term(int index) {
+		int offset = entry(index);
+		byte[] bytes = new byte[terms.getInt(offset)];
+		terms.get(offset + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * @see IndexSegment#postings(String)
+	 */
+	@Override
+	public TermPostings postings(String term) {
+		int index = search(term);
+		return index < 0 ? null : postings(index);
+	}
+
+	/**
+	 * Adds the postings of the terms from the first one at least the prefix while
+	 * they start with it, without searching the dictionary again for each term.
+	 *
+	 * @see IndexSegment#prefixed(String, List)
+	 */
+	@Override
+	public void prefixed(String prefix, List<TermPostings> found) {
+		int start = search(prefix);
+		for (int index = start < 0 ? -(start + 1) : start; index < size; index++) {
+			if (term(index).startsWith(prefix) == false) {
+				break;
+			}
+			found.add(postings(index));
+		}
+	}
+
+	/**
+	 * Checks the terms sharing the rarest gram of the pattern in the mapped k-gram
+	 * index, if the index was saved with one and the prefix of the pattern is not
+	 * enough to go on.
+	 *
+	 * @see IndexSegment#wildcard(String, List)
+	 */
+	@Override
+	public void wildcard(String pattern, List<TermPostings> found) {
+		int[] candidates = grams == null ? null : grams.candidates(pattern);
+		if (candidates == null) {
+			IndexSegment.super.wildcard(pattern, found);
+			return;
+		}
+		for (int index : candidates) {
+			if (KGramIndex.matches(pattern, term(index))) {
+				found.add(postings(index));
+			}
+		}
+	}
+
+	/**
+	 * Returns the postings of the term at an index of the sorted dictionary,
+	 * decoding them only if they are not cached.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the postings of the term
+	 */
+	private TermPostings postings(int index) {
+		TermPostings result = recent.get(index);
+		if (result != null) {
+			return result;
+		}
+		result = older.get(index);
+		if (result == null) {
+			result = decode(index);
+		}
+		ConcurrentHashMap<Integer, TermPostings> current = recent;
+		TermPostings found = current.putIfAbsent(index, result);
+		if (found != null) {
+			return found;
+		}
+		if (current.size() >= CACHE_CAPACITY) {
+			rotate(current);
+		}
+		return result;
+	}
+
+	/**
+	 * Makes a full recent generation the older one, unless another thread has
+	 * already done so.
+	 *
+	 * @param full the generation found full
+	 */
+	private synchronized void rotate(ConcurrentHashMap<Integer, TermPostings> full) {
+		if (recent == full) {
+			older = full;
+			recent = new ConcurrentHashMap<Integer, TermPostings>();
+		}
+	}
+
+	/**
+	 * Decodes the postings of the term at an index of the sorted dictionary.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the postings of the term
+	 */
+	private TermPostings decode(int index) {
+		int offset = entry(index);
+		offset += 4 + terms.getInt(offset);
+		int[] position = { (int) terms.getLong(offset) };
+		int count = terms.getInt(offset + 8);
+
+		TermPostings result = new TermPostings();
+		int document = 0;
+		for (int i = 0; i < count; i++) {
+			document += IndexFile.readVarInt(postings, position);
+			int frequency = IndexFile.readVarInt(postings, position);
+			byte[] encoded = new byte[IndexFile.readVarInt(postings, position)];
+			postings.get(position[0], encoded);
+			position[0] += encoded.length;
+			result.put(document, new PostingList(encoded, frequency));
+		}
+		return result;
+	}
+
+	/*
+	 * @see IndexSegment#terms(String)
+	 */
+	@Override
+	public Iterator<String> terms(String from) {
+		int start = search(from);
+		int first = start < 0 ? -(start + 1) : start;
+		return new Iterator<String>() {
+			private int next = first;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return term(next++);
+			}
+		};
+	}
+
+	/**
+	 * Binary searches the sorted dictionary for a term.
+	 *
+	 * @param term the term to look for
+	 * @return the index of the term, or {@code -(insertion point) - 1} if the term
+	 *         is not in the dictionary
+	 */
+	private int search(String term) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compare = compare(middle, term);
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Compares the term at an index to another the way {@link String#compareTo}
+	 * does, decoding the mapped UTF-8 bytes one UTF-16 char at a time in place
+	 * rather than into a new string.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @param term  the term to compare to
+	 * @return negative if the term at the index sorts first
+	 */
+	private int compare(int index, String term) {
+		int offset = entry(index);
+		int end = offset + 4 + terms.getInt(offset);
+		int position = offset + 4;
+		int length = term.length();
+		int i = 0;
+		char pending = 0;
+		while (true) {
+			char c;
+			if (pending != 0) {
+				c = pending;
+				pending = 0;
+			} else if (position < end) {
+				int b = terms.get(position++) & 0xFF;
+				if (b < 0x80) {
+					c = (char) b;
+				} else if (b < 0xE0) {
+					c = (char) ((b & 0x1F) << 6 | terms.get(position++) & 0x3F);
+				} else if (b < 0xF0) {
+					c = (char) ((b & 0x0F) << 12 | (terms.get(position++) & 0x3F) << 6 | terms.get(position++) & 0x3F);
+				} else {
+					int code = (b & 0x07) << 18 | (terms.get(position++) & 0x3F) << 12
+							| (terms.get(position++) & 0x3F) << 6 | terms.get(position++) & 0x3F;
+					c = Character.highSurrogate(code);
+					pending = Character.lowSurrogate(code);
+				}
+			} else {
+				return i - length;
+			}
+			if (i == length) {
+				return 1;
+			}
+			char other = term.charAt(i++);
+			if (c != other) {
+				return c - other;
+			}
+		}
+	}
+
+	/**
+	 * Returns the offset of the dictionary entry at an index.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the offset of the entry
+	 */
+	private int entry(int index) {
+		return terms.getInt(IndexFile.HEADER + 4 + 4 * index);
+	}
+
+	/**
+	 * Maps a file read only and checks its header.
+	 *
+	 * @param path the file to map
+	 * @return the mapped file
+	 * @throws IOException if unable to map the file or the format is not supported
+	 */
+	private static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < IndexFile.HEADER) {
+				throw new IOException("Not an index file: " + path);
+			}
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Index file is larger than the format supports: " + path);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			IndexFile.checkHeader(buffer.getInt(0), buffer.getInt(4), path);
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An {@link IndexSegment} backed by a sorted map held in memory.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class MemorySegment implements IndexSegment {
+
+	/** Maps each term to its postings */
+	private final NavigableMap<String, TermPostings> index;
+
+	/** The k-gram index of the terms of the map, or null */
+	private final KGramIndex grams;
+
+	/**
+	 * Initializes a segment that reads through to the given map.
+	 *
+	 * @param index the map of terms to postings
+	 */
+	public MemorySegment(NavigableMap<String, TermPostings> index) {
+		this(index, null);
+	}
+
+	/**
+	 * Initializes a segment that reads through to the given map and looks up
+	 * wildcard patterns in the k-gram index kept with it.
+	 *
+	 * @param index the map of terms to postings
+	 * @param grams the k-gram index of the terms of the map, or null
+	 */
+	public MemorySegment(NavigableMap<String, TermPostings> index, KGramIndex grams) {
+		this.index = index;
+		this.grams = grams;
+	}
+
+	/*
+	 * @see IndexSegment#postings(String)
+	 */
+	@Override
+	public TermPostings postings(String term) {
+		return index.get(term);
+	}
+
+	/*
+	 * @see IndexSegment#terms(String)
+	 */
+	@Override
+	public Iterator<String> terms(String from) {
+		return index.tailMap(from, true).keySet().iterator();
+	}
+
+	/**
+	 * Adds the postings of the entries of the map from the prefix on while their
+	 * terms start with it, without looking each term up again.
+	 *
+	 * @see IndexSegment#prefixed(String, List)
+	 */
+	@Override
+	public void prefixed(String prefix, List<TermPostings> found) {
+		for (Entry<String, TermPostings> entry : index.tailMap(prefix, true).entrySet()) {
+			if (entry.getKey().startsWith(prefix) == false) {
+				break;
+			}
+			found.add(entry.getValue());
+		}
+	}
+
+	/**
+	 * Checks the terms sharing the rarest gram of the pattern if the map has a
+	 * k-gram index and the prefix of the pattern is not enough to go on.
+	 *
+	 * @see IndexSegment#wildcard(String, List)
+	 */
+	@Override
+	public void wildcard(String pattern, List<TermPostings> found) {
+		List<String> candidates = grams == null ? null : grams.candidates(pattern);
+		if (candidates == null) {
+			IndexSegment.super.wildcard(pattern, found);
+			return;
+		}
+		ArrayList<String> matched = new ArrayList<String>();
+		for (String term : candidates) {
+			if (KGramIndex.matches(pattern, term)) {
+				matched.add(term);
+			}
+		}
+		Collections.sort(matched);
+		for (String term : matched) {
+			found.add(index.get(term));
+		}
+	}
+
+	/**
+	 * Combines the words and postings of several segments into a new sorted map.
+	 * The posting lists are copied and sealed, so the segments are left unchanged.
+	 *
+	 * @param segments the segments to combine
+	 * @return sorted map of words to combined postings
+	 */
+	public static TreeMap<String, TermPostings> merge(List<? extends IndexSegment> segments) {
+		return merge(segments, null);
+	}
+
+	/**
+	 * Combines the words and postings of several segments into a new sorted map,
+	 * leaving out deleted locations and words only found in deleted locations.
+	 * The posting lists are copied and sealed, so the segments are left unchanged.
+	 *
+	 * @param segments  the segments to combine
+	 * @param documents the table of the locations, or null to keep every location
+	 * @return sorted map of words to combined postings
+	 */
+	public static TreeMap<String, TermPostings> merge(List<? extends IndexSegment> segments,
+			DocumentTable documents) {
+		TreeMap<String, TermPostings> merged = new TreeMap<String, TermPostings>();
+		for (IndexSegment segment : segments) {
+			Iterator<String> words = segment.terms("");
+			while (words.hasNext()) {
+				String word = words.next();
+				TermPostings from = segment.postings(word);
+				for (int i = 0; i < from.size(); i++) {
+					if (documents != null && documents.isDeleted(from.document(i))) {
+						continue;
+					}
+					merged.putIfAbsent(word, new TermPostings());
+					PostingList copy = new PostingList();
+					copy.addAll(from.positions(i));
+					merged.get(word).put(from.document(i), copy);
+				}
+			}
+		}
+		for (TermPostings postings : merged.values()) {
+			postings.seal();
+		}
+		return merged;
+	}
+}
@@ -0,0 +1,52 @@
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Reports the lock metrics of the index and the hit rates of the query cache
+ * and the stem cache as plain text, one metric per line, so contention can be
+ * watched while the server is running.
+ *
+ * @author Rugved Mavidipalli
+ */
+@SuppressWarnings("serial")
+public class MetricsServelet extends HttpServlet {
+	private static final ThreadSafeIndex index = WebServer.index;
+	private static final QueryCache cache = WebServer.cache;
+
+	/*
+	 * @see
+	 * javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
+	 * javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		response.setContentType("text/plain");
+		response.setStatus(HttpServletResponse.SC_OK);
+		LockMetrics metrics = index.lockMetrics();
+		PrintWriter out = response.getWriter();
+		out.printf("lock_reads %d%n", metrics.reads());
+		out.printf("lock_read_wait_nanos %d%n", metrics.readWait());
+		out.printf("lock_read_wait_max_nanos %d%n", metrics.maxReadWait());
+		out.printf("lock_read_hold_nanos %d%n", metrics.readHold());
+		out.printf("lock_writes %d%n", metrics.writes());
+		out.printf("lock_write_wait_nanos %d%n", metrics.writeWait());
+		out.printf("lock_write_wait_max_nanos %d%n", metrics.maxWriteWait());
+		out.printf("lock_write_hold_nanos %d%n", metrics.writeHold());
+		out.printf("cache_hits %d%n", cache.hits());
+		out.printf("cache_misses %d%n", cache.misses());
+		out.printf("cache_stale %d%n", cache.stale());
+		out.printf("cache_evictions %d%n", cache.evictions());
+		out.printf("cache_size %d%n", cache.size());
+		out.printf("cache_capacity %d%n", cache.capacity());
+		out.printf("stem_cache_hits %d%n", CachingStemmer.ENGLISH.hits());
+		out.printf("stem_cache_misses %d%n", CachingStemmer.ENGLISH.misses());
+		out.printf("stem_cache_size %d%n", CachingStemmer.ENGLISH.size());
+		out.printf("index_generation %d%n", index.generation());
+	}
+}
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A query on the positions of its words. Quoted words must appear next to each
+ * other in the given order, and two parts of a query joined by NEAR/k must
+ * appear within k positions of each other in either order. For example:
+ *
+ * <pre>
+ * "new york" NEAR/5 pizza
+ * </pre>
+ *
+ * matches locations where "new" is followed by "york" and "pizza" is within 5
+ * positions of "york". Parts not joined by NEAR/k only have to appear somewhere
+ * in the location.
+ *
+ * The words are stored in query order with the offsets allowed between each
+ * word and the next. A location matches as many times as the first word has a
+ * position from which every following word can be reached.
+ *
+ * @see IndexSearcher#phraseSearch(PhraseQuery, boolean, int)
+ * @author Rugved Mavidipalli
+ */
+public class PhraseQuery {
+
+	/** Matches a quoted part, a NEAR/k operator or a single word */
+	private static final Pattern TOKEN = Pattern.compile("\"([^\"]*)\"|NEAR/(\\d+)(?![^\\s\"])|[^\\s\"]+");
+
+	/** Finds a closed quoted part or a NEAR/k operator standing on its own */
+	private static final Pattern PHRASE = Pattern.compile("\"[^\"]*\"|(?<![^\\s\"])NEAR/\\d+(?![^\\s\"])");
+
+	/** The offset range of parts that only have to appear somewhere */
+	private static final int ANYWHERE = Integer.MAX_VALUE;
+
+	/** The stemmed words in query order */
+	private final String[] words;
+
+	/** The smallest offset allowed from each word to the next */
+	private final int[] min;
+
+	/** The largest offset allowed from each word to the next */
+	private final int[] max;
+
+	/** The query with its words stemmed */
+	private final String text;
+
+	/**
+	 * Initializes a query.
+	 *
+	 * @param words the stemmed words in query order
+	 * @param min   the smallest offset allowed from each word to the next
+	 * @param max   the largest offset allowed from each word to the next
+	 * @param text  the query with its words stemmed
+	 */
+	private PhraseQuery(String[] words, int[] min, int[] max, String text) {
+		this.words = words;
+		this.min = min;
+		this.max = max;
+		this.text = text;
+	}
+
+	/**
+	 * Parses a query line. Returns null if the line has neither a closed pair of
+	 * quotes nor a NEAR/k operator, as it is then an ordinary query. A quote
+	 * without a closing quote is ignored.
+	 *
+	 * @param line the query line
+	 * @return the query, or null if the line is not a phrase or proximity query or
+	 *         has no words
+	 */
+	public static PhraseQuery parse(String line) {
+		if (!PHRASE.matcher(line).find()) {
+			return null;
+		}
+		CachingStemmer stemmer = CachingStemmer.ENGLISH;
+		ArrayList<String> words = new ArrayList<String>();
+		ArrayList<Integer> min = new ArrayList<Integer>();
+		ArrayList<Integer> max = new ArrayList<Integer>();
+		StringBuilder text = new StringBuilder();
+		int near = -1;
+		Matcher matcher = TOKEN.matcher(line);
+		while (matcher.find()) {
+			if (matcher.group(2) != null) {
+				try {
+					near = Integer.parseInt(matcher.group(2));
+				} catch (NumberFormatException e) {
+					near = ANYWHERE;
+				}
+				continue;
+			}
+			boolean quoted = matcher.group(1) != null;
+			List<String> part = TextFileStemmer.stemLine(quoted ? matcher.group(1) : matcher.group(), stemmer);
+			if (part.isEmpty()) {
+				continue;
+			}
+			if (!words.isEmpty()) {
+				int range = near < 0 ? ANYWHERE : near;
+				min.add(-range);
+				max.add(range);
+				text.append(near < 0 ? " " : " NEAR/" + near + " ");
+			}
+			for (int i = 0; i < part.size(); i++) {
+				if (i > 0) {
+					min.add(1);
+					max.add(1);
+				}
+				words.add(part.get(i));
+			}
+			text.append(quoted ? "\"" + String.join(" ", part) + "\"" : String.join(" ", part));
+			near = -1;
+		}
+		if (words.isEmpty()) {
+			return null;
+		}
+		return new PhraseQuery(words.toArray(new String[0]), min.stream().mapToInt(Integer::intValue).toArray(),
+				max.stream().mapToInt(Integer::intValue).toArray(), text.toString());
+	}
+
+	/**
+	 * Returns the number of words.
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return words.length;
+	}
+
+	/**
+	 * Returns a word.
+	 *
+	 * @param index the index of the word in query order
+	 * @return the stemmed word
+	 */
+	public String word(int index) {
+		return words[index];
+	}
+
+	/**
+	 * Returns the smallest offset allowed from a word to the next.
+	 *
+	 * @param index the index of the word, less than {@link #size()} - 1
+	 * @return the smallest offset
+	 */
+	public int min(int index) {
+		return min[index];
+	}
+
+	/**
+	 * Returns the largest offset allowed from a word to the next.
+	 *
+	 * @param index the index of the word, less than {@link #size()} - 1
+	 * @return the largest offset
+	 */
+	public int max(int index) {
+		return max[index];
+	}
+
+	/**
+	 * Returns the query with its words stemmed, used as the query of its results.
+	 */
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,343 @@
+import java.util.Arrays;
+
+/**
+ * Sorted, duplicate free list of the positions a single word was found at in a
+ * single location. Positions are kept in a growable {@code int[]} buffer while
+ * the list is being built. Once sealed, the positions are stored as
+ * delta/varint encoded bytes, which takes one or two bytes per position instead
+ * of a boxed {@link Integer} inside a {@link java.util.TreeSet}.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class PostingList {
+
+	/** The initial capacity of the position buffer */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** Positions while the list is open, null once sealed */
+	private int[] positions;
+
+	/** Delta/varint encoded positions once sealed, null while open */
+	private byte[] encoded;
+
+	/** The number of positions stored */
+	private int size;
+
+	/** The last (largest) position stored */
+	private int last;
+
+	/**
+	 * Initializes an empty posting list.
+	 */
+	public PostingList() {
+		this.positions = new int[INITIAL_CAPACITY];
+		this.encoded = null;
+		this.size = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * Initializes a sealed posting list from delta/varint encoded positions.
+	 *
+	 * @param encoded the encoded positions
+	 * @param size    the number of positions encoded
+	 * @see #encode(int[], int)
+	 */
+	public PostingList(byte[] encoded, int size) {
+		this.positions = null;
+		this.encoded = encoded;
+		this.size = size;
+		int[] offset = { 0 };
+		int current = 0;
+		for (int i = 0; i < size; i++) {
+			current += readVarInt(encoded, offset);
+		}
+		this.last = current;
+	}
+
+	/**
+	 * Adds a position to the list. Positions are normally added in increasing
+	 * order, which is an append. Out of order positions are inserted in place and
+	 * duplicate positions are ignored. Adding to a sealed list reopens it.
+	 *
+	 * @param position the position to add
+	 * @return true if the position was not already in the list
+	 */
+	public boolean add(int position) {
+		open();
+		if (size == 0 || position > last) {
+			grow(size + 1);
+			positions[size++] = position;
+			last = position;
+			return true;
+		}
+		int index = Arrays.binarySearch(positions, 0, size, position);
+		if (index >= 0) {
+			return false;
+		}
+		index = -(index + 1);
+		grow(size + 1);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		positions[index] = position;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Adds all the positions of another list to this list.
+	 *
+	 * @param other the list to add positions from
+	 */
+	public void addAll(PostingList other) {
+		if (other.size == 0) {
+			return;
+		}
+		if (size == 0 || other.first() > last) {
+			open();
+			grow(size + other.size);
+			if (other.encoded == null) {
+				System.arraycopy(other.positions, 0, positions, size, other.size);
+			} else {
+				other.decode(positions, size);
+			}
+			size += other.size;
+			last = other.last;
+		} else {
+			for (int position : other.toArray()) {
+				add(position);
+			}
+		}
+	}
+
+	/**
+	 * Adds an offset to every position in the list, as when the list was numbered
+	 * from 1 for a later part of its location. Only the first delta of a sealed
+	 * list changes.
+	 *
+	 * @param offset the non-negative offset to add
+	 */
+	public void shift(int offset) {
+		if (size == 0 || offset == 0) {
+			return;
+		}
+		if (encoded == null) {
+			for (int i = 0; i < size; i++) {
+				positions[i] += offset;
+			}
+		} else {
+			int[] rest = { 0 };
+			int first = readVarInt(encoded, rest);
+			byte[] head = new byte[5];
+			int length = writeVarInt(first + offset, head, 0);
+			byte[] shifted = new byte[length + encoded.length - rest[0]];
+			System.arraycopy(head, 0, shifted, 0, length);
+			System.arraycopy(encoded, rest[0], shifted, length, encoded.length - rest[0]);
+			encoded = shifted;
+		}
+		last += offset;
+	}
+
+	/**
+	 * Returns the number of positions in the list.
+	 *
+	 * @return number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if the list is empty.
+	 *
+	 * @return true if there are no positions
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the first (smallest) position in the list.
+	 *
+	 * @return first position
+	 */
+	public int first() {
+		if (encoded == null) {
+			return positions[0];
+		}
+		return readVarInt(encoded, new int[] { 0 });
+	}
+
+	/**
+	 * Returns the last (largest) position in the list.
+	 *
+	 * @return last position
+	 */
+	public int last() {
+		return last;
+	}
+
+	/**
+	 * Checks if the list contains a position.
+	 *
+	 * @param position the position to look for
+	 * @return true if the position is in the list
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position > last) {
+			return false;
+		}
+		if (encoded == null) {
+			return Arrays.binarySearch(positions, 0, size, position) >= 0;
+		}
+		int[] offset = { 0 };
+		int current = 0;
+		for (int i = 0; i < size; i++) {
+			current += readVarInt(encoded, offset);
+			if (current >= position) {
+				return current == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a copy of the positions in increasing order.
+	 *
+	 * @return array of positions
+	 */
+	public int[] toArray() {
+		if (encoded == null) {
+			return Arrays.copyOf(positions, size);
+		}
+		int[] values = new int[size];
+		decode(values, 0);
+		return values;
+	}
+
+	/**
+	 * Checks if the list has been sealed.
+	 *
+	 * @return true if the positions are stored encoded
+	 */
+	public boolean isSealed() {
+		return encoded != null;
+	}
+
+	/**
+	 * Seals the list, replacing the position buffer with delta/varint encoded
+	 * bytes. Sealing an already sealed list does nothing.
+	 */
+	public void seal() {
+		if (encoded != null) {
+			return;
+		}
+		encoded = encode(positions, size);
+		positions = null;
+	}
+
+	/**
+	 * Returns the encoded bytes of this list, sealing it first if necessary.
+	 *
+	 * @return delta/varint encoded positions
+	 */
+	public byte[] encoded() {
+		seal();
+		return encoded;
+	}
+
+	/**
+	 * Reopens a sealed list so positions can be added to the buffer again.
+	 */
+	private void open() {
+		if (encoded != null) {
+			int[] values = new int[Math.max(INITIAL_CAPACITY, size + 1)];
+			decode(values, 0);
+			positions = values;
+			encoded = null;
+		}
+	}
+
+	/**
+	 * Makes sure the position buffer can hold at least the given number of
+	 * positions.
+	 *
+	 * @param capacity the number of positions needed
+	 */
+	private void grow(int capacity) {
+		if (capacity > positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(capacity, positions.length + (positions.length >> 1)));
+		}
+	}
+
+	/**
+	 * Decodes the sealed positions into the given array.
+	 *
+	 * @param values the array to decode into
+	 * @param start  the index to start writing at
+	 */
+	private void decode(int[] values, int start) {
+		int[] offset = { 0 };
+		int current = 0;
+		for (int i = 0; i < size; i++) {
+			current += readVarInt(encoded, offset);
+			values[start + i] = current;
+		}
+	}
+
+	/**
+	 * Delta/varint encodes sorted positions.
+	 *
+	 * @param values the positions in increasing order
+	 * @param size   the number of positions to encode
+	 * @return the encoded positions
+	 */
+	public static byte[] encode(int[] values, int size) {
+		byte[] buffer = new byte[size * 5];
+		int length = 0;
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			length = writeVarInt(values[i] - previous, buffer, length);
+			previous = values[i];
+		}
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * Writes a non-negative value as a variable length integer, seven bits per
+	 * byte with the high bit set on every byte but the last.
+	 *
+	 * @param value  the value to write
+	 * @param buffer the buffer to write to
+	 * @param offset the offset to write at
+	 * @return the offset after the written bytes
+	 */
+	public static int writeVarInt(int value, byte[] buffer, int offset) {
+		while ((value & ~0x7F) != 0) {
+			buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Reads a variable length integer written by
+	 * {@link #writeVarInt(int, byte[], int)}.
+	 *
+	 * @param buffer the buffer to read from
+	 * @param offset single element array holding the offset to read at, which is
+	 *               advanced past the value
+	 * @return the value read
+	 */
+	public static int readVarInt(byte[] buffer, int[] offset) {
+		int value = 0;
+		int shift = 0;
+		byte current;
+		do {
+			current = buffer[offset[0]++];
+			value |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		return value;
+	}
+}
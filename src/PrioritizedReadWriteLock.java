@@ -0,0 +1,194 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A multi-reader single-writer lock that can prefer either readers or writers
+ * and records how long threads wait for and hold it.
+ *
+ * With {@link Preference#WRITERS}, the default, new readers wait as soon as a
+ * writer is waiting, so a steady stream of searches can no longer starve a
+ * crawl that is adding to the index. With {@link Preference#READERS} readers
+ * only wait while a writer holds the lock.
+ *
+ * Readers and writers wait on separate conditions, and a released write lock
+ * wakes either one writer or the waiting readers rather than every thread.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class PrioritizedReadWriteLock implements IndexLock {
+
+	/**
+	 * Which side gets the lock first when both readers and writers are waiting.
+	 */
+	public enum Preference {
+		/** Readers only wait while a writer holds the lock */
+		READERS,
+		/** Readers also wait while a writer is waiting */
+		WRITERS
+	}
+
+	/** Guards the lock state */
+	private final ReentrantLock mutex;
+
+	/** Signalled when readers may be able to proceed */
+	private final Condition readable;
+
+	/** Signalled when a writer may be able to proceed */
+	private final Condition writable;
+
+	/** Which side gets the lock first */
+	private final Preference preference;
+
+	/** The number of active readers */
+	private int readers;
+
+	/** Whether a writer holds the lock */
+	private boolean writing;
+
+	/** The number of writers waiting */
+	private int waitingWriters;
+
+	/** When the current writer took the lock */
+	private long writeStart;
+
+	/** When the calling thread took the read lock */
+	private final ThreadLocal<long[]> readStart;
+
+	/** Where wait and hold times are recorded */
+	private final LockMetrics metrics;
+
+	/**
+	 * Initializes a writer-preferring lock with its own metrics.
+	 */
+	public PrioritizedReadWriteLock() {
+		this(Preference.WRITERS);
+	}
+
+	/**
+	 * Initializes a lock with its own metrics.
+	 *
+	 * @param preference which side gets the lock first
+	 */
+	public PrioritizedReadWriteLock(Preference preference) {
+		this(preference, new LockMetrics());
+	}
+
+	/**
+	 * Initializes a lock that records into the given metrics.
+	 *
+	 * @param preference which side gets the lock first
+	 * @param metrics    where wait and hold times are recorded
+	 */
+	public PrioritizedReadWriteLock(Preference preference, LockMetrics metrics) {
+		this.mutex = new ReentrantLock();
+		this.readable = mutex.newCondition();
+		this.writable = mutex.newCondition();
+		this.preference = preference;
+		this.readers = 0;
+		this.writing = false;
+		this.waitingWriters = 0;
+		this.readStart = ThreadLocal.withInitial(() -> new long[1]);
+		this.metrics = metrics;
+	}
+
+	/*
+	 * @see IndexLock#lockReadOnly
+	 */
+	@Override
+	public void lockReadOnly() {
+		long start = System.nanoTime();
+		mutex.lock();
+		try {
+			while (writing || (preference == Preference.WRITERS && waitingWriters > 0)) {
+				readable.awaitUninterruptibly();
+			}
+			readers++;
+		} finally {
+			mutex.unlock();
+		}
+		long now = System.nanoTime();
+		metrics.readAcquired(now - start);
+		readStart.get()[0] = now;
+	}
+
+	/*
+	 * @see IndexLock#unlockReadOnly
+	 */
+	@Override
+	public void unlockReadOnly() {
+		metrics.readReleased(System.nanoTime() - readStart.get()[0]);
+		mutex.lock();
+		try {
+			readers--;
+			if (readers == 0 && waitingWriters > 0) {
+				writable.signal();
+			}
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	/*
+	 * @see IndexLock#lockReadWrite
+	 */
+	@Override
+	public void lockReadWrite() {
+		long start = System.nanoTime();
+		mutex.lock();
+		try {
+			waitingWriters++;
+			try {
+				while (writing || readers > 0) {
+					writable.awaitUninterruptibly();
+				}
+			} finally {
+				waitingWriters--;
+			}
+			writing = true;
+		} finally {
+			mutex.unlock();
+		}
+		writeStart = System.nanoTime();
+		metrics.writeAcquired(writeStart - start);
+	}
+
+	/*
+	 * @see IndexLock#unlockReadWrite
+	 */
+	@Override
+	public void unlockReadWrite() {
+		long hold = System.nanoTime() - writeStart;
+		mutex.lock();
+		try {
+			writing = false;
+			if (preference == Preference.WRITERS && waitingWriters > 0) {
+				writable.signal();
+			} else {
+				readable.signalAll();
+				if (waitingWriters > 0) {
+					writable.signal();
+				}
+			}
+		} finally {
+			mutex.unlock();
+		}
+		metrics.writeReleased(hold);
+	}
+
+	/*
+	 * @see IndexLock#metrics
+	 */
+	@Override
+	public LockMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns which side gets the lock first.
+	 *
+	 * @return the preference
+	 */
+	public Preference preference() {
+		return preference;
+	}
+}
@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of search results, so popular queries are answered without
+ * searching or locking the index. Results are kept by the normalized query, the
+ * kind of search, the number of results and the scoring model, and evicted
+ * least recently used first once the cache is full.
+ *
+ * Each entry remembers the {@link InvertedIndex#generation()} read before its
+ * search ran. An entry from an older generation than the current one is out of
+ * date and searched again, so the cache never has to be cleared when the index
+ * changes. Only guards its own map, which is held just long enough to look up
+ * or store an entry.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class QueryCache {
+
+	/** The default number of queries kept */
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	/** The index searched */
+	private final InvertedIndex index;
+
+	/** The most queries kept */
+	private final int capacity;
+
+	/** The cached results in least recently used order */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/** Lookups answered from the cache */
+	private final LongAdder hits;
+
+	/** Lookups that had to search */
+	private final LongAdder misses;
+
+	/** Misses that found results of an older generation */
+	private final LongAdder stale;
+
+	/** Entries evicted to stay within the capacity */
+	private final LongAdder evictions;
+
+	/**
+	 * Initializes an empty cache of the default capacity.
+	 *
+	 * @param index the index searched
+	 */
+	public QueryCache(InvertedIndex index) {
+		this(index, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param index    the index searched
+	 * @param capacity the most queries kept, at least 1
+	 */
+	@SuppressWarnings("serial")
+	public QueryCache(InvertedIndex index, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+		}
+		this.index = index;
+		this.capacity = capacity;
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.stale = new LongAdder();
+		this.evictions = new LongAdder();
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > QueryCache.this.capacity) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the results of a query from the cache if they are from the current
+	 * generation of the index, and otherwise searches and caches them.
+	 *
+	 * @param mode   the kind of search, such as exact or partial
+	 * @param query  the normalized query, such as its sorted stemmed words
+	 * @param k      the most results to return
+	 * @param search runs the search on a miss
+	 * @return a copy of the results
+	 */
+	public ArrayList<SearchResult> search(String mode, String query, int k, Supplier<ArrayList<SearchResult>> search) {
+		String key = mode + ' ' + index.scoring() + ' ' + k + ' ' + query;
+		long generation = index.generation();
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null && entry.generation == generation) {
+			hits.increment();
+			return new ArrayList<SearchResult>(entry.results);
+		}
+		misses.increment();
+		if (entry != null) {
+			stale.increment();
+		}
+		ArrayList<SearchResult> results = search.get();
+		Entry found = new Entry(generation, new ArrayList<SearchResult>(results));
+		synchronized (entries) {
+			Entry current = entries.get(key);
+			if (current == null || current.generation <= generation) {
+				entries.put(key, found);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the number of queries cached, including out of date ones.
+	 *
+	 * @return number of queries
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Returns the most queries kept.
+	 *
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache.
+	 *
+	 * @return number of hits
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that had to search.
+	 *
+	 * @return number of misses
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of misses that found results of an older generation.
+	 *
+	 * @return number of out of date entries found
+	 */
+	public long stale() {
+		return stale.sum();
+	}
+
+	/**
+	 * Returns the number of entries evicted to stay within the capacity.
+	 *
+	 * @return number of evictions
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits %d, misses %d, stale %d, evictions %d, size %d/%d", hits(), misses(), stale(),
+				evictions(), size(), capacity);
+	}
+
+	/**
+	 * The results of a query and the generation of the index they were found in.
+	 */
+	private static class Entry {
+		/** The generation read before searching */
+		private final long generation;
+
+		/** The results, never changed */
+		private final ArrayList<SearchResult> results;
+
+		/**
+		 * Initializes an entry.
+		 *
+		 * @param generation the generation read before searching
+		 * @param results    the results
+		 */
+		public Entry(long generation, ArrayList<SearchResult> results) {
+			this.generation = generation;
+			this.results = results;
+		}
+	}
+}
@@ -14,13 +14,26 @@ public class QueryParser implements QueryParserInterface {
 	 */
 	private final TreeMap<String, ArrayList<SearchResult>> resultMap;
 	private final InvertedIndex index;
+	private final int limit;
 
 	/**
 	 * Initializes resultMap and InvertedIndex
 	 */
 	public QueryParser(InvertedIndex index) {
+		this(index, IndexSearcher.ALL);
+	}
+
+	/**
+	 * Initializes resultMap and InvertedIndex, keeping only the best results of
+	 * each query
+	 *
+	 * @param index the index to search
+	 * @param limit the most results to keep for each query
+	 */
+	public QueryParser(InvertedIndex index, int limit) {
 		this.resultMap = new TreeMap<String, ArrayList<SearchResult>>();
 		this.index = index;
+		this.limit = limit;
 	}
 
 	/**
@@ -33,14 +46,51 @@ public class QueryParser implements QueryParserInterface {
 	 */
 	@Override
 	public void addQueryLine(String line, boolean exact) {
+		addLine(line, exact, 0);
+	}
+
+	/*
+	 * @see QueryParserInterface#addFuzzyLine(String, int)
+	 */
+	@Override
+	public void addFuzzyLine(String line, int distance) {
+		addLine(line, true, distance);
+	}
+
+	/**
+	 * cleans the line, parses it, and searches the line and adds the results into
+	 * the resultMap
+	 * 
+	 * @param line     the query line
+	 * @param exact    if exact search has to be performed
+	 * @param distance the most edits allowed for the words of an ordinary query,
+	 *                 or 0 to not search fuzzily
+	 */
+	private void addLine(String line, boolean exact, int distance) {
+		BooleanQuery combined = BooleanQuery.parse(line);
+		if (combined != null) {
+			if (!resultMap.containsKey(combined.toString())) {
+				addWords(combined.toString(), index.booleanSearch(combined, exact, limit));
+			}
+			return;
+		}
+		PhraseQuery phrase = PhraseQuery.parse(line);
+		if (phrase != null) {
+			if (!resultMap.containsKey(phrase.toString())) {
+				addWords(phrase.toString(), index.phraseSearch(phrase, exact, limit));
+			}
+			return;
+		}
 		TreeSet<String> sortedWords = TextFileStemmer.clean(line);
 		if (sortedWords != null) {
 			String query = String.join(" ", sortedWords);
 			if (!query.isEmpty() || !resultMap.containsKey(query)) {
-				if (exact) {
-					addWords(query, index.exactSearch(sortedWords));
+				if (distance > 0) {
+					addWords(query, index.fuzzySearch(sortedWords, distance, limit));
+				} else if (exact) {
+					addWords(query, index.exactSearch(sortedWords, limit));
 				} else {
-					addWords(query, index.partialSearch(sortedWords));
+					addWords(query, index.partialSearch(sortedWords, limit));
 				}
 			}
 		}
@@ -30,13 +30,43 @@ public interface QueryParserInterface {
 	}
 
 	/**
-	 * cleans, parses, stemms, and searches for a given line
+	 * Searches every line of a query file for the words within an edit distance of
+	 * the query words.
+	 * 
+	 * @param path     file path to read queries from
+	 * @param distance the most edits allowed, 1 or 2
+	 * @throws IOException
+	 */
+	public default void addFuzzyFile(Path path, int distance) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);) {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				addFuzzyLine(line, distance);
+			}
+		}
+	}
+
+	/**
+	 * cleans, parses, stemms, and searches for a given line. A line with AND, OR
+	 * or NOT is searched as a {@link BooleanQuery}, and otherwise a
+	 * line with quoted words or a NEAR/k operator as a {@link PhraseQuery}. In
+	 * other lines a word with a * is a wildcard pattern.
 	 * 
 	 * @param line
 	 * @param exact
 	 */
 	public void addQueryLine(String line, boolean exact);
 
+	/**
+	 * cleans, parses, stemms, and searches for the words within an edit distance of
+	 * the words of a given line. Boolean and phrase queries are searched exactly.
+	 * 
+	 * @param line
+	 * @param distance the most edits allowed, 1 or 2
+	 * @see LevenshteinAutomaton
+	 */
+	public void addFuzzyLine(String line, int distance);
+
 	/**
 	 * Sends results to the JsonWriter
 	 * 
@@ -4,11 +4,15 @@
  *
  * Does not implement any form or priority to read or write operations. The
  * first thread that acquires the appropriate lock should be allowed to
- * continue.
+ * continue. A steady stream of readers can keep a writer waiting for as long as
+ * it lasts; {@link PrioritizedReadWriteLock} does not have that problem.
  */
-public class ReadWriteLock {
+public class ReadWriteLock implements IndexLock {
 	private int readers;
 	private int writers;
+	private long writeStart;
+	private final ThreadLocal<long[]> readStart;
+	private final LockMetrics metrics;
 
 	/**
 	 * Initializes a multi-reader single-writer lock.
@@ -16,22 +20,32 @@ public class ReadWriteLock {
 	public ReadWriteLock() {
 		readers = 0;
 		writers = 0;
+		readStart = ThreadLocal.withInitial(() -> new long[1]);
+		metrics = new LockMetrics();
 	}
 
 	/**
 	 * Will wait until there are no active writers in the system, and then will
 	 * increase the number of active readers.
-	 * 
+	 *
 	 */
 	public synchronized void lockReadOnly() {
+		long start = System.nanoTime();
+		boolean interrupted = false;
 		while (writers > 0) {
 			try {
 				this.wait();
 			} catch (InterruptedException e) {
-				System.err.println("Unable to lock read");
+				interrupted = true;
 			}
 		}
 		readers++;
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		long now = System.nanoTime();
+		metrics.readAcquired(now - start);
+		readStart.get()[0] = now;
 	}
 
 	/**
@@ -39,6 +53,7 @@ public class ReadWriteLock {
 	 * necessary.
 	 */
 	public synchronized void unlockReadOnly() {
+		metrics.readReleased(System.nanoTime() - readStart.get()[0]);
 		readers--;
 		if (readers == 0) {
 			this.notifyAll();
@@ -50,14 +65,21 @@ public class ReadWriteLock {
 	 * then will increase the number of active writers.
 	 */
 	public synchronized void lockReadWrite() {
+		long start = System.nanoTime();
+		boolean interrupted = false;
 		while (readers > 0 || writers > 0) {
 			try {
 				this.wait();
 			} catch (InterruptedException e) {
-				System.err.println("Unable to lock read/write");
+				interrupted = true;
 			}
 		}
 		writers++;
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		writeStart = System.nanoTime();
+		metrics.writeAcquired(writeStart - start);
 	}
 
 	/**
@@ -65,7 +87,16 @@ public class ReadWriteLock {
 	 * necessary.
 	 */
 	public synchronized void unlockReadWrite() {
+		metrics.writeReleased(System.nanoTime() - writeStart);
 		writers--;
 		this.notifyAll();
 	}
-}
\ No newline at end of file
+
+	/*
+	 * @see IndexLock#metrics
+	 */
+	@Override
+	public LockMetrics metrics() {
+		return metrics;
+	}
+}
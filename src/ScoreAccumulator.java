@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/**
+ * Counts the query matches of each location id during a search. Every thread
+ * reuses its own accumulator, so a search does not allocate per location or per
+ * matched word. The counts are kept in an array indexed by location id, and the
+ * ids touched by a search are remembered so only those counts are reset before
+ * the next search.
+ *
+ * @see IndexSearcher
+ * @author Rugved Mavidipalli
+ */
+public class ScoreAccumulator {
+
+	/** The accumulator of each thread */
+	private static final ThreadLocal<ScoreAccumulator> LOCAL = ThreadLocal.withInitial(ScoreAccumulator::new);
+
+	/** The matches of each location id, zero if not found */
+	private int[] counts;
+
+	/** The score of each location id, zero if not found or not scored */
+	private double[] scores;
+
+	/** The location ids found, in the order found */
+	private int[] found;
+
+	/** The number of location ids found */
+	private int size;
+
+	/**
+	 * Initializes an empty accumulator.
+	 */
+	private ScoreAccumulator() {
+		this.counts = new int[0];
+		this.scores = new double[0];
+		this.found = new int[0];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the accumulator of the calling thread, cleared and large enough for
+	 * the given number of locations. Only valid until the thread asks for it again.
+	 *
+	 * @param documents the number of location ids that may be counted
+	 * @return the accumulator
+	 */
+	public static ScoreAccumulator get(int documents) {
+		ScoreAccumulator accumulator = LOCAL.get();
+		accumulator.clear();
+		if (accumulator.counts.length < documents) {
+			int length = Math.max(documents, accumulator.counts.length + (accumulator.counts.length >> 1));
+			accumulator.counts = new int[length];
+			accumulator.scores = new double[length];
+			accumulator.found = new int[length];
+		}
+		return accumulator;
+	}
+
+	/**
+	 * Adds matches to a location.
+	 *
+	 * @param document the location id
+	 * @param count    the number of matches, must be positive
+	 */
+	public void add(int document, int count) {
+		if (counts[document] == 0) {
+			found[size++] = document;
+		}
+		counts[document] += count;
+	}
+
+	/**
+	 * Adds matches and their score to a location.
+	 *
+	 * @param document the location id
+	 * @param count    the number of matches, must be positive
+	 * @param score    the score of the matches
+	 */
+	public void add(int document, int count, double score) {
+		add(document, count);
+		scores[document] += score;
+	}
+
+	/**
+	 * Adds to the score of a location already found.
+	 *
+	 * @param document the location id
+	 * @param score    the score to add
+	 */
+	public void addScore(int document, double score) {
+		scores[document] += score;
+	}
+
+	/**
+	 * Returns the number of locations found.
+	 *
+	 * @return the number of locations with matches
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a location found.
+	 *
+	 * @param index the index of the location, in the order found
+	 * @return the location id
+	 */
+	public int document(int index) {
+		return found[index];
+	}
+
+	/**
+	 * Returns the matches of a location.
+	 *
+	 * @param document the location id
+	 * @return the number of matches
+	 */
+	public int count(int document) {
+		return counts[document];
+	}
+
+	/**
+	 * Returns the score of a location.
+	 *
+	 * @param document the location id
+	 * @return the sum of the scores added
+	 */
+	public double score(int document) {
+		return scores[document];
+	}
+
+	/**
+	 * Resets the counts and scores of the locations found. Only touches the locations found,
+	 * not the whole array.
+	 */
+	public void clear() {
+		if (size > counts.length >> 2) {
+			Arrays.fill(counts, 0);
+			Arrays.fill(scores, 0);
+		} else {
+			for (int i = 0; i < size; i++) {
+				counts[found[i]] = 0;
+				scores[found[i]] = 0;
+			}
+		}
+		size = 0;
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Scores how well a location matches a query. A search asks for the weight of
+ * each query word once, adds up the score of every word found in a location,
+ * and turns the sum into the score of the result with {@link #total}.
+ *
+ * The statistics used are kept up to date by the index as it changes: the word
+ * count of each location and the average word count in the
+ * {@link DocumentTable}, and the number of locations of each word, which is the
+ * size of its {@link TermPostings}. Scoring a match is arithmetic on values
+ * already at hand.
+ *
+ * The score of a word must not drop as it is found more often or rise as the
+ * word count grows, and the score of a result must be the sum of the scores of
+ * its words, so the largest score in a postings list bounds the score any of its
+ * locations can add. Top-k searches rely on this to skip locations.
+ *
+ * @see IndexSearcher
+ * @author Rugved Mavidipalli
+ */
+public interface ScoringModel {
+
+	/** Scores by matches divided by word count, the original score */
+	public static final ScoringModel COUNT = new Count();
+
+	/** Scores with Okapi BM25 */
+	public static final ScoringModel BM25 = new Okapi(Okapi.K1, Okapi.B);
+
+	/** Scores with TF-IDF normalized by the square root of the word count */
+	public static final ScoringModel TF_IDF = new TfIdf();
+
+	/**
+	 * Returns the weight of a query word, computed once per word and search. The
+	 * weight is never negative, even if the word is counted in more locations
+	 * than there are.
+	 *
+	 * @param documentFrequency the number of locations the word was found in
+	 * @param documents         the number of locations in the index
+	 * @return the weight of the word
+	 */
+	public double weight(int documentFrequency, int documents);
+
+	/**
+	 * Returns the score a query word adds to a location.
+	 *
+	 * @param frequency        the number of times the word was found in the
+	 *                         location
+	 * @param wordCount        the word count of the location
+	 * @param averageWordCount the average word count of the locations
+	 * @param weight           the weight of the word
+	 * @return the score of the word in the location
+	 */
+	public double score(int frequency, int wordCount, double averageWordCount, double weight);
+
+	/**
+	 * Returns the score of a result from the sum of the scores of its words.
+	 *
+	 * @param score     the sum of the scores of the words found
+	 * @param count     the number of matches found
+	 * @param wordCount the word count of the location
+	 * @return the score of the result
+	 */
+	public default double total(double score, int count, int wordCount) {
+		return score;
+	}
+
+	/**
+	 * Returns the model with the given name.
+	 *
+	 * @param name count, bm25 or tfidf, ignoring case
+	 * @return the model, or null if there is no model with that name
+	 */
+	public static ScoringModel forName(String name) {
+		switch (name.toLowerCase()) {
+		case "count":
+			return COUNT;
+		case "bm25":
+			return BM25;
+		case "tfidf":
+		case "tf-idf":
+			return TF_IDF;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Scores a result by its matches divided by its word count.
+	 *
+	 * @see SearchResult#score()
+	 */
+	public static class Count implements ScoringModel {
+		@Override
+		public double weight(int documentFrequency, int documents) {
+			return 0;
+		}
+
+		@Override
+		public double score(int frequency, int wordCount, double averageWordCount, double weight) {
+			return (double) frequency / wordCount;
+		}
+
+		/**
+		 * Divides the matches by the word count once rather than adding up the score
+		 * of each word, so scores are exactly the same as those of
+		 * {@link SearchResult#SearchResult(String, int, int)}.
+		 */
+		@Override
+		public double total(double score, int count, int wordCount) {
+			return (double) count / wordCount;
+		}
+
+		@Override
+		public String toString() {
+			return "count";
+		}
+	}
+
+	/**
+	 * Okapi BM25. The score of a word saturates as it is found more often, and is
+	 * lower in locations longer than average.
+	 */
+	public static class Okapi implements ScoringModel {
+
+		/** The default term frequency saturation */
+		public static final double K1 = 1.2;
+
+		/** The default strength of the length normalization */
+		public static final double B = 0.75;
+
+		/** How quickly the score of a word saturates */
+		private final double k1;
+
+		/** How much the word count of a location matters, between 0 and 1 */
+		private final double b;
+
+		/**
+		 * Initializes the model.
+		 *
+		 * @param k1 how quickly the score of a word saturates
+		 * @param b  how much the word count of a location matters, between 0 and 1
+		 */
+		public Okapi(double k1, double b) {
+			this.k1 = k1;
+			this.b = b;
+		}
+
+		@Override
+		public double weight(int documentFrequency, int documents) {
+			int found = Math.min(documentFrequency, documents);
+			return Math.log(1 + (documents - found + 0.5) / (found + 0.5));
+		}
+
+		@Override
+		public double score(int frequency, int wordCount, double averageWordCount, double weight) {
+			double norm = averageWordCount > 0 ? k1 * (1 - b + b * wordCount / averageWordCount) : k1;
+			return weight * frequency * (k1 + 1) / (frequency + norm);
+		}
+
+		@Override
+		public String toString() {
+			return "bm25";
+		}
+	}
+
+	/**
+	 * TF-IDF with a logarithmic term frequency, divided by the square root of the
+	 * word count of the location.
+	 */
+	public static class TfIdf implements ScoringModel {
+		@Override
+		public double weight(int documentFrequency, int documents) {
+			int found = Math.min(documentFrequency, documents);
+			return 1 + Math.log((double) (documents + 1) / (found + 1));
+		}
+
+		@Override
+		public double score(int frequency, int wordCount, double averageWordCount, double weight) {
+			return (1 + Math.log(frequency)) * weight / Math.sqrt(wordCount);
+		}
+
+		@Override
+		public String toString() {
+			return "tfidf";
+		}
+	}
+}
@@ -0,0 +1,225 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * An immutable in-memory segment and its weight, the number of location and
+ * word pairs it holds. Also implements the tiered merge policy shared by the
+ * indexes built from segments.
+ *
+ * The terms are kept in a front-coded {@link TermDictionary} rather than a map,
+ * and the postings in an array in the same order, so the index of a term in
+ * the dictionary is the index of its postings.
+ *
+ * @see SegmentedIndex
+ * @see SnapshotIndex
+ */
+public class SealedSegment implements IndexSegment {
+
+	/** The number of segments in a tier that triggers a merge */
+	public static final int MERGE_FACTOR = 4;
+
+	/** The weight of the segments in the smallest tier */
+	public static final int TIER_FLOOR = 1000;
+
+	/** The sorted terms of the segment */
+	private final TermDictionary dictionary;
+
+	/** The postings of the term at the same index of the dictionary */
+	private final TermPostings[] postings;
+
+	/** The k-gram index of the dictionary */
+	private final KGramTable grams;
+
+	/** The number of location and word pairs in the segment */
+	private final long weight;
+
+	/**
+	 * Initializes a segment of the terms and postings of a sorted map. The
+	 * postings are kept, so must not be changed afterwards, but the map is not.
+	 *
+	 * @param terms the sealed terms and postings of the segment
+	 */
+	public SealedSegment(TreeMap<String, TermPostings> terms) {
+		this.dictionary = new TermDictionary(terms.keySet());
+		this.postings = terms.values().toArray(new TermPostings[0]);
+		KGramTable.Builder grams = new KGramTable.Builder();
+		for (String term : terms.keySet()) {
+			grams.add(term);
+		}
+		this.grams = grams.build();
+		long total = 0;
+		for (TermPostings list : postings) {
+			total += list.size();
+		}
+		this.weight = total;
+	}
+
+	/*
+	 * @see IndexSegment#postings(String)
+	 */
+	@Override
+	public TermPostings postings(String term) {
+		int index = dictionary.indexOf(term);
+		return index < 0 ? null : postings[index];
+	}
+
+	/*
+	 * @see IndexSegment#terms(String)
+	 */
+	@Override
+	public Iterator<String> terms(String from) {
+		return dictionary.iterator(dictionary.ceiling(from));
+	}
+
+	/**
+	 * Adds the postings of the range of terms in the dictionary starting with the
+	 * prefix, without comparing or creating each term.
+	 *
+	 * @see IndexSegment#prefixed(String, List)
+	 */
+	@Override
+	public void prefixed(String prefix, List<TermPostings> found) {
+		int[] range = dictionary.range(prefix);
+		for (int i = range[0]; i < range[1]; i++) {
+			found.add(postings[i]);
+		}
+	}
+
+	/**
+	 * Checks the terms sharing the rarest gram of the pattern, or the range of
+	 * terms starting with the characters before its first wildcard.
+	 *
+	 * @see IndexSegment#wildcard(String, List)
+	 */
+	@Override
+	public void wildcard(String pattern, List<TermPostings> found) {
+		int[] candidates = grams.candidates(pattern);
+		if (candidates == null) {
+			int[] range = dictionary.range(KGramIndex.prefix(pattern));
+			for (int i = range[0]; i < range[1]; i++) {
+				if (KGramIndex.matches(pattern, dictionary.term(i))) {
+					found.add(postings[i]);
+				}
+			}
+			return;
+		}
+		for (int i : candidates) {
+			if (KGramIndex.matches(pattern, dictionary.term(i))) {
+				found.add(postings[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the weight of the segment.
+	 *
+	 * @return number of location and word pairs
+	 */
+	public long weight() {
+		return weight;
+	}
+
+	/**
+	 * Returns the segment without the given locations. Words only found in those
+	 * locations are left out. The posting lists are shared with this segment.
+	 *
+	 * @param removed the location ids to leave out
+	 * @return a new segment, or this segment if it has none of the locations
+	 */
+	public SealedSegment without(BitSet removed) {
+		TreeMap<String, TermPostings> kept = new TreeMap<String, TermPostings>();
+		boolean changed = false;
+		Iterator<String> words = dictionary.iterator(0);
+		for (int index = 0; words.hasNext(); index++) {
+			String word = words.next();
+			TermPostings from = postings[index];
+			int first = 0;
+			while (first < from.size() && !removed.get(from.document(first))) {
+				first++;
+			}
+			if (first == from.size()) {
+				kept.put(word, from);
+				continue;
+			}
+			changed = true;
+			TermPostings postings = new TermPostings();
+			for (int i = 0; i < from.size(); i++) {
+				if (!removed.get(from.document(i))) {
+					postings.put(from.document(i), from.positions(i));
+				}
+			}
+			if (postings.size() > 0) {
+				kept.put(word, postings);
+			}
+		}
+		return changed ? new SealedSegment(kept) : this;
+	}
+
+	/**
+	 * Returns the merge tier of the segment.
+	 *
+	 * @return tier, 0 for the lightest segments
+	 */
+	public int tier() {
+		int tier = 0;
+		for (long limit = TIER_FLOOR; weight >= limit; limit *= MERGE_FACTOR) {
+			tier++;
+		}
+		return tier;
+	}
+
+	/**
+	 * Picks segments to merge using a tiered policy. Segments are grouped in tiers
+	 * by weight, each tier {@link #MERGE_FACTOR} times heavier than the one below,
+	 * and the first tier holding at least {@link #MERGE_FACTOR} segments has its
+	 * lightest segments merged.
+	 *
+	 * @param published the published segments
+	 * @return the segments to merge, or null if no tier is full
+	 */
+	public static List<SealedSegment> pick(List<SealedSegment> published) {
+		TreeMap<Integer, ArrayList<SealedSegment>> tiers = new TreeMap<Integer, ArrayList<SealedSegment>>();
+		for (SealedSegment segment : published) {
+			tiers.putIfAbsent(segment.tier(), new ArrayList<SealedSegment>());
+			tiers.get(segment.tier()).add(segment);
+		}
+		for (ArrayList<SealedSegment> tier : tiers.values()) {
+			if (tier.size() >= MERGE_FACTOR) {
+				tier.sort((a, b) -> Long.compare(a.weight, b.weight));
+				return new ArrayList<SealedSegment>(tier.subList(0, MERGE_FACTOR));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Merges segments into one sealed segment.
+	 *
+	 * @param segments the segments to merge
+	 * @return the merged segment
+	 * @see MemorySegment#merge(List)
+	 */
+	public static SealedSegment combine(List<SealedSegment> segments) {
+		return new SealedSegment(MemorySegment.merge(segments));
+	}
+
+	/**
+	 * Returns a copy of the published segments with the merged segments replaced
+	 * by the segment they were merged into.
+	 *
+	 * @param published the published segments
+	 * @param merged    the segments that were merged
+	 * @param into      the merged segment
+	 * @return the updated list
+	 */
+	public static ArrayList<SealedSegment> replace(List<SealedSegment> published, List<SealedSegment> merged,
+			SealedSegment into) {
+		ArrayList<SealedSegment> updated = new ArrayList<SealedSegment>(published);
+		updated.removeAll(merged);
+		updated.add(into);
+		return updated;
+	}
+}
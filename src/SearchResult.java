@@ -29,6 +29,22 @@ public class SearchResult implements Comparable<SearchResult> {
 		this.score = (double) queryCount / wordCount;
 	}
 
+	/**
+	 * Initializes a new SearchResult object with a score given by a
+	 * {@link ScoringModel}.
+	 *
+	 * @param location   the location the word was found
+	 * @param wordCount  the total word count of the location file
+	 * @param queryCount the total matches for a query
+	 * @param score      the score of the location
+	 */
+	public SearchResult(String location, int wordCount, int queryCount, double score) {
+		this.location = location;
+		this.wordCount = wordCount;
+		this.queryCount = queryCount;
+		this.score = score;
+	}
+
 	/**
 	 * Returns the location
 	 * 
@@ -83,13 +99,27 @@ public class SearchResult implements Comparable<SearchResult> {
 	 */
 	@Override
 	public int compareTo(SearchResult other) {
+		return compare(this.location(), this.score(), this.queryCount(), other);
+	}
+
+	/**
+	 * Compares a result that has not been created yet to a result, in the same
+	 * order as {@link #compareTo(SearchResult)}. Lets a search check whether a
+	 * location makes it into its results before creating a result for it.
+	 *
+	 * @param location   the location of the first result
+	 * @param score      the score of the first result
+	 * @param queryCount the total matches for the query
+	 * @param other      the result to compare to
+	 * @return negative if the first result sorts first
+	 */
+	public static int compare(String location, double score, int queryCount, SearchResult other) {
 
-		Double score = other.score();
-		int result = score.compareTo(this.score());
+		int result = Double.compare(other.score(), score);
 		if (result == 0) {
-			result = Integer.compare(other.queryCount(), this.queryCount());
+			result = Integer.compare(other.queryCount(), queryCount);
 			if (result == 0) {
-				result = String.CASE_INSENSITIVE_ORDER.compare(this.location(), other.location());
+				result = String.CASE_INSENSITIVE_ORDER.compare(location, other.location());
 			}
 		}
 		return result;
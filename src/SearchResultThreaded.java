@@ -8,6 +8,7 @@ import java.util.ArrayList;
 
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.Supplier;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,6 +22,8 @@ public class SearchResultThreaded implements QueryParserInterface {
 	private final WorkQueue worker;
 	private final TreeMap<String, ArrayList<SearchResult>> results;
 	private final ThreadSafeIndex index;
+	private final int limit;
+	private final QueryCache cache;
 	public static final Logger log = LogManager.getLogger();
 
 	/**
@@ -31,9 +34,37 @@ public class SearchResultThreaded implements QueryParserInterface {
 	 * @param worker
 	 */
 	public SearchResultThreaded(ThreadSafeIndex index, WorkQueue worker) {
+		this(index, worker, IndexSearcher.ALL);
+	}
+
+	/**
+	 * Initializes the threaded version of QueryParser that keeps only the best
+	 * results of each query.
+	 *
+	 * @param index  the index to search
+	 * @param worker the work queue to search with
+	 * @param limit  the most results to keep for each query
+	 */
+	public SearchResultThreaded(ThreadSafeIndex index, WorkQueue worker, int limit) {
+		this(index, worker, limit, null);
+	}
+
+	/**
+	 * Initializes the threaded version of QueryParser that keeps only the best
+	 * results of each query and looks them up in a cache shared with other
+	 * searchers first.
+	 *
+	 * @param index  the index to search
+	 * @param worker the work queue to search with
+	 * @param limit  the most results to keep for each query
+	 * @param cache  the cache of results of the index, or null
+	 */
+	public SearchResultThreaded(ThreadSafeIndex index, WorkQueue worker, int limit, QueryCache cache) {
 		this.results = new TreeMap<String, ArrayList<SearchResult>>();
 		this.worker = worker;
 		this.index = index;
+		this.limit = limit;
+		this.cache = cache;
 		log.debug("SearchResultThreaded started");
 		log.info("SearchResultThreaded started");
 	}
@@ -51,7 +82,27 @@ public class SearchResultThreaded implements QueryParserInterface {
 		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);) {
 			String line = null;
 			while ((line = reader.readLine()) != null) {
-				worker.execute(new Find(exact, line));
+				worker.execute(new Find(exact, 0, line));
+			}
+		} finally {
+			worker.finish();
+		}
+	}
+
+	/**
+	 * Searches every line of a query file for the words within an edit distance of
+	 * the query words, a line per task.
+	 * 
+	 * @param path     file path to read queries from
+	 * @param distance the most edits allowed, 1 or 2
+	 * @throws IOException
+	 */
+	@Override
+	public void addFuzzyFile(Path path, int distance) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);) {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				worker.execute(new Find(true, distance, line));
 			}
 		} finally {
 			worker.finish();
@@ -78,16 +129,18 @@ public class SearchResultThreaded implements QueryParserInterface {
 	 */
 	public class Find implements Runnable {
 		private final boolean exact;
+		private final int distance;
 		private final String queryString;
 
-		public Find(boolean exact, String queryString) {
+		public Find(boolean exact, int distance, String queryString) {
 			this.exact = exact;
+			this.distance = distance;
 			this.queryString = queryString;
 		}
 
 		@Override
 		public void run() {
-			addQueryLine(queryString, exact);
+			addLine(queryString, exact, distance);
 		}
 	}
 
@@ -96,6 +149,44 @@ public class SearchResultThreaded implements QueryParserInterface {
 	 */
 	@Override
 	public void addQueryLine(String line, boolean exact) {
+		addLine(line, exact, 0);
+	}
+
+	/*
+	 * @see QueryParserInterface#addFuzzyLine(String, int)
+	 */
+	@Override
+	public void addFuzzyLine(String line, int distance) {
+		addLine(line, true, distance);
+	}
+
+	/**
+	 * Searches a line of query and adds its results.
+	 *
+	 * @param line     the query line
+	 * @param exact    if exact search has to be performed
+	 * @param distance the most edits allowed for the words of an ordinary query,
+	 *                 or 0 to not search fuzzily
+	 */
+	private void addLine(String line, boolean exact, int distance) {
+		BooleanQuery combined = BooleanQuery.parse(line);
+		PhraseQuery phrase = combined == null ? PhraseQuery.parse(line) : null;
+		if (combined != null || phrase != null) {
+			String query = combined != null ? combined.toString() : phrase.toString();
+			synchronized (results) {
+				if (results.containsKey(query)) {
+					return;
+				}
+			}
+			String mode = (combined != null ? "boolean " : "phrase ") + (exact ? "exact" : "partial");
+			ArrayList<SearchResult> localresults = cached(mode, query,
+					() -> combined != null ? index.booleanSearch(combined, exact, limit)
+							: index.phraseSearch(phrase, exact, limit));
+			synchronized (results) {
+				results.putIfAbsent(query, localresults);
+			}
+			return;
+		}
 		TreeSet<String> sortedWords = TextFileStemmer.clean(line);
 		if (sortedWords != null) {
 			String query = String.join(" ", sortedWords);
@@ -106,14 +197,30 @@ public class SearchResultThreaded implements QueryParserInterface {
 				}
 			}
 			ArrayList<SearchResult> localresults = new ArrayList<SearchResult>();
-			if (exact) {
-				localresults.addAll(index.exactSearch(sortedWords));
+			if (distance > 0) {
+				localresults.addAll(cached("fuzzy" + distance, query, () -> index.fuzzySearch(sortedWords, distance, limit)));
+			} else if (exact) {
+				localresults.addAll(cached("exact", query, () -> index.exactSearch(sortedWords, limit)));
 			} else {
-				localresults.addAll(index.partialSearch(sortedWords));
+				localresults.addAll(cached("partial", query, () -> index.partialSearch(sortedWords, limit)));
 			}
 			synchronized (results) {
 				results.putIfAbsent(query, localresults);
 			}
 		}
 	}
+
+	/**
+	 * Returns the results of a query from the cache if there is one, and otherwise
+	 * searches.
+	 *
+	 * @param mode   the kind of search
+	 * @param query  the normalized query
+	 * @param search runs the search
+	 * @return the results
+	 * @see QueryCache#search(String, String, int, Supplier)
+	 */
+	private ArrayList<SearchResult> cached(String mode, String query, Supplier<ArrayList<SearchResult>> search) {
+		return cache == null ? search.get() : cache.search(mode, query, limit, search);
+	}
 }
@@ -0,0 +1,565 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread-safe index made of immutable sorted segments, in the style of a
+ * log-structured merge tree. Every {@link #addAll(InvertedIndex)} turns the
+ * local index into a new segment without touching the existing ones, and words
+ * added one at a time go into a small buffer that is flushed into a segment once
+ * it is full. Searches fan out over a snapshot of the segment list, which is
+ * replaced rather than changed, so writers only hold readers up for as long as
+ * it takes to publish a new list. A background thread merges segments of
+ * similar size once {@link SealedSegment#MERGE_FACTOR} of them have built up.
+ *
+ * Deleted locations are filtered out of searches right away. A purge replaces
+ * every segment that has postings of deleted locations with a filtered copy.
+ *
+ * @see SealedSegment
+ * @see IndexSearcher
+ */
+public class SegmentedIndex extends ThreadSafeIndex {
+	public static final Logger log = LogManager.getLogger();
+
+	/** The number of positions the buffer holds before it is flushed */
+	public static final int BUFFER_LIMIT = 50000;
+
+	/** The published segments, replaced as a whole and never changed */
+	private volatile List<SealedSegment> segments;
+
+	/** Guards replacing the published segments */
+	private final Object publish;
+
+	/** Held while purging or merging, so neither replaces segments the other uses */
+	private final Object compaction;
+
+	/** Words added one at a time that have not been flushed yet */
+	private TreeMap<String, TermPostings> buffer;
+
+	/** The number of positions in the buffer */
+	private int buffered;
+
+	/** Guards the buffer, prefers writers so searches cannot starve a flush */
+	private final IndexLock bufferLock;
+
+	/** The ids and word counts of every location, writes synchronize on it */
+	private final DocumentTable documents;
+
+	/** A snapshot of the shared table for searches, null once the table changes */
+	private DocumentTable view;
+
+	/** A segment loaded from disk, or null */
+	private volatile IndexSegment base;
+
+	/** Merges segments in the background */
+	private final Merger merger;
+
+	/**
+	 * Initializes an empty segmented index and starts the background merger.
+	 */
+	public SegmentedIndex() {
+		super();
+		this.segments = Collections.emptyList();
+		this.publish = new Object();
+		this.compaction = new Object();
+		this.buffer = new TreeMap<String, TermPostings>();
+		this.buffered = 0;
+		this.bufferLock = new PrioritizedReadWriteLock();
+		this.documents = new DocumentTable();
+		this.view = null;
+		this.base = null;
+		this.merger = new Merger();
+		this.merger.start();
+	}
+
+	/*
+	 * @see InvertedIndex#addWords
+	 */
+	@Override
+	public void addWords(List<String> words, String file, int position) {
+		for (String word : words) {
+			add(word, file, position++);
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#add
+	 */
+	@Override
+	public void add(String word, String location, int position) {
+		int document;
+		synchronized (documents) {
+			document = documents.add(location);
+			documents.addWords(document, 1);
+			view = null;
+		}
+		bufferLock.lockReadWrite();
+		try {
+			buffer.putIfAbsent(word, new TermPostings());
+			buffer.get(word).getOrCreate(document).add(position);
+			buffered++;
+			if (buffered >= BUFFER_LIMIT) {
+				flushBuffer();
+			}
+		} finally {
+			bufferLock.unlockReadWrite();
+		}
+		changed();
+	}
+
+	/**
+	 * Turns the local index into a new segment. The postings are remapped to the
+	 * location ids of this index and sealed before the segment is published, so
+	 * the only shared state touched is the document table and the segment list.
+	 *
+	 * @see InvertedIndex#addAll
+	 */
+	@Override
+	public void addAll(InvertedIndex local) {
+		DocumentTable from = local.documents();
+		int[] ids = new int[from.size()];
+		synchronized (documents) {
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = documents.add(from.location(i));
+				documents.addWords(ids[i], from.wordCount(i));
+			}
+			view = null;
+		}
+		TreeMap<String, TermPostings> terms = new TreeMap<String, TermPostings>();
+		for (Entry<String, TermPostings> entry : local.terms().entrySet()) {
+			TermPostings postings = new TermPostings();
+			for (int i = 0; i < entry.getValue().size(); i++) {
+				PostingList positions = entry.getValue().positions(i);
+				positions.seal();
+				postings.put(ids[entry.getValue().document(i)], positions);
+			}
+			terms.put(entry.getKey(), postings);
+		}
+		publish(new SealedSegment(terms));
+		changed();
+	}
+
+	/**
+	 * Flushes the buffer into a segment.
+	 */
+	public void flush() {
+		bufferLock.lockReadWrite();
+		try {
+			flushBuffer();
+		} finally {
+			bufferLock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Segments are sealed when they are created.
+	 *
+	 * @see InvertedIndex#seal
+	 */
+	@Override
+	public void seal() {
+		flush();
+	}
+
+	/*
+	 * @see InvertedIndex#delete
+	 */
+	@Override
+	public void delete(String location) {
+		synchronized (documents) {
+			documents.delete(location);
+			view = null;
+			schedulePurge(documents);
+		}
+		changed();
+	}
+
+	/**
+	 * Deletes the locations and publishes the local index as a new segment. The
+	 * segments holding the old postings are only rewritten by a purge.
+	 *
+	 * @see InvertedIndex#replace
+	 */
+	@Override
+	public void replace(Collection<String> locations, InvertedIndex local) {
+		synchronized (documents) {
+			for (String location : locations) {
+				documents.delete(location);
+			}
+			for (int i = 0; i < local.documents().size(); i++) {
+				documents.delete(local.documents().location(i));
+			}
+			view = null;
+			schedulePurge(documents);
+		}
+		addAll(local);
+	}
+
+	/**
+	 * Removes the postings of deleted locations from the buffer and publishes a
+	 * filtered copy of every segment that has any.
+	 *
+	 * @see InvertedIndex#purge
+	 */
+	@Override
+	public void purge() {
+		synchronized (compaction) {
+			BitSet removed;
+			synchronized (documents) {
+				removed = documents.unpurged();
+			}
+			if (removed.isEmpty()) {
+				return;
+			}
+			bufferLock.lockReadWrite();
+			try {
+				Iterator<TermPostings> iterator = buffer.values().iterator();
+				while (iterator.hasNext()) {
+					if (iterator.next().removeAll(removed) == 0) {
+						iterator.remove();
+					}
+				}
+			} finally {
+				bufferLock.unlockReadWrite();
+			}
+			synchronized (publish) {
+				ArrayList<SealedSegment> updated = new ArrayList<SealedSegment>(segments.size());
+				for (SealedSegment segment : segments) {
+					updated.add(segment.without(removed));
+				}
+				segments = Collections.unmodifiableList(updated);
+			}
+			synchronized (documents) {
+				documents.purged(removed);
+				view = null;
+			}
+		}
+		changed();
+	}
+
+	/*
+	 * @see InvertedIndex#sendIndex
+	 */
+	@Override
+	public void sendIndex(Writer writer) throws IOException {
+		bufferLock.lockReadOnly();
+		try {
+			synchronized (documents) {
+				TreeJSONWriter.asDoubleNestedObject(MemorySegment.merge(snapshot(), documents), documents, writer);
+			}
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#locations
+	 */
+	@Override
+	public TreeMap<String, Integer> locations() {
+		synchronized (documents) {
+			return documents.asMap();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#save
+	 */
+	@Override
+	public void save(Path directory) throws IOException {
+		bufferLock.lockReadOnly();
+		try {
+			synchronized (documents) {
+				IndexFile.write(MemorySegment.merge(snapshot(), documents), documents, directory);
+			}
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#load
+	 */
+	@Override
+	public void load(Path directory) throws IOException {
+		synchronized (documents) {
+			if (documents.size() > 0) {
+				throw new IllegalStateException("Can only load into an empty index.");
+			}
+			MappedSegment segment = new MappedSegment(directory);
+			IndexFile.readDocuments(directory, documents);
+			view = null;
+			base = segment;
+		}
+		changed();
+	}
+
+	/*
+	 * @see InvertedIndex#exactSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords, int k) {
+		bufferLock.lockReadOnly();
+		try {
+			return new IndexSearcher(snapshot(), view(), scoring()).exactSearch(queryWords, k);
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#partialSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords, int k) {
+		bufferLock.lockReadOnly();
+		try {
+			return new IndexSearcher(snapshot(), view(), scoring()).partialSearch(queryWords, k);
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#fuzzySearch
+	 */
+	@Override
+	public ArrayList<SearchResult> fuzzySearch(TreeSet<String> queryWords, int distance, int k) {
+		bufferLock.lockReadOnly();
+		try {
+			return new IndexSearcher(snapshot(), view(), scoring()).fuzzySearch(queryWords, distance, k);
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#phraseSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> phraseSearch(PhraseQuery query, boolean exact, int k) {
+		bufferLock.lockReadOnly();
+		try {
+			return new IndexSearcher(snapshot(), view(), scoring()).phraseSearch(query, exact, k);
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#booleanSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> booleanSearch(BooleanQuery query, boolean exact, int k) {
+		bufferLock.lockReadOnly();
+		try {
+			return new IndexSearcher(snapshot(), view(), scoring()).booleanSearch(query, exact, k);
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word) {
+		bufferLock.lockReadOnly();
+		try {
+			return new IndexSearcher(snapshot(), view()).contains(word);
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word, String file) {
+		bufferLock.lockReadOnly();
+		try {
+			return new IndexSearcher(snapshot(), view()).contains(word, file);
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word, String file, int position) {
+		bufferLock.lockReadOnly();
+		try {
+			return new IndexSearcher(snapshot(), view()).contains(word, file, position);
+		} finally {
+			bufferLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the metrics of the lock guarding the buffer.
+	 *
+	 * @see ThreadSafeIndex#lockMetrics
+	 */
+	@Override
+	public LockMetrics lockMetrics() {
+		return bufferLock.metrics();
+	}
+
+	/**
+	 * Returns the number of published segments, not counting the buffer.
+	 *
+	 * @return number of segments
+	 */
+	public int segmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Stops the background merger. Segments that have not been merged yet are
+	 * still searched.
+	 */
+	public void shutdown() {
+		merger.shutdown();
+	}
+
+	/**
+	 * Returns the loaded segment, the published segments and the buffer. Must be
+	 * called while holding the buffer lock.
+	 *
+	 * @return the segments to search
+	 */
+	private List<IndexSegment> snapshot() {
+		List<SealedSegment> published = segments;
+		ArrayList<IndexSegment> snapshot = new ArrayList<IndexSegment>(published.size() + 2);
+		if (base != null) {
+			snapshot.add(base);
+		}
+		snapshot.addAll(published);
+		snapshot.add(new MemorySegment(buffer));
+		return snapshot;
+	}
+
+	/**
+	 * Returns a snapshot of the shared table, taking a new one only if the table
+	 * has changed since the last. Searches read the snapshot without
+	 * synchronizing, as writers may grow the arrays of the shared table. Must be
+	 * taken after the segments, as locations are added to the table before their
+	 * postings are published.
+	 *
+	 * @return the snapshot
+	 */
+	private DocumentTable view() {
+		synchronized (documents) {
+			if (view == null) {
+				view = documents.snapshot();
+			}
+			return view;
+		}
+	}
+
+	/**
+	 * Turns the buffer into a segment and starts a new buffer. Must be called while
+	 * holding the buffer write lock.
+	 */
+	private void flushBuffer() {
+		if (buffered > 0) {
+			for (TermPostings postings : buffer.values()) {
+				postings.seal();
+			}
+			publish(new SealedSegment(buffer));
+			buffer = new TreeMap<String, TermPostings>();
+			buffered = 0;
+		}
+	}
+
+	/**
+	 * Publishes a new segment and wakes up the merger.
+	 *
+	 * @param segment the segment to add
+	 */
+	private void publish(SealedSegment segment) {
+		synchronized (publish) {
+			ArrayList<SealedSegment> updated = new ArrayList<SealedSegment>(segments);
+			updated.add(segment);
+			segments = Collections.unmodifiableList(updated);
+			publish.notifyAll();
+		}
+	}
+
+	/**
+	 * Replaces merged segments with the segment they were merged into.
+	 *
+	 * @param merged the segments that were merged
+	 * @param into   the merged segment
+	 */
+	private void replace(List<SealedSegment> merged, SealedSegment into) {
+		synchronized (publish) {
+			segments = Collections.unmodifiableList(SealedSegment.replace(segments, merged, into));
+		}
+	}
+
+	/**
+	 * Waits for segments to be published and merges full tiers until shutdown.
+	 */
+	private class Merger extends Thread {
+		private volatile boolean shutdown;
+
+		public Merger() {
+			super("SegmentMerger");
+			this.shutdown = false;
+			setDaemon(true);
+		}
+
+		/**
+		 * Asks the merger to stop once any merge in progress is done.
+		 */
+		public void shutdown() {
+			shutdown = true;
+			synchronized (publish) {
+				publish.notifyAll();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (!shutdown) {
+				List<SealedSegment> merge;
+				synchronized (publish) {
+					while ((merge = SealedSegment.pick(segments)) == null && !shutdown) {
+						try {
+							publish.wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+				if (merge != null && !shutdown) {
+					synchronized (compaction) {
+						// a purge may have replaced the picked segments while waiting
+						merge = SealedSegment.pick(segments);
+						if (merge != null) {
+							log.debug("Merging {} segments", merge.size());
+							replace(merge, SealedSegment.combine(merge));
+						}
+					}
+				}
+			}
+		}
+	}
+}
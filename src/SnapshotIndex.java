@@ -0,0 +1,445 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread-safe index whose readers never take a lock. Searches read an
+ * immutable {@link Generation} of the index through a volatile reference.
+ * Writers batch their changes and publish them as a new generation once
+ * {@link #BATCH_LIMIT} positions have been added, once
+ * {@link #PUBLISH_INTERVAL} milliseconds have passed, or when
+ * {@link #seal()} is called. A search only sees the changes published before
+ * it started, so a crawl running in the background does not slow it down.
+ *
+ * Deletions are published like any other change. A purge publishes a
+ * generation whose segments no longer hold postings of deleted locations.
+ *
+ * @see SealedSegment
+ * @see DocumentTable#snapshot()
+ */
+public class SnapshotIndex extends ThreadSafeIndex {
+	public static final Logger log = LogManager.getLogger();
+
+	/** The number of positions batched before a new generation is published */
+	public static final int BATCH_LIMIT = 100000;
+
+	/** The milliseconds between publishing pending changes in the background */
+	public static final long PUBLISH_INTERVAL = 1000;
+
+	/** The generation searched by readers */
+	private volatile Generation current;
+
+	/** Changes not published yet, guarded by the writer lock */
+	private TreeMap<String, TermPostings> pending;
+
+	/** The number of positions in the pending changes */
+	private int batched;
+
+	/** The location ids and word counts writers update, guarded by the writer lock */
+	private final DocumentTable documents;
+
+	/** Serializes writers, readers never use it */
+	private final Object writer;
+
+	/** Publishes pending changes in the background */
+	private final Publisher publisher;
+
+	/**
+	 * Initializes an empty index and starts the background publisher.
+	 */
+	public SnapshotIndex() {
+		super();
+		this.documents = new DocumentTable();
+		this.current = new Generation(0, null, Collections.emptyList(), documents.snapshot());
+		this.pending = new TreeMap<String, TermPostings>();
+		this.batched = 0;
+		this.writer = new Object();
+		this.publisher = new Publisher();
+		this.publisher.start();
+	}
+
+	/*
+	 * @see InvertedIndex#addWords
+	 */
+	@Override
+	public void addWords(List<String> words, String file, int position) {
+		synchronized (writer) {
+			for (String word : words) {
+				add(word, file, position++);
+			}
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#add
+	 */
+	@Override
+	public void add(String word, String location, int position) {
+		synchronized (writer) {
+			int document = documents.add(location);
+			documents.addWords(document, 1);
+			pending.putIfAbsent(word, new TermPostings());
+			pending.get(word).getOrCreate(document).add(position);
+			batched++;
+			if (batched >= BATCH_LIMIT) {
+				publish();
+			}
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#addAll
+	 */
+	@Override
+	public void addAll(InvertedIndex local) {
+		DocumentTable from = local.documents();
+		synchronized (writer) {
+			int[] ids = new int[from.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = documents.add(from.location(i));
+				documents.addWords(ids[i], from.wordCount(i));
+				batched += from.wordCount(i);
+			}
+			for (Entry<String, TermPostings> entry : local.terms().entrySet()) {
+				pending.putIfAbsent(entry.getKey(), new TermPostings());
+				TermPostings postings = pending.get(entry.getKey());
+				for (int i = 0; i < entry.getValue().size(); i++) {
+					postings.put(ids[entry.getValue().document(i)], entry.getValue().positions(i));
+				}
+			}
+			if (batched >= BATCH_LIMIT) {
+				publish();
+			}
+		}
+	}
+
+	/**
+	 * Publishes the pending changes as a new generation.
+	 *
+	 * @see InvertedIndex#seal
+	 */
+	@Override
+	public void seal() {
+		synchronized (writer) {
+			publish();
+		}
+	}
+
+	/**
+	 * Returns the number of the generation readers currently search. The number
+	 * goes up every time changes are published.
+	 *
+	 * @return the current generation number
+	 * @see InvertedIndex#generation()
+	 */
+	@Override
+	public long generation() {
+		return current.number;
+	}
+
+	/**
+	 * Stops publishing in the background. Pending changes are published by the
+	 * next call to {@link #seal()}.
+	 */
+	public void shutdown() {
+		publisher.shutdown();
+	}
+
+	/**
+	 * The deletion is published with the next generation.
+	 *
+	 * @see InvertedIndex#delete
+	 */
+	@Override
+	public void delete(String location) {
+		synchronized (writer) {
+			if (documents.delete(location) >= 0) {
+				batched++;
+				schedulePurge(documents);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the locations and adds the local index in one batch, so a search
+	 * sees either the old or the new words of a replaced location.
+	 *
+	 * @see InvertedIndex#replace
+	 */
+	@Override
+	public void replace(Collection<String> locations, InvertedIndex local) {
+		synchronized (writer) {
+			for (String location : locations) {
+				if (documents.delete(location) >= 0) {
+					batched++;
+				}
+			}
+			for (int i = 0; i < local.documents().size(); i++) {
+				if (documents.delete(local.documents().location(i)) >= 0) {
+					batched++;
+				}
+			}
+			schedulePurge(documents);
+			addAll(local);
+		}
+	}
+
+	/**
+	 * Publishes the pending changes, then a generation with a filtered copy of
+	 * every segment that has postings of deleted locations.
+	 *
+	 * @see InvertedIndex#purge
+	 */
+	@Override
+	public void purge() {
+		synchronized (writer) {
+			BitSet removed = documents.unpurged();
+			if (removed.isEmpty()) {
+				return;
+			}
+			publish();
+			Generation generation = current;
+			ArrayList<SealedSegment> sealed = new ArrayList<SealedSegment>(generation.sealed.size());
+			for (SealedSegment segment : generation.sealed) {
+				sealed.add(segment.without(removed));
+			}
+			current = new Generation(generation.number + 1, generation.base, Collections.unmodifiableList(sealed),
+					generation.documents);
+			documents.purged(removed);
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#sendIndex
+	 */
+	@Override
+	public void sendIndex(Writer writer) throws IOException {
+		seal();
+		Generation generation = current;
+		TreeJSONWriter.asDoubleNestedObject(MemorySegment.merge(generation.segments(), generation.documents),
+				generation.documents, writer);
+	}
+
+	/*
+	 * @see InvertedIndex#locations
+	 */
+	@Override
+	public TreeMap<String, Integer> locations() {
+		seal();
+		return current.documents.asMap();
+	}
+
+	/*
+	 * @see InvertedIndex#save
+	 */
+	@Override
+	public void save(Path directory) throws IOException {
+		seal();
+		Generation generation = current;
+		IndexFile.write(MemorySegment.merge(generation.segments(), generation.documents), generation.documents,
+				directory);
+	}
+
+	/*
+	 * @see InvertedIndex#load
+	 */
+	@Override
+	public void load(Path directory) throws IOException {
+		synchronized (writer) {
+			if (documents.size() > 0) {
+				throw new IllegalStateException("Can only load into an empty index.");
+			}
+			MappedSegment segment = new MappedSegment(directory);
+			IndexFile.readDocuments(directory, documents);
+			Generation generation = current;
+			current = new Generation(generation.number + 1, segment, generation.sealed, documents.snapshot());
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#exactSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords, int k) {
+		return current.searcher(scoring()).exactSearch(queryWords, k);
+	}
+
+	/*
+	 * @see InvertedIndex#partialSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords, int k) {
+		return current.searcher(scoring()).partialSearch(queryWords, k);
+	}
+
+	/*
+	 * @see InvertedIndex#fuzzySearch
+	 */
+	@Override
+	public ArrayList<SearchResult> fuzzySearch(TreeSet<String> queryWords, int distance, int k) {
+		return current.searcher(scoring()).fuzzySearch(queryWords, distance, k);
+	}
+
+	/*
+	 * @see InvertedIndex#phraseSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> phraseSearch(PhraseQuery query, boolean exact, int k) {
+		return current.searcher(scoring()).phraseSearch(query, exact, k);
+	}
+
+	/*
+	 * @see InvertedIndex#booleanSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> booleanSearch(BooleanQuery query, boolean exact, int k) {
+		return current.searcher(scoring()).booleanSearch(query, exact, k);
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word) {
+		return current.searcher(ScoringModel.COUNT).contains(word);
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word, String file) {
+		return current.searcher(ScoringModel.COUNT).contains(word, file);
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word, String file, int position) {
+		return current.searcher(ScoringModel.COUNT).contains(word, file, position);
+	}
+
+	/**
+	 * Turns the pending changes into a segment, merges full tiers and publishes
+	 * the result as a new generation. Must be called while holding the writer
+	 * lock.
+	 */
+	private void publish() {
+		if (batched == 0) {
+			return;
+		}
+		for (TermPostings postings : pending.values()) {
+			postings.seal();
+		}
+		Generation generation = current;
+		ArrayList<SealedSegment> sealed = new ArrayList<SealedSegment>(generation.sealed);
+		if (!pending.isEmpty()) {
+			sealed.add(new SealedSegment(pending));
+		}
+		List<SealedSegment> merge;
+		while ((merge = SealedSegment.pick(sealed)) != null) {
+			sealed = SealedSegment.replace(sealed, merge, SealedSegment.combine(merge));
+		}
+		current = new Generation(generation.number + 1, generation.base, Collections.unmodifiableList(sealed),
+				documents.snapshot());
+		log.debug("Published generation {}", current.number);
+		pending = new TreeMap<String, TermPostings>();
+		batched = 0;
+	}
+
+	/**
+	 * An immutable view of the index: the segments and location table as of one
+	 * publish.
+	 */
+	private static class Generation {
+		private final long number;
+		private final IndexSegment base;
+		private final List<SealedSegment> sealed;
+		private final DocumentTable documents;
+
+		/**
+		 * Initializes a generation.
+		 *
+		 * @param number    the generation number
+		 * @param base      the segment loaded from disk, or null
+		 * @param sealed    the in-memory segments
+		 * @param documents a snapshot of the location table
+		 */
+		public Generation(long number, IndexSegment base, List<SealedSegment> sealed, DocumentTable documents) {
+			this.number = number;
+			this.base = base;
+			this.sealed = sealed;
+			this.documents = documents;
+		}
+
+		/**
+		 * Returns every segment of the generation.
+		 *
+		 * @return the segments
+		 */
+		public List<IndexSegment> segments() {
+			ArrayList<IndexSegment> segments = new ArrayList<IndexSegment>(sealed.size() + 1);
+			if (base != null) {
+				segments.add(base);
+			}
+			segments.addAll(sealed);
+			return segments;
+		}
+
+		/**
+		 * Returns a searcher over the generation.
+		 *
+		 * @param scoring how results are scored
+		 * @return the searcher
+		 */
+		public IndexSearcher searcher(ScoringModel scoring) {
+			return new IndexSearcher(segments(), documents, scoring);
+		}
+	}
+
+	/**
+	 * Publishes pending changes every {@link SnapshotIndex#PUBLISH_INTERVAL}
+	 * milliseconds until shutdown.
+	 */
+	private class Publisher extends Thread {
+		private volatile boolean shutdown;
+
+		public Publisher() {
+			super("SnapshotPublisher");
+			this.shutdown = false;
+			setDaemon(true);
+		}
+
+		/**
+		 * Asks the publisher to stop.
+		 */
+		public void shutdown() {
+			shutdown = true;
+			this.interrupt();
+		}
+
+		@Override
+		public void run() {
+			while (!shutdown) {
+				try {
+					Thread.sleep(PUBLISH_INTERVAL);
+				} catch (InterruptedException e) {
+					return;
+				}
+				seal();
+			}
+		}
+	}
+}
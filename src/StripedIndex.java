@@ -0,0 +1,635 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A thread-safe index that partitions words by hash across independently
+ * locked stripes. Adding a word only locks the stripe the word belongs to, and
+ * {@link #addAll(InvertedIndex)} merges the words of a local index one stripe
+ * at a time, so builders working on different words proceed in parallel
+ * instead of queueing up on a single lock.
+ *
+ * Exact searches only lock the stripes of the query words. Partial and wildcard
+ * searches and output need every stripe and use a merged, sorted view of them.
+ * Searches read a snapshot of the location table, taken again only after a
+ * writer has changed it.
+ */
+public class StripedIndex extends ThreadSafeIndex {
+
+	/** The default number of stripes */
+	public static final int DEFAULT_STRIPES = 16;
+
+	/** The words and postings of each stripe */
+	private final TreeMap<String, TermPostings>[] stripes;
+
+	/** The k-gram index of the words of each stripe */
+	private final KGramIndex[] grams;
+
+	/** The lock of each stripe */
+	private final IndexLock[] locks;
+
+	/** The metrics shared by the locks of every stripe */
+	private final LockMetrics metrics;
+
+	/** The ids and word counts of every location, writes synchronize on it */
+	private final DocumentTable documents;
+
+	/** A snapshot of the shared table for searches, null once the table changes */
+	private DocumentTable view;
+
+	/** A segment loaded from disk, or null */
+	private volatile IndexSegment base;
+
+	/**
+	 * Initializes an index with the default number of stripes.
+	 *
+	 * @see #StripedIndex(int)
+	 */
+	public StripedIndex() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Initializes an index with the given number of stripes.
+	 *
+	 * @param count the number of stripes; should be greater than 1
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public StripedIndex(int count) {
+		super();
+		this.stripes = new TreeMap[Math.max(1, count)];
+		this.grams = new KGramIndex[stripes.length];
+		this.locks = new IndexLock[stripes.length];
+		this.metrics = new LockMetrics();
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new TreeMap<String, TermPostings>();
+			grams[i] = new KGramIndex();
+			locks[i] = new PrioritizedReadWriteLock(PrioritizedReadWriteLock.Preference.WRITERS, metrics);
+		}
+		this.documents = new DocumentTable();
+		this.view = null;
+		this.base = null;
+	}
+
+	/*
+	 * @see InvertedIndex#addWords
+	 */
+	@Override
+	public void addWords(List<String> words, String file, int position) {
+		for (String word : words) {
+			add(word, file, position++);
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#add
+	 */
+	@Override
+	public void add(String word, String location, int position) {
+		int document;
+		synchronized (documents) {
+			document = documents.add(location);
+			documents.addWords(document, 1);
+			view = null;
+		}
+		int stripe = stripe(word);
+		locks[stripe].lockReadWrite();
+		try {
+			if (stripes[stripe].putIfAbsent(word, new TermPostings()) == null) {
+				grams[stripe].add(word);
+			}
+			stripes[stripe].get(word).getOrCreate(document).add(position);
+		} finally {
+			locks[stripe].unlockReadWrite();
+		}
+		changed();
+	}
+
+	/**
+	 * Merges the local index one stripe at a time, holding only the lock of the
+	 * stripe being merged. The posting lists taken from the local index are
+	 * sealed.
+	 *
+	 * @see InvertedIndex#addAll
+	 */
+	@Override
+	public void addAll(InvertedIndex local) {
+		int[] ids;
+		synchronized (documents) {
+			ids = addDocuments(local.documents());
+			view = null;
+		}
+		ArrayList<ArrayList<Entry<String, TermPostings>>> buckets = buckets(local);
+		for (int stripe = 0; stripe < stripes.length; stripe++) {
+			if (buckets.get(stripe).isEmpty()) {
+				continue;
+			}
+			locks[stripe].lockReadWrite();
+			try {
+				merge(stripe, buckets.get(stripe), ids);
+			} finally {
+				locks[stripe].unlockReadWrite();
+			}
+		}
+		changed();
+	}
+
+	/*
+	 * @see InvertedIndex#delete
+	 */
+	@Override
+	public void delete(String location) {
+		synchronized (documents) {
+			documents.delete(location);
+			view = null;
+			schedulePurge(documents);
+		}
+		changed();
+	}
+
+	/**
+	 * Deletes the locations first, so searches briefly see neither the old nor the
+	 * new words of a replaced location, then adds the local index one stripe at a
+	 * time like {@link #addAll(InvertedIndex)}.
+	 *
+	 * @see InvertedIndex#replace
+	 */
+	@Override
+	public void replace(Collection<String> locations, InvertedIndex local) {
+		synchronized (documents) {
+			for (String location : locations) {
+				documents.delete(location);
+			}
+			for (int i = 0; i < local.documents().size(); i++) {
+				documents.delete(local.documents().location(i));
+			}
+			view = null;
+			schedulePurge(documents);
+		}
+		addAll(local);
+	}
+
+	/**
+	 * Purges one stripe at a time, holding only the write lock of the stripe
+	 * being purged.
+	 *
+	 * @see InvertedIndex#purge
+	 */
+	@Override
+	public void purge() {
+		BitSet removed;
+		synchronized (documents) {
+			removed = documents.unpurged();
+		}
+		if (removed.isEmpty()) {
+			return;
+		}
+		for (int stripe = 0; stripe < stripes.length; stripe++) {
+			locks[stripe].lockReadWrite();
+			try {
+				ArrayList<String> emptied = new ArrayList<String>();
+				Iterator<Entry<String, TermPostings>> iterator = stripes[stripe].entrySet().iterator();
+				while (iterator.hasNext()) {
+					Entry<String, TermPostings> entry = iterator.next();
+					if (entry.getValue().removeAll(removed) == 0) {
+						emptied.add(entry.getKey());
+						iterator.remove();
+					}
+				}
+				grams[stripe].removeAll(emptied);
+			} finally {
+				locks[stripe].unlockReadWrite();
+			}
+		}
+		synchronized (documents) {
+			documents.purged(removed);
+		}
+		changed();
+	}
+
+	/**
+	 * Adds the locations of a local table to the shared table. Must be called
+	 * while synchronized on the shared table.
+	 *
+	 * @param from the local table
+	 * @return the shared id of each local id
+	 */
+	private int[] addDocuments(DocumentTable from) {
+		int[] ids = new int[from.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = documents.add(from.location(i));
+			documents.addWords(ids[i], from.wordCount(i));
+		}
+		return ids;
+	}
+
+	/**
+	 * Sorts the words of a local index by stripe and seals their posting lists.
+	 *
+	 * @param local the local index
+	 * @return the words and postings of each stripe
+	 */
+	private ArrayList<ArrayList<Entry<String, TermPostings>>> buckets(InvertedIndex local) {
+		ArrayList<ArrayList<Entry<String, TermPostings>>> buckets = new ArrayList<>(stripes.length);
+		for (int i = 0; i < stripes.length; i++) {
+			buckets.add(new ArrayList<Entry<String, TermPostings>>());
+		}
+		for (Entry<String, TermPostings> entry : local.terms().entrySet()) {
+			entry.getValue().seal();
+			buckets.get(stripe(entry.getKey())).add(entry);
+		}
+		return buckets;
+	}
+
+	/**
+	 * Merges words of a local index into a stripe. Must be called while holding
+	 * the write lock of the stripe.
+	 *
+	 * @param stripe the stripe
+	 * @param bucket the words of the local index in the stripe
+	 * @param ids    the shared id of each local id
+	 */
+	private void merge(int stripe, List<Entry<String, TermPostings>> bucket, int[] ids) {
+		for (Entry<String, TermPostings> entry : bucket) {
+			if (stripes[stripe].putIfAbsent(entry.getKey(), new TermPostings()) == null) {
+				grams[stripe].add(entry.getKey());
+			}
+			TermPostings postings = stripes[stripe].get(entry.getKey());
+			TermPostings add = entry.getValue();
+			for (int i = 0; i < add.size(); i++) {
+				postings.put(ids[add.document(i)], add.positions(i));
+				postings.get(ids[add.document(i)]).seal();
+			}
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#seal
+	 */
+	@Override
+	public void seal() {
+		for (int stripe = 0; stripe < stripes.length; stripe++) {
+			locks[stripe].lockReadWrite();
+			try {
+				for (TermPostings postings : stripes[stripe].values()) {
+					postings.seal();
+				}
+			} finally {
+				locks[stripe].unlockReadWrite();
+			}
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#sendIndex
+	 */
+	@Override
+	public void sendIndex(Writer writer) throws IOException {
+		lockAll();
+		try {
+			synchronized (documents) {
+				TreeJSONWriter.asDoubleNestedObject(merged(), documents, writer);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#locations
+	 */
+	@Override
+	public TreeMap<String, Integer> locations() {
+		synchronized (documents) {
+			return documents.asMap();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#save
+	 */
+	@Override
+	public void save(Path directory) throws IOException {
+		lockAll();
+		try {
+			synchronized (documents) {
+				IndexFile.write(merged(), documents, directory);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#load
+	 */
+	@Override
+	public void load(Path directory) throws IOException {
+		synchronized (documents) {
+			if (documents.size() > 0) {
+				throw new IllegalStateException("Can only load into an empty index.");
+			}
+			MappedSegment segment = new MappedSegment(directory);
+			IndexFile.readDocuments(directory, documents);
+			view = null;
+			base = segment;
+		}
+		changed();
+	}
+
+	/**
+	 * Only locks the stripes of the query words.
+	 *
+	 * @see InvertedIndex#exactSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords, int k) {
+		boolean[] needed = new boolean[stripes.length];
+		for (String word : queryWords) {
+			if (KGramIndex.isPattern(word)) {
+				Arrays.fill(needed, true);
+			} else {
+				needed[stripe(word)] = true;
+			}
+		}
+		lock(needed);
+		try {
+			return searcher(needed).exactSearch(queryWords, k);
+		} finally {
+			unlock(needed);
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#partialSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords, int k) {
+		lockAll();
+		try {
+			return searcher(null).partialSearch(queryWords, k);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Locks every stripe, as the words found may be in any stripe.
+	 *
+	 * @see InvertedIndex#fuzzySearch
+	 */
+	@Override
+	public ArrayList<SearchResult> fuzzySearch(TreeSet<String> queryWords, int distance, int k) {
+		lockAll();
+		try {
+			return searcher(null).fuzzySearch(queryWords, distance, k);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Only locks the stripes of the query words if they must match exactly.
+	 *
+	 * @see InvertedIndex#phraseSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> phraseSearch(PhraseQuery query, boolean exact, int k) {
+		if (!exact) {
+			lockAll();
+			try {
+				return searcher(null).phraseSearch(query, exact, k);
+			} finally {
+				unlockAll();
+			}
+		}
+		boolean[] needed = new boolean[stripes.length];
+		for (int i = 0; i < query.size(); i++) {
+			needed[stripe(query.word(i))] = true;
+		}
+		lock(needed);
+		try {
+			return searcher(needed).phraseSearch(query, exact, k);
+		} finally {
+			unlock(needed);
+		}
+	}
+
+	/**
+	 * Only locks the stripes of the query words if they must match exactly.
+	 *
+	 * @see InvertedIndex#booleanSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> booleanSearch(BooleanQuery query, boolean exact, int k) {
+		if (!exact) {
+			lockAll();
+			try {
+				return searcher(null).booleanSearch(query, exact, k);
+			} finally {
+				unlockAll();
+			}
+		}
+		boolean[] needed = new boolean[stripes.length];
+		for (String word : query.words()) {
+			needed[stripe(word)] = true;
+		}
+		lock(needed);
+		try {
+			return searcher(needed).booleanSearch(query, exact, k);
+		} finally {
+			unlock(needed);
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word) {
+		boolean[] needed = new boolean[stripes.length];
+		needed[stripe(word)] = true;
+		lock(needed);
+		try {
+			return searcher(needed).contains(word);
+		} finally {
+			unlock(needed);
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word, String file) {
+		boolean[] needed = new boolean[stripes.length];
+		needed[stripe(word)] = true;
+		lock(needed);
+		try {
+			return searcher(needed).contains(word, file);
+		} finally {
+			unlock(needed);
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#contains
+	 */
+	@Override
+	public boolean contains(String word, String file, int position) {
+		boolean[] needed = new boolean[stripes.length];
+		needed[stripe(word)] = true;
+		lock(needed);
+		try {
+			return searcher(needed).contains(word, file, position);
+		} finally {
+			unlock(needed);
+		}
+	}
+
+	/**
+	 * Returns the combined metrics of the stripe locks.
+	 *
+	 * @see ThreadSafeIndex#lockMetrics
+	 */
+	@Override
+	public LockMetrics lockMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the number of stripes.
+	 *
+	 * @return number of stripes
+	 */
+	public int stripes() {
+		return stripes.length;
+	}
+
+	/**
+	 * Returns the stripe a word belongs to.
+	 *
+	 * @param word the word
+	 * @return the stripe index
+	 */
+	private int stripe(String word) {
+		int hash = word.hashCode();
+		hash ^= (hash >>> 16);
+		return (hash & 0x7FFFFFFF) % stripes.length;
+	}
+
+	/**
+	 * Returns a searcher over the loaded segment and the given stripes. Must be
+	 * called while holding the read locks of those stripes, so every location
+	 * found in them is in the snapshot of the shared table the searcher reads.
+	 *
+	 * @param needed the stripes to search, or null for every stripe
+	 * @return the searcher
+	 */
+	private IndexSearcher searcher(boolean[] needed) {
+		ArrayList<IndexSegment> segments = new ArrayList<IndexSegment>(stripes.length + 1);
+		if (base != null) {
+			segments.add(base);
+		}
+		for (int stripe = 0; stripe < stripes.length; stripe++) {
+			if (needed == null || needed[stripe]) {
+				segments.add(new MemorySegment(stripes[stripe], grams[stripe]));
+			}
+		}
+		return new IndexSearcher(segments, view(), scoring());
+	}
+
+	/**
+	 * Returns a snapshot of the shared table, taking a new one only if the table
+	 * has changed since the last. Searches read the snapshot without
+	 * synchronizing, as writers may grow the arrays of the shared table.
+	 *
+	 * @return the snapshot
+	 */
+	private DocumentTable view() {
+		synchronized (documents) {
+			if (view == null) {
+				view = documents.snapshot();
+			}
+			return view;
+		}
+	}
+
+	/**
+	 * Returns a sorted view of the words of every stripe, combined with the loaded
+	 * segment if there is one and leaving out deleted locations. Must be called
+	 * while holding every read lock and synchronized on the shared table.
+	 *
+	 * @return sorted map of words to postings
+	 */
+	private TreeMap<String, TermPostings> merged() {
+		if (base != null || documents.deletedCount() > 0) {
+			ArrayList<IndexSegment> segments = new ArrayList<IndexSegment>(stripes.length + 1);
+			if (base != null) {
+				segments.add(base);
+			}
+			for (TreeMap<String, TermPostings> stripe : stripes) {
+				segments.add(new MemorySegment(stripe));
+			}
+			return MemorySegment.merge(segments, documents);
+		}
+		TreeMap<String, TermPostings> merged = new TreeMap<String, TermPostings>();
+		for (TreeMap<String, TermPostings> stripe : stripes) {
+			merged.putAll(stripe);
+		}
+		return merged;
+	}
+
+	/**
+	 * Takes the read locks of the given stripes in stripe order.
+	 *
+	 * @param needed the stripes to lock
+	 */
+	private void lock(boolean[] needed) {
+		for (int stripe = 0; stripe < stripes.length; stripe++) {
+			if (needed[stripe]) {
+				locks[stripe].lockReadOnly();
+			}
+		}
+	}
+
+	/**
+	 * Releases the read locks of the given stripes.
+	 *
+	 * @param needed the stripes to unlock
+	 */
+	private void unlock(boolean[] needed) {
+		for (int stripe = 0; stripe < stripes.length; stripe++) {
+			if (needed[stripe]) {
+				locks[stripe].unlockReadOnly();
+			}
+		}
+	}
+
+	/**
+	 * Takes the read lock of every stripe in stripe order.
+	 */
+	private void lockAll() {
+		for (IndexLock lock : locks) {
+			lock.lockReadOnly();
+		}
+	}
+
+	/**
+	 * Releases the read lock of every stripe.
+	 */
+	private void unlockAll() {
+		for (IndexLock lock : locks) {
+			lock.unlockReadOnly();
+		}
+	}
+}
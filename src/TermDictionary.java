@@ -0,0 +1,400 @@
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable sorted term dictionary stored front-coded in a single byte
+ * array. Terms are kept in blocks of {@link #BLOCK_SIZE}. The first term of a
+ * block is stored whole and every other term as the length of the prefix it
+ * shares with the term before it followed by the rest of its bytes, so the
+ * dictionary takes about as many bytes as the terms differ by rather than a
+ * String and a map entry per term.
+ *
+ * A term is found by a binary search over the first terms of the blocks and a
+ * scan of one block. The terms starting with a prefix are next to each other,
+ * so the completions of a prefix are a range of indexes, found by skipping
+ * whole blocks whose first terms start with the prefix.
+ *
+ * Terms are encoded one UTF-16 char at a time in the one, two or three byte
+ * forms of UTF-8, which sort bytes in the same order as {@link String} sorts
+ * chars, so the dictionary is searched without decoding terms.
+ *
+ * @see SealedSegment
+ * @author Rugved Mavidipalli
+ */
+public class TermDictionary {
+
+	/** The number of terms in each block */
+	public static final int BLOCK_SIZE = 16;
+
+	/** The front-coded terms */
+	private final byte[] data;
+
+	/** The offset of the first term of each block */
+	private final int[] blocks;
+
+	/** The number of terms */
+	private final int size;
+
+	/** The most bytes a term takes */
+	private final int longest;
+
+	/**
+	 * Initializes a dictionary of the given terms.
+	 *
+	 * @param terms the terms, sorted and without duplicates
+	 */
+	public TermDictionary(Collection<String> terms) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] varint = new byte[5];
+		this.blocks = new int[(terms.size() + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		byte[] previous = new byte[0];
+		int index = 0;
+		int longest = 0;
+		for (String term : terms) {
+			byte[] bytes = encode(term);
+			int shared = 0;
+			if (index % BLOCK_SIZE == 0) {
+				blocks[index / BLOCK_SIZE] = out.size();
+			} else {
+				int limit = Math.min(previous.length, bytes.length);
+				while (shared < limit && previous[shared] == bytes[shared]) {
+					shared++;
+				}
+			}
+			out.write(varint, 0, PostingList.writeVarInt(shared, varint, 0));
+			out.write(varint, 0, PostingList.writeVarInt(bytes.length - shared, varint, 0));
+			out.write(bytes, shared, bytes.length - shared);
+			longest = Math.max(longest, bytes.length);
+			previous = bytes;
+			index++;
+		}
+		this.data = out.toByteArray();
+		this.size = index;
+		this.longest = longest;
+	}
+
+	/**
+	 * Returns the number of terms.
+	 *
+	 * @return number of terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes the terms take.
+	 *
+	 * @return number of bytes
+	 */
+	public int bytes() {
+		return data.length + 4 * blocks.length;
+	}
+
+	/**
+	 * Returns the term at an index.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the term
+	 */
+	public String term(int index) {
+		return at(index).term();
+	}
+
+	/**
+	 * Finds the index of a term.
+	 *
+	 * @param term the term to look for
+	 * @return the index of the term, or a negative value if not found
+	 * @see Arrays#binarySearch(int[], int)
+	 */
+	public int indexOf(String term) {
+		byte[] key = encode(term);
+		Cursor cursor = seek(key);
+		if (cursor.index < size && cursor.compare(key) == 0) {
+			return cursor.index;
+		}
+		return -(cursor.index + 1);
+	}
+
+	/**
+	 * Finds the first term greater than or equal to a term.
+	 *
+	 * @param from the term to look for
+	 * @return the index of the first term at least from, or {@link #size()} if
+	 *         every term is smaller
+	 */
+	public int ceiling(String from) {
+		return seek(encode(from)).index;
+	}
+
+	/**
+	 * Finds the terms starting with a prefix.
+	 *
+	 * @param prefix the prefix
+	 * @return the index of the first term starting with the prefix and the index
+	 *         after the last, which are the same if no term starts with it
+	 */
+	public int[] range(String prefix) {
+		byte[] key = encode(prefix);
+		Cursor cursor = seek(key);
+		int first = cursor.index;
+		if (first == size || !cursor.startsWith(key)) {
+			return new int[] { first, first };
+		}
+		int block = first / BLOCK_SIZE;
+		while (block + 1 < blocks.length && compareHead(block + 1, key, true) == 0) {
+			block++;
+		}
+		if (block > first / BLOCK_SIZE) {
+			cursor = new Cursor(block);
+		}
+		while (cursor.index < size && cursor.startsWith(key)) {
+			cursor.next();
+		}
+		return new int[] { first, cursor.index };
+	}
+
+	/**
+	 * Returns the terms in sorted order starting at an index.
+	 *
+	 * @param from the index to start at
+	 * @return iterator over the sorted terms
+	 */
+	public Iterator<String> iterator(int from) {
+		return new Iterator<String>() {
+			private final Cursor cursor = at(from);
+
+			@Override
+			public boolean hasNext() {
+				return cursor.index < size;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				String term = cursor.term();
+				cursor.next();
+				return term;
+			}
+		};
+	}
+
+	/**
+	 * Returns a cursor at an index.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the cursor
+	 */
+	private Cursor at(int index) {
+		if (index >= size) {
+			return new Cursor(blocks.length);
+		}
+		Cursor cursor = new Cursor(index / BLOCK_SIZE);
+		while (cursor.index < index) {
+			cursor.next();
+		}
+		return cursor;
+	}
+
+	/**
+	 * Returns a cursor at the first term greater than or equal to a key.
+	 *
+	 * @param key the encoded term to look for
+	 * @return the cursor
+	 */
+	private Cursor seek(byte[] key) {
+		// finds the last block whose first term is at most the key
+		int low = 0;
+		int high = blocks.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (compareHead(middle, key, false) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		Cursor cursor = new Cursor(Math.max(high, 0));
+		while (cursor.index < size && cursor.compare(key) < 0) {
+			cursor.next();
+		}
+		return cursor;
+	}
+
+	/**
+	 * Compares the first term of a block to a key as unsigned bytes, reading it in
+	 * place.
+	 *
+	 * @param block  the block
+	 * @param key    the encoded term to compare to
+	 * @param prefix whether a term starting with the key counts as equal
+	 * @return negative if the first term of the block sorts first
+	 */
+	private int compareHead(int block, byte[] key, boolean prefix) {
+		int[] offset = { blocks[block] };
+		PostingList.readVarInt(data, offset);
+		int length = PostingList.readVarInt(data, offset);
+		int limit = Math.min(length, key.length);
+		for (int i = 0; i < limit; i++) {
+			byte b = data[offset[0] + i];
+			if (b != key[i]) {
+				return (b & 0xFF) - (key[i] & 0xFF);
+			}
+		}
+		return prefix && length >= key.length ? 0 : length - key.length;
+	}
+
+	/**
+	 * Encodes a term one char at a time. Unlike {@link String#getBytes}, a lone
+	 * surrogate is kept rather than replaced, so any part of a term can be
+	 * encoded and the bytes sort like the chars.
+	 *
+	 * @param term the term
+	 * @return the encoded term
+	 */
+	public static byte[] encode(String term) {
+		byte[] bytes = new byte[term.length() * 3];
+		int length = 0;
+		for (int i = 0; i < term.length(); i++) {
+			char c = term.charAt(i);
+			if (c < 0x80) {
+				bytes[length++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[length++] = (byte) (0xC0 | (c >> 6));
+				bytes[length++] = (byte) (0x80 | (c & 0x3F));
+			} else {
+				bytes[length++] = (byte) (0xE0 | (c >> 12));
+				bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+	}
+
+	/**
+	 * Decodes a term encoded by {@link #encode(String)}.
+	 *
+	 * @param bytes  the buffer holding the term
+	 * @param length the number of bytes of the term
+	 * @return the term
+	 */
+	private static String decode(byte[] bytes, int length) {
+		char[] chars = new char[length];
+		int count = 0;
+		for (int i = 0; i < length; count++) {
+			int b = bytes[i] & 0xFF;
+			if (b < 0x80) {
+				chars[count] = (char) b;
+				i++;
+			} else if (b < 0xE0) {
+				chars[count] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+				i += 2;
+			} else {
+				chars[count] = (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+				i += 3;
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	/**
+	 * Reads the terms in order from the start of a block, rebuilding each term
+	 * from the one before it.
+	 */
+	private class Cursor {
+		/** The index of the current term */
+		private int index;
+
+		/** The offset of the next term */
+		private final int[] offset;
+
+		/** The bytes of the current term */
+		private final byte[] term;
+
+		/** The number of bytes of the current term */
+		private int length;
+
+		/**
+		 * Initializes a cursor at the first term of a block.
+		 *
+		 * @param block the block, or the number of blocks to be after the last term
+		 */
+		public Cursor(int block) {
+			this.index = Math.min(block * BLOCK_SIZE, size);
+			this.offset = new int[] { block < blocks.length ? blocks[block] : data.length };
+			this.term = new byte[longest];
+			this.length = 0;
+			read();
+		}
+
+		/**
+		 * Moves to the next term.
+		 */
+		public void next() {
+			index++;
+			read();
+		}
+
+		/**
+		 * Reads the term at the offset, if there is one.
+		 */
+		private void read() {
+			if (index < size) {
+				int shared = PostingList.readVarInt(data, offset);
+				int rest = PostingList.readVarInt(data, offset);
+				System.arraycopy(data, offset[0], term, shared, rest);
+				offset[0] += rest;
+				length = shared + rest;
+			}
+		}
+
+		/**
+		 * Returns the current term.
+		 *
+		 * @return the term
+		 */
+		public String term() {
+			return decode(term, length);
+		}
+
+		/**
+		 * Compares the current term to a key as unsigned bytes.
+		 *
+		 * @param key the encoded term to compare to
+		 * @return negative if the current term sorts first
+		 */
+		public int compare(byte[] key) {
+			int limit = Math.min(length, key.length);
+			for (int i = 0; i < limit; i++) {
+				if (term[i] != key[i]) {
+					return (term[i] & 0xFF) - (key[i] & 0xFF);
+				}
+			}
+			return length - key.length;
+		}
+
+		/**
+		 * Checks if the current term starts with a key.
+		 *
+		 * @param key the encoded prefix
+		 * @return true if the term starts with the key
+		 */
+		public boolean startsWith(byte[] key) {
+			if (length < key.length) {
+				return false;
+			}
+			for (int i = 0; i < key.length; i++) {
+				if (term[i] != key[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The postings of a single word: the ids of the locations the word was found in,
+ * kept sorted, and the {@link PostingList} of positions for each of those
+ * locations.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class TermPostings {
+
+	/** The initial capacity of the document and position arrays */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/** Sorted location ids */
+	private int[] documents;
+
+	/** Positions for the location id at the same index */
+	private PostingList[] positions;
+
+	/** The number of locations */
+	private int size;
+
+	/** The largest score of a location, or null if the postings changed since */
+	private Bound bound;
+
+	/**
+	 * Initializes empty postings.
+	 */
+	public TermPostings() {
+		this.documents = new int[INITIAL_CAPACITY];
+		this.positions = new PostingList[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of locations the word was found in.
+	 *
+	 * @return number of locations
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the location id at an index.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the location id
+	 */
+	public int document(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * Returns the positions at an index.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the positions for the location at the index
+	 */
+	public PostingList positions(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * Returns the number of times the word was found at an index.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the number of positions for the location at the index
+	 */
+	public int frequency(int index) {
+		return positions[index].size();
+	}
+
+	/**
+	 * Finds the index of a location id.
+	 *
+	 * @param document the location id to look for
+	 * @return the index of the location id, or a negative value if not found
+	 * @see Arrays#binarySearch(int[], int, int, int)
+	 */
+	public int indexOf(int document) {
+		if (size > 0 && documents[size - 1] == document) {
+			return size - 1;
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Finds the first index at or after an index whose location id is at least the
+	 * given id. Searches ahead in growing steps before searching between the last
+	 * two steps, so stepping through the postings in order with ids far apart only
+	 * looks at a few of the ids in between.
+	 *
+	 * @param document the location id to look for
+	 * @param from     the index to start from
+	 * @return the index found, or {@link #size()} if every id after from is smaller
+	 * @see #gallop(int[], int, int, int)
+	 */
+	public int advance(int document, int from) {
+		return gallop(documents, size, document, from);
+	}
+
+	/**
+	 * Finds the first index at or after an index whose value is at least the given
+	 * value in a sorted array, searching ahead in growing steps.
+	 *
+	 * @param values the sorted values
+	 * @param size   the number of values used
+	 * @param value  the value to look for
+	 * @param from   the index to start from
+	 * @return the index found, or size if every value after from is smaller
+	 */
+	public static int gallop(int[] values, int size, int value, int from) {
+		if (from >= size || values[from] >= value) {
+			return from;
+		}
+		int low = from;
+		int step = 1;
+		int high = from + 1;
+		while (high < size && values[high] < value) {
+			low = high;
+			step <<= 1;
+			high = low + step;
+		}
+		int index = Arrays.binarySearch(values, low + 1, Math.min(high, size), value);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * Returns the positions for a location id.
+	 *
+	 * @param document the location id
+	 * @return the positions or null if the word was not found in the location
+	 */
+	public PostingList get(int document) {
+		int index = indexOf(document);
+		return index < 0 ? null : positions[index];
+	}
+
+	/**
+	 * Returns the positions for a location id, adding an empty list if the word
+	 * was not found in the location before.
+	 *
+	 * @param document the location id
+	 * @return the positions for the location
+	 */
+	public PostingList getOrCreate(int document) {
+		bound = null;
+		int index = indexOf(document);
+		if (index >= 0) {
+			return positions[index];
+		}
+		PostingList list = new PostingList();
+		insert(-(index + 1), document, list);
+		return list;
+	}
+
+	/**
+	 * Adds the positions for a location id. If the location already has positions
+	 * the lists are combined.
+	 *
+	 * @param document the location id
+	 * @param list     the positions to add
+	 */
+	public void put(int document, PostingList list) {
+		bound = null;
+		int index = indexOf(document);
+		if (index >= 0) {
+			positions[index].addAll(list);
+		} else {
+			insert(-(index + 1), document, list);
+		}
+	}
+
+	/**
+	 * Removes the positions of every location id set in the given bit set.
+	 *
+	 * @param removed the location ids to remove
+	 * @return the number of locations left
+	 */
+	public int removeAll(BitSet removed) {
+		bound = null;
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (!removed.get(documents[i])) {
+				documents[kept] = documents[i];
+				positions[kept] = positions[i];
+				kept++;
+			}
+		}
+		Arrays.fill(positions, kept, size, null);
+		size = kept;
+		return size;
+	}
+
+	/**
+	 * Returns the largest score a location in the postings gets from a scoring
+	 * model. Kept until the postings change or the statistics passed differ, so
+	 * searching the same words again does not read the postings. Word counts only
+	 * grow, which can only lower the scores, so the value kept stays an upper
+	 * bound while the locations are still being added to.
+	 *
+	 * @param scoring the scoring model
+	 * @param table   the word counts of the locations
+	 * @param average the average word count of the locations
+	 * @param weight  the weight of the word
+	 * @return the largest score of a location
+	 * @see ScoringModel#score(int, int, double, double)
+	 */
+	public double maxScore(ScoringModel scoring, DocumentTable table, double average, double weight) {
+		Bound bound = this.bound;
+		if (bound == null || bound.scoring != scoring || bound.average != average || bound.weight != weight) {
+			double max = 0;
+			for (int i = 0; i < size; i++) {
+				max = Math.max(max, scoring.score(frequency(i), table.wordCount(documents[i]), average, weight));
+			}
+			bound = new Bound(scoring, average, weight, max);
+			this.bound = bound;
+		}
+		return bound.value;
+	}
+
+	/**
+	 * Seals every posting list.
+	 *
+	 * @see PostingList#seal()
+	 */
+	public void seal() {
+		for (int i = 0; i < size; i++) {
+			positions[i].seal();
+		}
+	}
+
+	/**
+	 * Returns the indexes of the locations ordered by the given ranks.
+	 *
+	 * @param ranks the rank of every location id
+	 * @return indexes between 0 and {@link #size()} sorted by rank
+	 * @see DocumentTable#ranks()
+	 */
+	public int[] order(int[] ranks) {
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = ((long) ranks[documents[i]] << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Inserts a location id and its positions at an index.
+	 *
+	 * @param index    the index to insert at
+	 * @param document the location id
+	 * @param list     the positions
+	 */
+	private void insert(int index, int document, PostingList list) {
+		if (size == documents.length) {
+			documents = Arrays.copyOf(documents, size * 2);
+			positions = Arrays.copyOf(positions, size * 2);
+		}
+		System.arraycopy(documents, index, documents, index + 1, size - index);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		documents[index] = document;
+		positions[index] = list;
+		size++;
+	}
+
+	/**
+	 * The largest score of a location and the statistics it was computed with.
+	 */
+	private static class Bound {
+		private final ScoringModel scoring;
+		private final double average;
+		private final double weight;
+		private final double value;
+
+		/**
+		 * Initializes a bound.
+		 *
+		 * @param scoring the scoring model
+		 * @param average the average word count of the locations
+		 * @param weight  the weight of the word
+		 * @param value   the largest score of a location
+		 */
+		public Bound(ScoringModel scoring, double average, double weight, double value) {
+			this.scoring = scoring;
+			this.average = average;
+			this.weight = weight;
+			this.value = value;
+		}
+	}
+}
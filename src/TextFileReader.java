@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Finds the words of a UTF-8 text file without reading it line by line. Large
+ * files are memory mapped a window at a time and small files are read into a
+ * single buffer. The bytes are decoded into a small reused buffer of characters
+ * that is fed straight to a {@link TextTokenizer}, so the only text copied is
+ * the characters of each word.
+ *
+ * Every line is tokenized as its own text, and a word or character split
+ * between two windows is carried over to the next, so the words found are the
+ * same as those of {@link TextParser#parse(String)} over each line read by
+ * {@link java.nio.file.Files#newBufferedReader(Path)}. Like that reader, bytes
+ * that are not valid UTF-8 are reported with an exception.
+ *
+ * @see InvertedIndexBuilder#addFile(Path, InvertedIndex)
+ * @author Rugved Mavidipalli
+ */
+public class TextFileReader {
+
+	/** The smallest file that is memory mapped rather than read */
+	public static final long MAP_THRESHOLD = 1L << 20;
+
+	/** The most bytes mapped at once */
+	public static final long WINDOW = 64L << 20;
+
+	/** The number of characters decoded at once */
+	private static final int CHARS = 8192;
+
+	/** The number of bytes read at once while looking for a line break */
+	private static final int SCAN = 8192;
+
+	/**
+	 * Finds the words of a file in order.
+	 *
+	 * @param path     the file
+	 * @param consumer receives each word as the tokenizer, only valid until the
+	 *                 consumer returns
+	 * @throws IOException if unable to read the file or it is not valid UTF-8
+	 */
+	public static void tokenize(Path path, Consumer<? super TextTokenizer> consumer) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			tokenize(channel, 0, channel.size(), consumer);
+		}
+	}
+
+	/**
+	 * Finds the words of a range of bytes of a file in order. The range should
+	 * start at the start of the file or after a line break.
+	 *
+	 * @param channel  the open file
+	 * @param start    the offset of the first byte
+	 * @param end      the offset after the last byte
+	 * @param consumer receives each word as the tokenizer, only valid until the
+	 *                 consumer returns
+	 * @throws IOException if unable to read the file or it is not valid UTF-8
+	 */
+	public static void tokenize(FileChannel channel, long start, long end, Consumer<? super TextTokenizer> consumer)
+			throws IOException {
+		TextTokenizer tokenizer = new TextTokenizer(true);
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+		CharBuffer chars = CharBuffer.allocate(CHARS);
+		long offset = start;
+		boolean last = false;
+		while (last == false) {
+			ByteBuffer window;
+			if (end - start < MAP_THRESHOLD) {
+				window = read(channel, offset, end);
+			} else {
+				window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, end - offset));
+			}
+			last = offset + window.limit() == end;
+			CoderResult result;
+			do {
+				result = decoder.decode(window, chars, last);
+				if (result.isError()) {
+					result.throwException();
+				}
+				feed(tokenizer, chars, consumer);
+			} while (result.isOverflow());
+			// a character split by the end of the window is decoded with the next
+			offset += window.position();
+		}
+		while (decoder.flush(chars).isOverflow()) {
+			feed(tokenizer, chars, consumer);
+		}
+		feed(tokenizer, chars, consumer);
+		tokenizer.end(consumer);
+	}
+
+	/**
+	 * Splits a file into ranges of about the given length that each end just after
+	 * a line break, so every range starts a new line and can be tokenized on its
+	 * own. A line break byte is never part of another UTF-8 character.
+	 *
+	 * @param channel the open file
+	 * @param length  the length of a range
+	 * @return the offsets the ranges start at followed by the size of the file,
+	 *         with at least one range
+	 * @throws IOException if unable to read the file
+	 */
+	public static long[] split(FileChannel channel, long length) throws IOException {
+		long size = channel.size();
+		ArrayList<Long> offsets = new ArrayList<Long>();
+		offsets.add(0L);
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN);
+		long offset = length;
+		while (offset < size) {
+			long next = lineStart(channel, offset, size, buffer);
+			if (next >= size) {
+				break;
+			}
+			offsets.add(next);
+			offset = next + length;
+		}
+		offsets.add(size);
+		long[] split = new long[offsets.size()];
+		for (int i = 0; i < split.length; i++) {
+			split[i] = offsets.get(i);
+		}
+		return split;
+	}
+
+	/**
+	 * Finds the start of the first line after an offset.
+	 *
+	 * @param channel the open file
+	 * @param offset  the offset to look from
+	 * @param size    the size of the file
+	 * @param buffer  the buffer to read into
+	 * @return the offset after the next line break, or the size of the file if
+	 *         there is none
+	 * @throws IOException if unable to read the file
+	 */
+	private static long lineStart(FileChannel channel, long offset, long size, ByteBuffer buffer)
+			throws IOException {
+		while (offset < size) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if (read < 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Passes the decoded characters to the tokenizer and empties the buffer.
+	 *
+	 * @param tokenizer the tokenizer
+	 * @param chars     the decoded characters
+	 * @param consumer  receives each word found
+	 */
+	private static void feed(TextTokenizer tokenizer, CharBuffer chars, Consumer<? super TextTokenizer> consumer) {
+		chars.flip();
+		tokenizer.add(chars.array(), chars.arrayOffset() + chars.position(), chars.arrayOffset() + chars.limit(),
+				consumer);
+		chars.clear();
+	}
+
+	/**
+	 * Reads the rest of a small range into a heap buffer.
+	 *
+	 * @param channel the open file
+	 * @param offset  the offset of the first byte
+	 * @param end     the offset after the last byte
+	 * @return the buffer holding the bytes read
+	 * @throws IOException if unable to read the file
+	 */
+	private static ByteBuffer read(FileChannel channel, long offset, long end) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) (end - offset));
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("File ended before the range was read.");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -4,22 +4,20 @@ import java.util.List;
 import java.util.TreeSet;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 public class TextFileStemmer {
 	/**
 	 * Returns a list of cleaned and stemmed words parsed from the provided line.
-	 * Uses the English {@link SnowballStemmer.ALGORITHM} for stemming.
+	 * Uses the shared English {@link CachingStemmer} for stemming.
 	 *
 	 * @param line the line of words to clean, split, and stem
 	 * @return list of cleaned and stemmed words
 	 *
-	 * @see SnowballStemmer
-	 * @see SnowballStemmer.ALGORITHM#ENGLISH
+	 * @see CachingStemmer#ENGLISH
 	 * @see #stemLine(String, Stemmer)
 	 */
 	public static List<String> stemLine(String line) {
-		return stemLine(line, new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH));
+		return stemLine(line, CachingStemmer.ENGLISH);
 	}
 
 	/**
@@ -57,15 +55,59 @@ public class TextFileStemmer {
 	}
 
 	/**
-	 * Takes a line, cleans, stems and returns a tree set of sorted stem words
+	 * Parses and stems a query line like {@link #stemLine(String, Collection,
+	 * Stemmer)}, except that words with a {@link KGramIndex#WILDCARD} are kept as
+	 * patterns. The pieces of a pattern are cleaned but not stemmed, as a pattern
+	 * is matched against the stemmed words of the index.
+	 * 
+	 * @param line      query line to be stemmed
+	 * @param container data structure to add the stemmed words and patterns
+	 * @param stemmer   stemmer to stem the words
+	 */
+	public static void stemQuery(String line, Collection<String> container, Stemmer stemmer) {
+		if (KGramIndex.isPattern(line) == false) {
+			stemLine(line, container, stemmer);
+			return;
+		}
+		for (String word : TextParser.split(line)) {
+			if (KGramIndex.isPattern(word) == false) {
+				stemLine(word, container, stemmer);
+				continue;
+			}
+			String pattern = String.join(String.valueOf(KGramIndex.WILDCARD), cleanPieces(word));
+			pattern = pattern.replaceAll("\\*+", "*");
+			if (pattern.replace("*", "").isEmpty() == false) {
+				container.add(pattern);
+			}
+		}
+	}
+
+	/**
+	 * Cleans the pieces of a pattern between its wildcards.
+	 * 
+	 * @param pattern the pattern
+	 * @return the cleaned pieces, some of which may be empty
+	 */
+	private static List<String> cleanPieces(String pattern) {
+		List<String> pieces = new ArrayList<String>();
+		for (String piece : pattern.split("\\*", -1)) {
+			pieces.add(String.join("", TextParser.parse(piece)));
+		}
+		return pieces;
+	}
+
+	/**
+	 * Takes a line, cleans, stems and returns a tree set of sorted stem words.
+	 * Words with a wildcard are kept as patterns.
 	 * 
 	 * @param line to parse and stem
 	 * @return
+	 * @see #stemQuery(String, Collection, Stemmer)
 	 */
 	public static TreeSet<String> clean(String line) {
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		CachingStemmer stemmer = CachingStemmer.ENGLISH;
 		TreeSet<String> sortedWords = new TreeSet<>();
-		TextFileStemmer.stemLine(line, sortedWords, stemmer);
+		TextFileStemmer.stemQuery(line, sortedWords, stemmer);
 		if (!sortedWords.isEmpty()) {
 			return sortedWords;
 		}
@@ -1,4 +1,5 @@
 import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.regex.Pattern;
 
 /**
@@ -38,15 +39,19 @@ public class TextParser {
 	}
 
 	/**
-	 * Cleans the text and then splits it by whitespace.
+	 * Cleans the text and then splits it by whitespace, in a single pass that only
+	 * normalizes the words with characters other than ASCII.
 	 *
 	 * @param text the text to clean and split
 	 * @return an array of {@link String} objects
 	 *
 	 * @see #clean(CharSequence)
-	 * @see #parse(String)
+	 * @see #split(String)
+	 * @see TextTokenizer
 	 */
 	public static String[] parse(String text) {
-		return split(clean(text));
+		ArrayList<String> words = new ArrayList<String>();
+		new TextTokenizer().tokenize(text, word -> words.add(word.toString()));
+		return words.toArray(new String[0]);
 	}
 }
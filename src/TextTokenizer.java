@@ -0,0 +1,283 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Splits text into the same cleaned, lowercase words as
+ * {@link TextParser#parse(String)} in a single pass over its characters,
+ * without normalizing, cleaning and splitting copies of the whole text. Text
+ * may be added in pieces, so a word may start in one piece and end in the
+ * next.
+ *
+ * The characters of a word are collected until the next whitespace, which is
+ * never changed by decomposition or cleaning. A word of ASCII characters keeps
+ * its letters in lowercase, while a word with any other character is cleaned by
+ * {@link TextParser#clean(CharSequence)} on its own, so decomposition and case
+ * rules only cost anything for the words that need them. A word found is passed
+ * to a consumer as this tokenizer, which is only valid until the consumer
+ * returns and should be copied with {@link #toString()} to keep it.
+ *
+ * Like {@link TextParser#parse(String)}, an empty word is found before the first
+ * word of a text starting with whitespace other than ASCII spaces and control
+ * characters. When tokenizing lines, each line is treated as its own text, as
+ * if read by {@link java.io.BufferedReader#readLine()}.
+ *
+ * @see TextParser
+ * @author Rugved Mavidipalli
+ */
+public class TextTokenizer implements CharSequence {
+
+	/** The types of the whitespace characters other than controls */
+	private static final int SPACE_TYPES = (1 << Character.SPACE_SEPARATOR) | (1 << Character.LINE_SEPARATOR)
+			| (1 << Character.PARAGRAPH_SEPARATOR);
+
+	/** Whether line breaks start a new text */
+	private final boolean lines;
+
+	/** The characters of the word being read */
+	private char[] raw;
+
+	/** The number of characters of the word being read */
+	private int rawLength;
+
+	/** Whether the word being read is all ASCII */
+	private boolean ascii;
+
+	/** The cleaned word passed to the consumer */
+	private char[] word;
+
+	/** The length of the cleaned word */
+	private int length;
+
+	/** Whether a word has been found in the current text */
+	private boolean started;
+
+	/** Whether the current text starts with whitespace kept by trimming */
+	private boolean leading;
+
+	/** The whitespace before the word being read, or 0 at the start of a text */
+	private char before;
+
+	/**
+	 * Initializes a tokenizer of a single text.
+	 */
+	public TextTokenizer() {
+		this(false);
+	}
+
+	/**
+	 * Initializes a tokenizer.
+	 *
+	 * @param lines true if every line is its own text
+	 */
+	public TextTokenizer(boolean lines) {
+		this.lines = lines;
+		this.raw = new char[32];
+		this.word = new char[32];
+		reset();
+	}
+
+	/**
+	 * Finds the words of a whole text.
+	 *
+	 * @param text     the text
+	 * @param consumer receives each word
+	 */
+	public void tokenize(CharSequence text, Consumer<? super TextTokenizer> consumer) {
+		add(text, consumer);
+		end(consumer);
+	}
+
+	/**
+	 * Adds the next piece of text, finding the words it ends.
+	 *
+	 * @param text     the piece of text
+	 * @param consumer receives each word
+	 */
+	public void add(CharSequence text, Consumer<? super TextTokenizer> consumer) {
+		for (int i = 0; i < text.length(); i++) {
+			add(text.charAt(i), consumer);
+		}
+	}
+
+	/**
+	 * Adds the next piece of text, finding the words it ends.
+	 *
+	 * @param chars    the characters holding the piece
+	 * @param start    the index of the first character
+	 * @param end      the index after the last character
+	 * @param consumer receives each word
+	 */
+	public void add(char[] chars, int start, int end, Consumer<? super TextTokenizer> consumer) {
+		for (int i = start; i < end; i++) {
+			add(chars[i], consumer);
+		}
+	}
+
+	/**
+	 * Ends the text, finding its last word, and starts a new one.
+	 *
+	 * @param consumer receives the last word
+	 */
+	public void end(Consumer<? super TextTokenizer> consumer) {
+		flush(consumer);
+		reset();
+	}
+
+	/**
+	 * Adds the next character.
+	 *
+	 * @param c        the character
+	 * @param consumer receives the word the character ends
+	 */
+	private void add(char c, Consumer<? super TextTokenizer> consumer) {
+		if (isSpace(c) == false) {
+			if (rawLength == raw.length) {
+				raw = Arrays.copyOf(raw, raw.length * 2);
+			}
+			raw[rawLength++] = c;
+			ascii &= c < 0x80;
+			return;
+		}
+		flush(consumer);
+		before = c;
+		if (lines && (c == '\n' || c == '\r')) {
+			reset();
+		} else if (c > ' ' && started == false) {
+			leading = true;
+		}
+	}
+
+	/**
+	 * Cleans the word read so far and passes it to the consumer if anything is
+	 * left of it.
+	 *
+	 * @param consumer receives the word
+	 */
+	private void flush(Consumer<? super TextTokenizer> consumer) {
+		if (rawLength == 0) {
+			return;
+		}
+		if (ascii == false || cleanAscii() == false) {
+			cleanText();
+		}
+		rawLength = 0;
+		ascii = true;
+		if (length == 0) {
+			return;
+		}
+		if (started == false && leading) {
+			// the untrimmed whitespace splits off an empty first word
+			int found = length;
+			length = 0;
+			consumer.accept(this);
+			length = found;
+		}
+		started = true;
+		consumer.accept(this);
+	}
+
+	/**
+	 * Keeps the letters of an ASCII word in lowercase, unless the word has a
+	 * capital I the default locale does not lowercase to i, as in Turkish.
+	 *
+	 * @return false if the word has to be cleaned by the rules of the locale
+	 */
+	private boolean cleanAscii() {
+		if (word.length < rawLength) {
+			word = new char[Math.max(rawLength, word.length * 2)];
+		}
+		length = 0;
+		for (int i = 0; i < rawLength; i++) {
+			char c = raw[i];
+			if (c >= 'a' && c <= 'z') {
+				word[length++] = c;
+			} else if (c >= 'A' && c <= 'Z') {
+				if (c == 'I' && dotlessI()) {
+					return false;
+				}
+				word[length++] = (char) (c + ('a' - 'A'));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Cleans a word by the rules of {@link TextParser#clean(CharSequence)}. The
+	 * whitespace before the word is cleaned with it, as whether a capital sigma
+	 * ends a word can depend on the text before it.
+	 */
+	private void cleanText() {
+		String cleaned;
+		if (before == 0) {
+			cleaned = TextParser.clean(new String(raw, 0, rawLength));
+		} else {
+			cleaned = TextParser.clean(before + new String(raw, 0, rawLength)).substring(1);
+		}
+		if (word.length < cleaned.length()) {
+			word = new char[Math.max(cleaned.length(), word.length * 2)];
+		}
+		cleaned.getChars(0, cleaned.length(), word, 0);
+		length = cleaned.length();
+	}
+
+	/**
+	 * Starts a new text.
+	 */
+	private void reset() {
+		before = 0;
+		rawLength = 0;
+		length = 0;
+		ascii = true;
+		started = false;
+		leading = false;
+	}
+
+	/**
+	 * Checks if the default locale lowercases a capital I to something other than
+	 * i, as in Turkish and Azerbaijani.
+	 *
+	 * @return true if I is not lowercased to i
+	 */
+	private static boolean dotlessI() {
+		String language = Locale.getDefault().getLanguage();
+		return language.equals("tr") || language.equals("az");
+	}
+
+	/**
+	 * Checks if a character is whitespace as matched by
+	 * {@link TextParser#SPLIT_REGEX}.
+	 *
+	 * @param c the character
+	 * @return true if the character is whitespace
+	 */
+	public static boolean isSpace(char c) {
+		if (c < 0x80) {
+			return c == ' ' || (c >= '\t' && c <= '\r');
+		}
+		return c == '\u0085' || ((SPACE_TYPES >> Character.getType(c)) & 1) != 0;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return word[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return new String(word, 0, length);
+	}
+}
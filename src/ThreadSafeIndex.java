@@ -1,7 +1,10 @@
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -11,18 +14,47 @@ import org.apache.logging.log4j.Logger;
  *
  * @param <E> element type
  * @see IndexedSet
- * @see ReadWriteLock
+ * @see IndexLock
  */
 public class ThreadSafeIndex extends InvertedIndex {
-	private final ReadWriteLock lock;
+	private final IndexLock lock;
 	public static final Logger log = LogManager.getLogger();
 
+	/** The fewest deleted locations that trigger a background purge */
+	public static final int PURGE_MINIMUM = 64;
+
+	/** A purge is also only triggered once this fraction of locations, 1/n, is deleted */
+	public static final int PURGE_FRACTION = 10;
+
+	/** Purges deleted locations in the background, started by the first purge */
+	private Purger purger;
+
 	/**
-	 * Initializes thread safe InvertedIndex and a new ReadWrite lock object
+	 * Initializes thread safe InvertedIndex and a new writer-preferring lock
+	 *
+	 * @see PrioritizedReadWriteLock
 	 */
 	public ThreadSafeIndex() {
+		this(new PrioritizedReadWriteLock());
+	}
+
+	/**
+	 * Initializes thread safe InvertedIndex guarded by the given lock
+	 *
+	 * @param lock the lock to use
+	 */
+	public ThreadSafeIndex(IndexLock lock) {
 		super();
-		lock = new ReadWriteLock();
+		this.lock = lock;
+	}
+
+	/**
+	 * Returns the wait and hold time metrics of the lock guarding the index.
+	 *
+	 * @return the lock metrics
+	 */
+	public LockMetrics lockMetrics() {
+		return lock.metrics();
 	}
 
 	/*
@@ -52,6 +84,22 @@ public class ThreadSafeIndex extends InvertedIndex {
 
 	}
 
+	/*
+	 * @see InvertedIndex#seal
+	 */
+	@Override
+	public void seal() {
+		lock.lockReadWrite();
+		try {
+			super.seal();
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#addAll
+	 */
 	@Override
 	public void addAll(InvertedIndex local) {
 		lock.lockReadWrite();
@@ -63,6 +111,66 @@ public class ThreadSafeIndex extends InvertedIndex {
 
 	}
 
+	/*
+	 * @see InvertedIndex#delete
+	 */
+	@Override
+	public void delete(String location) {
+		lock.lockReadWrite();
+		try {
+			super.delete(location);
+			schedulePurge(documents());
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#replace
+	 */
+	@Override
+	public void replace(Collection<String> locations, InvertedIndex local) {
+		lock.lockReadWrite();
+		try {
+			super.replace(locations, local);
+			schedulePurge(documents());
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#purge
+	 */
+	@Override
+	public void purge() {
+		lock.lockReadWrite();
+		try {
+			super.purge();
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Asks the background purger to run {@link #purge()} once enough locations
+	 * have been deleted without being purged. Must be called while holding
+	 * whatever guards the table.
+	 *
+	 * @param table the table the deletions were made in
+	 */
+	protected void schedulePurge(DocumentTable table) {
+		if (table.unpurgedCount() >= Math.max(PURGE_MINIMUM, table.size() / PURGE_FRACTION)) {
+			synchronized (this) {
+				if (purger == null) {
+					purger = new Purger();
+					purger.start();
+				}
+				purger.request();
+			}
+		}
+	}
+
 	/*
 	 * @see InvertedIndex#sendIndex
 	 */
@@ -78,27 +186,52 @@ public class ThreadSafeIndex extends InvertedIndex {
 	}
 
 	/*
-	 * @see InvertedIndex#sendLocations
+	 * @see InvertedIndex#locations
 	 */
 	@Override
-	public void sendLocations(Writer writer) throws IOException {
+	public TreeMap<String, Integer> locations() {
 		lock.lockReadOnly();
 		try {
-			super.sendLocations(writer);
+			return super.locations();
 		} finally {
 			lock.unlockReadOnly();
 		}
+	}
 
+	/*
+	 * @see InvertedIndex#save
+	 */
+	@Override
+	public void save(Path directory) throws IOException {
+		lock.lockReadOnly();
+		try {
+			super.save(directory);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#load
+	 */
+	@Override
+	public void load(Path directory) throws IOException {
+		lock.lockReadWrite();
+		try {
+			super.load(directory);
+		} finally {
+			lock.unlockReadWrite();
+		}
 	}
 
 	/*
 	 * @see InvertedIndex#exactSearch
 	 */
 	@Override
-	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords) {
+	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords, int k) {
 		lock.lockReadOnly();
 		try {
-			return super.exactSearch(queryWords);
+			return super.exactSearch(queryWords, k);
 		} finally {
 			lock.unlockReadOnly();
 		}
@@ -109,14 +242,53 @@ public class ThreadSafeIndex extends InvertedIndex {
 	 * @see InvertedIndex#partialSearch
 	 */
 	@Override
-	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords) {
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords, int k) {
+		lock.lockReadOnly();
+		try {
+			return super.partialSearch(queryWords, k);
+		} finally {
+			lock.unlockReadOnly();
+		}
+
+	}
+
+	/*
+	 * @see InvertedIndex#fuzzySearch
+	 */
+	@Override
+	public ArrayList<SearchResult> fuzzySearch(TreeSet<String> queryWords, int distance, int k) {
 		lock.lockReadOnly();
 		try {
-			return super.partialSearch(queryWords);
+			return super.fuzzySearch(queryWords, distance, k);
 		} finally {
 			lock.unlockReadOnly();
 		}
+	}
 
+	/*
+	 * @see InvertedIndex#phraseSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> phraseSearch(PhraseQuery query, boolean exact, int k) {
+		lock.lockReadOnly();
+		try {
+			return super.phraseSearch(query, exact, k);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/*
+	 * @see InvertedIndex#booleanSearch
+	 */
+	@Override
+	public ArrayList<SearchResult> booleanSearch(BooleanQuery query, boolean exact, int k) {
+		lock.lockReadOnly();
+		try {
+			return super.booleanSearch(query, exact, k);
+		} finally {
+			lock.unlockReadOnly();
+		}
 	}
 
 	/*
@@ -170,4 +342,45 @@ public class ThreadSafeIndex extends InvertedIndex {
 			lock.unlockReadOnly();
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Runs {@link ThreadSafeIndex#purge()} whenever asked to.
+	 */
+	private class Purger extends Thread {
+		private boolean requested;
+
+		public Purger() {
+			super("IndexPurger");
+			this.requested = false;
+			setDaemon(true);
+		}
+
+		/**
+		 * Asks for a purge. Requests made while a purge is waiting to start are
+		 * combined.
+		 */
+		public synchronized void request() {
+			requested = true;
+			this.notifyAll();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				synchronized (this) {
+					while (!requested) {
+						try {
+							this.wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+					requested = false;
+				}
+				log.debug("Purging deleted locations");
+				purge();
+			}
+		}
+	}
+}
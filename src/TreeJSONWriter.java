@@ -29,6 +29,8 @@ public class TreeJSONWriter {
 
 	/**
 	 * Writes the element surrounded by quotes using the provided {@link Writer}.
+	 * Quotes and backslashes in the element, such as those of a phrase query, are
+	 * escaped.
 	 *
 	 * @param element the element to quote
 	 * @param writer  the writer to use
@@ -36,7 +38,17 @@ public class TreeJSONWriter {
 	 */
 	public static void quote(String element, Writer writer) throws IOException {
 		writer.write('"');
-		writer.write(element);
+		if (element.indexOf('"') < 0 && element.indexOf('\\') < 0) {
+			writer.write(element);
+		} else {
+			for (int i = 0; i < element.length(); i++) {
+				char c = element.charAt(i);
+				if (c == '"' || c == '\\') {
+					writer.write('\\');
+				}
+				writer.write(c);
+			}
+		}
 		writer.write('"');
 	}
 
@@ -189,27 +201,109 @@ public class TreeJSONWriter {
 
 	}
 
+	/**
+	 * Writes the posting list formatted as a pretty JSON array of numbers using
+	 * the provided {@link Writer} and indentation level. An empty list is written
+	 * as {@code []}.
+	 *
+	 * @param elements the positions to convert to JSON
+	 * @param writer   the writer to use
+	 * @param level    the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asArray(TreeSet, Writer, int)
+	 */
+	public static void asArray(PostingList elements, Writer writer, int level) throws IOException {
+		int[] positions = elements.toArray();
+		if (positions.length == 0) {
+			writer.write("[]");
+			return;
+		}
+		writer.write('[');
+		writer.write(System.lineSeparator());
+
+		for (int i = 0; i < positions.length - 1; i++) {
+			indent(level + 1, writer);
+			writer.write(Integer.toString(positions[i]));
+			writer.write(',');
+			writer.write(System.lineSeparator());
+		}
+		indent(level + 1, writer);
+		writer.write(Integer.toString(positions[positions.length - 1]));
+		writer.write(System.lineSeparator());
+		indent(level, writer);
+		writer.write(']');
+	}
+
+	/**
+	 * Writes the postings of a word as a nested pretty JSON object of locations to
+	 * positions, with the locations in sorted order, using the provided
+	 * {@link Writer} and indentation level.
+	 *
+	 * @param elements  the postings to convert to JSON
+	 * @param documents the table to resolve location ids with
+	 * @param ranks     the sorted rank of every location id
+	 * @param writer    the writer to use
+	 * @param level     the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asNestedObject(TreeMap, Writer, int)
+	 * @see #asArray(PostingList, Writer, int)
+	 * @see DocumentTable#ranks()
+	 */
+	public static void asPostingObject(TermPostings elements, DocumentTable documents, int[] ranks, Writer writer,
+			int level) throws IOException {
+		if (elements.size() > 0) {
+			int[] order = elements.order(ranks);
+			writer.write('{');
+			writer.write(System.lineSeparator());
+
+			for (int i = 0; i < order.length - 1; i++) {
+				indent(level + 1, writer);
+				quote(documents.location(elements.document(order[i])), writer);
+				writer.write(':');
+				writer.write(' ');
+				asArray(elements.positions(order[i]), writer, level + 1);
+				writer.write(',');
+				writer.write(System.lineSeparator());
+			}
+			int last = order[order.length - 1];
+			indent(level + 1, writer);
+			quote(documents.location(elements.document(last)), writer);
+			writer.write(':');
+			writer.write(' ');
+			asArray(elements.positions(last), writer, level + 1);
+			writer.write(System.lineSeparator());
+			writer.write('}');
+		} else {
+			writer.write('{');
+			writer.write(System.lineSeparator());
+			writer.write('}');
+		}
+	}
+
 	/**
 	 * Takes the whole index map of elements and writes them in Pretty Json format
 	 * to the provided output file
 	 * 
 	 * @param elements
+	 * @param documents
 	 * @param writer
 	 * @throws IOException
 	 */
-	public static void asDoubleNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements, Writer writer)
-			throws IOException {
+	public static void asDoubleNestedObject(TreeMap<String, TermPostings> elements, DocumentTable documents,
+			Writer writer) throws IOException {
 		int level = 0;
 		if (elements.isEmpty() != true) {
+			int[] ranks = documents.ranks();
 			writer.write('{');
 			writer.write(System.lineSeparator());
-			for (Entry<String, TreeMap<String, TreeSet<Integer>>> entry : elements.headMap(elements.lastKey())
-					.entrySet()) {
+			for (Entry<String, TermPostings> entry : elements.headMap(elements.lastKey()).entrySet()) {
 				indent(level + 1, writer);
 				quote(entry.getKey().toString(), writer);
 				writer.write(':');
 				writer.write(' ');
-				asNestedObject(entry.getValue(), writer, level + 1);
+				asPostingObject(entry.getValue(), documents, ranks, writer, level + 1);
 				writer.write(',');
 				writer.write(System.lineSeparator());
 			}
@@ -217,7 +311,7 @@ public class TreeJSONWriter {
 			quote(elements.lastKey().toString(), writer);
 			writer.write(':');
 			writer.write(' ');
-			asNestedObject(elements.get(elements.lastKey()), writer, level + 1);
+			asPostingObject(elements.get(elements.lastKey()), documents, ranks, writer, level + 1);
 			writer.write(System.lineSeparator());
 			writer.write('}');
 		} else {
@@ -310,15 +404,16 @@ public class TreeJSONWriter {
 	/**
 	 * Returns the map of elements formatted as a pretty JSON object.
 	 *
-	 * @param elements the elements to convert to JSON
+	 * @param elements  the elements to convert to JSON
+	 * @param documents the table to resolve location ids with
 	 * @return {@link String} containing the elements in pretty JSON format
 	 *
 	 * @see #asObject(TreeMap, Writer, int)
 	 */
-	public static String asDoubleNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements) {
+	public static String asDoubleNestedObject(TreeMap<String, TermPostings> elements, DocumentTable documents) {
 		try {
 			StringWriter writer = new StringWriter();
-			asDoubleNestedObject(elements, writer);
+			asDoubleNestedObject(elements, documents, writer);
 			return writer.toString();
 		} catch (IOException e) {
 			return null;
@@ -329,16 +424,17 @@ public class TreeJSONWriter {
 	 * Writes the map of elements formatted as a pretty JSON object to the specified
 	 * file.
 	 *
-	 * @param elements the elements to convert to JSON
-	 * @param path     the path to the file write to output
+	 * @param elements  the elements to convert to JSON
+	 * @param documents the table to resolve location ids with
+	 * @param path      the path to the file write to output
 	 * @throws IOException if the writer encounters any issues
 	 *
 	 * @see #asObject(TreeMap, Writer, int)
 	 */
-	public static void asDoubleNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements, Path path)
-			throws IOException {
+	public static void asDoubleNestedObject(TreeMap<String, TermPostings> elements, DocumentTable documents,
+			Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			asDoubleNestedObject(elements, writer);
+			asDoubleNestedObject(elements, documents, writer);
 		}
 	}
 
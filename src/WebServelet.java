@@ -5,7 +5,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.text.StringEscapeUtils;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -25,9 +24,13 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 @SuppressWarnings("serial")
 public class WebServelet extends HttpServlet {
+	/** The most results shown for a query */
+	public static final int MAX_RESULTS = 50;
+
 	private ConcurrentLinkedQueue<String> results;
 	private TreeSet<String> information;
 	private static final ThreadSafeIndex index = WebServer.index;
+	private static final QueryCache cache = WebServer.cache;
 	private static final CrawlerThreaded crawler = WebServer.crawler;
 
 	public WebServelet() {
@@ -118,7 +121,7 @@ public class WebServelet extends HttpServlet {
 		out.printf("				  <label class=\"label\">Query</label>%n");
 		out.printf("				  <div class=\"control\">%n");
 		out.printf(
-				"				    <textarea class=\"textarea\" name=\"%s\" placeholder=\"Enter your Query here (exact) - for exact search or(private) for private search.\"></textarea>%n",
+				"				    <textarea class=\"textarea\" name=\"%s\" placeholder=\"Enter your Query here (exact) - for exact search or(private) for private search, (fuzzy) or (fuzzy2) to allow one or two typos per word, and * in a word to match any letters. Use &quot;quotes&quot; for phrases, NEAR/k for words within k of each other, and AND, OR and NOT, grouped with parentheses, to combine words.\"></textarea>%n",
 				"query");
 		out.printf("				  </div>%n");
 		out.printf("				</div>%n");
@@ -197,11 +200,50 @@ public class WebServelet extends HttpServlet {
 	 * @param exact
 	 */
 	private void searcher(String query, boolean exact) {
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		searcher(query, exact, 0);
+	}
+
+	/**
+	 * Searches the inverted index for a given query, allowing typos in the words of
+	 * an ordinary query
+	 * 
+	 * @param query
+	 * @param exact
+	 * @param distance the most edits allowed, or 0 to not search fuzzily
+	 */
+	private void searcher(String query, boolean exact, int distance) {
+		// the query was escaped for display, the quotes of a phrase need unescaping
+		String line = StringEscapeUtils.unescapeHtml4(query);
+		BooleanQuery combined = BooleanQuery.parse(line);
+		PhraseQuery phrase = combined == null ? PhraseQuery.parse(line) : null;
+		if (combined != null || phrase != null) {
+			String mode = (combined != null ? "boolean " : "phrase ") + (exact ? "exact" : "partial");
+			ArrayList<SearchResult> found = cache.search(mode, combined != null ? combined.toString() : phrase.toString(),
+					MAX_RESULTS, () -> combined != null ? index.booleanSearch(combined, exact, MAX_RESULTS)
+							: index.phraseSearch(phrase, exact, MAX_RESULTS));
+			for (SearchResult res : found) {
+				String result = formatResults(res, query);
+				if (results.contains(result) == false) {
+					results.add(result);
+				}
+			}
+			return;
+		}
+		CachingStemmer stemmer = CachingStemmer.ENGLISH;
 		TreeSet<String> sortedWords = new TreeSet<>();
-		TextFileStemmer.stemLine(query, sortedWords, stemmer);
-		if (exact == true) {
-			ArrayList<SearchResult> temp = new ArrayList<SearchResult>(index.exactSearch(sortedWords));
+		TextFileStemmer.stemQuery(query, sortedWords, stemmer);
+		String words = String.join(" ", sortedWords);
+		if (distance > 0) {
+			for (SearchResult res : cache.search("fuzzy" + distance, words, MAX_RESULTS,
+					() -> index.fuzzySearch(sortedWords, distance, MAX_RESULTS))) {
+				String result = formatResults(res, query);
+				if (results.contains(result) == false) {
+					results.add(result);
+				}
+			}
+		} else if (exact == true) {
+			ArrayList<SearchResult> temp = cache.search("exact", words, MAX_RESULTS,
+					() -> index.exactSearch(sortedWords, MAX_RESULTS));
 			for (SearchResult res : temp) {
 				String result = formatResults(res, query);
 				if (results.contains(result) == false) {
@@ -209,7 +251,8 @@ public class WebServelet extends HttpServlet {
 				}
 			}
 		} else {
-			ArrayList<SearchResult> temp = new ArrayList<SearchResult>(index.partialSearch(sortedWords));
+			ArrayList<SearchResult> temp = cache.search("partial", words, MAX_RESULTS,
+					() -> index.partialSearch(sortedWords, MAX_RESULTS));
 			for (SearchResult res : temp) {
 				String result = formatResults(res, query);
 				results.add(result);
@@ -328,26 +371,34 @@ public class WebServelet extends HttpServlet {
 		query = StringEscapeUtils.escapeHtml4(query);
 		if (query != null) {
 			boolean check = false;
+			int distance = 0;
+			if (query.contains("(fuzzy2)") == true) {
+				query = query.replace("(fuzzy2)", "");
+				distance = 2;
+			} else if (query.contains("(fuzzy)") == true) {
+				query = query.replace("(fuzzy)", "");
+				distance = 1;
+			}
 			if (query.contains("(exact)") == true && check == false && query.contains("(private)") != true) {
 				query = query.replace("(exact)", "");
-				searcher(query, true);
+				searcher(query, true, distance);
 				check = true;
 			}
 			if (query.contains("(exact)") == true && check == false && query.contains("(private)") == true) {
 				query = query.replace("(exact)", "");
 				query = query.replace("(private)", "");
-				searcher(query, true);
+				searcher(query, true, distance);
 				check = true;
 				clearCookies(request, response);
 			}
 			if (query.contains("(private)") == true && check == false) {
 				query = query.replace("(private)", "");
-				searcher(query, false);
+				searcher(query, false, distance);
 				check = true;
 				clearCookies(request, response);
 			}
 			if (query.contains("(exact)") != true && query.contains("(private)") != true && check == false) {
-				searcher(query, false);
+				searcher(query, false, distance);
 				check = true;
 			}
 		}
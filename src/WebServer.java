@@ -8,6 +8,7 @@ public class WebServer {
 	public static final int PORT = 8080;
 	public static ThreadSafeIndex index;
 	public static CrawlerThreaded crawler;
+	public static QueryCache cache;
 
 	/**
 	 * Initializes the WebServer on a given index and crawler
@@ -16,8 +17,21 @@ public class WebServer {
 	 * @param crawler
 	 */
 	public WebServer(ThreadSafeIndex index, CrawlerThreaded crawler) {
+		this(index, crawler, new QueryCache(index));
+	}
+
+	/**
+	 * Initializes the WebServer on a given index and crawler, answering popular
+	 * queries from a cache of results
+	 * 
+	 * @param index
+	 * @param crawler
+	 * @param cache   the cache of results of the index
+	 */
+	public WebServer(ThreadSafeIndex index, CrawlerThreaded crawler, QueryCache cache) {
 		WebServer.index = index;
 		WebServer.crawler = crawler;
+		WebServer.cache = cache;
 	}
 
 	/**
@@ -31,6 +45,7 @@ public class WebServer {
 		// turn on sessions and set context
 		servletContext = new ServletContextHandler(ServletContextHandler.SESSIONS);
 		servletContext.setContextPath("/");
+		servletContext.addServlet(MetricsServelet.class, "/metrics");
 		servletContext.addServlet(WebServelet.class, "/");
 		// setup handler order
 		HandlerList handlers = new HandlerList();
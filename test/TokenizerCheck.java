@@ -0,0 +1,578 @@
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Checks that the single-pass tokenizer finds the same words as the regular
+ * expression and {@link java.text.Normalizer} pipeline it replaced, which is
+ * still available as {@link TextParser#split(String)} of
+ * {@link TextParser#clean(CharSequence)}. Compares:
+ *
+ * <ul>
+ * <li>{@link TextParser#parse(String)} and {@link TextTokenizer} fed in random
+ * pieces, over text with non-ASCII letters, combining marks, apostrophes and
+ * punctuation, unusual whitespace and {@code \r\n} line breaks, in an English
+ * and a Turkish locale</li>
+ * <li>{@link TextFileReader} over a small file that is read and a large file
+ * that is mapped, with a multi-byte character, a surrogate pair, a final sigma
+ * and a {@code \r\n} split by the end of a mapped window</li>
+ * <li>the ranges of {@link TextFileReader#split(FileChannel, long)} indexed on
+ * their own and shifted with {@link PostingList#shift(int)}, against the whole
+ * file indexed in order, and {@link PostingList#shift(int)} on open and sealed
+ * lists</li>
+ * </ul>
+ *
+ * Needs about 70MB of temporary disk space. Run with the classes and libraries
+ * of the project on the class path, for example:
+ *
+ * <pre>
+ * javac -encoding UTF-8 -cp "lib/*" -d bin src/*.java test/*.java
+ * java -cp "bin:lib/*" TokenizerCheck
+ * </pre>
+ *
+ * Exits with status 1 if any check fails.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class TokenizerCheck {
+
+	/** Text the tokenizer has to agree on */
+	private static final String[] CORPUS = {
+			"Hello, World! It's a dog's life.",
+			"don't stop \u2014 the \u201Cquoted\u201D words\u2026 (and [brackets]) {braces} <angles>",
+			"na\u00EFve caf\u00E9 r\u00E9sum\u00E9 \u00C5ngstr\u00F6m \u00D8resund",
+			"e\u0301cole n\u0303 a\u0308\u0301 combining\u0301\u0302 \u0301leading mark",
+			"first line\r\nsecond line\r\n\r\nthird\n\nfourth\r",
+			"one\rtwo\n\rthree",
+			"\u0391\u03A3 \u039F\u0394\u03A5\u03A3\u03A3\u0395\u03A5\u03A3 \u03C3\u03BF\u03C6\u03CC\u03C2 \u03A3\u0399\u03A3\u03A5\u03A6\u039F\u03A3. \u03A3",
+			"\u00A0nbsp lead\u00A0inside",
+			"\u3000ideographic\u3000space",
+			"\u2003em space first",
+			"line\u2028separator paragraph\u2029separator next\u0085line",
+			"\u0130stanbul D\u0130YARBAKIR \u0131 I iI I\u0130",
+			"\uFB01ne \uFB02ow \u01C5emal \u01C4",
+			"Stra\u00DFe STRASSE \u1E9E",
+			"123 4.5 -x- _under_score e-mail o'clock rock'n'roll",
+			"\u4E2D\u6587 \u65E5\u672C\u8A9E\u306E\u30C6\u30AD\u30B9\u30C8 \uD55C\uAD6D\uC5B4",
+			"\u0BA4\u0BAE\u0BBF\u0BB4\u0BCD \u0B95\u0BCD \u0939\u093F\u0928\u094D\u0926\u0940",
+			"\uD835\uDC00\uD835\uDC01\uD835\uDC02 \uD835\uDD18\uD835\uDD2B x\uD835\uDC00y",
+			"co\u00ADoperate zero\u200Bwidth joiner\u200Dhere",
+			"",
+			"   ",
+			"\t\n\u000B\f\r",
+			"\u001Cfile\u001Dgroup\u001Erecord\u001Funit",
+			"tab\tseparated\twords",
+			"MiXeD CaSe WORDS"
+	};
+
+	/** Characters random text is made of */
+	private static final String POOL = "aZ I\u0130\u0131i\t\n\r \u00A0\u2003\u0085\u3000\u00E9\u00C9\u0301\u0307\u0345\u03A3\u03C3\u03C2\u0391\u4E2D\u00DF\uD835\uDC00\u1E9E123.,'-\u01C5\uFB01\u00AD\u200B\u001C\u0B95\u0BCD";
+
+	/** The length of each line of the filler of the large file */
+	private static final int LINE = 100;
+
+	/** The offsets of the ranges of the large file whose windows end on a tricky spot */
+	private static final long[] STARTS = { 0, 10 * LINE, 20 * LINE, 30 * LINE };
+
+	/** The number of checks that failed */
+	private static int failed = 0;
+
+	/** The number of checks run */
+	private static int checked = 0;
+
+	/**
+	 * Runs every check.
+	 *
+	 * @param args unused
+	 * @throws IOException if unable to write or read the temporary files
+	 */
+	public static void main(String[] args) throws IOException {
+		Locale locale = Locale.getDefault();
+		Path directory = Files.createTempDirectory("tokenizer-check");
+		try {
+			Path small = directory.resolve("small.txt");
+			Files.writeString(small, String.join("\n", CORPUS));
+			for (Locale check : new Locale[] { Locale.ENGLISH, Locale.forLanguageTag("tr") }) {
+				Locale.setDefault(check);
+				REFERENCE.clear();
+				checkText();
+				checkFile(small, 0);
+			}
+			Locale.setDefault(locale);
+			REFERENCE.clear();
+			checkInvalid(directory);
+			checkRanges(small);
+			checkShift();
+
+			Path large = directory.resolve("large.txt");
+			writeLarge(large);
+			for (long start : STARTS) {
+				checkFile(large, start);
+			}
+			checkSplitFile(large);
+		} finally {
+			Locale.setDefault(locale);
+			try (var files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		}
+		System.out.printf("%d checks, %d failed%n", checked, failed);
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Compares the words of the corpus and of random text.
+	 */
+	private static void checkText() {
+		Random random = new Random(1);
+		for (String text : CORPUS) {
+			checkText(text, random);
+		}
+		for (int i = 0; i < 20_000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(16);
+			for (int j = 0; j < length; j++) {
+				text.append(POOL.charAt(random.nextInt(POOL.length())));
+			}
+			checkText(text.toString(), random);
+		}
+		checkText(String.join("\r\n", CORPUS), random);
+	}
+
+	/**
+	 * Compares the words of a text as a whole and as lines fed in random pieces.
+	 *
+	 * @param text   the text
+	 * @param random chooses the pieces
+	 */
+	private static void checkText(String text, Random random) {
+		String[] expected = TextParser.split(TextParser.clean(text));
+		String[] found = TextParser.parse(text);
+		check(Arrays.equals(expected, found), "parse", text, Arrays.toString(expected), Arrays.toString(found));
+
+		StringBuilder lines = new StringBuilder();
+		try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				for (String word : reference(line)) {
+					lines.append(word).append(' ');
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		StringBuilder pieces = new StringBuilder();
+		Consumer<TextTokenizer> consumer = word -> pieces.append(word).append(' ');
+		TextTokenizer tokenizer = new TextTokenizer(true);
+		char[] chars = text.toCharArray();
+		int start = 0;
+		while (start < chars.length) {
+			int end = Math.min(chars.length, start + 1 + random.nextInt(8));
+			tokenizer.add(chars, start, end, consumer);
+			start = end;
+		}
+		tokenizer.end(consumer);
+		check(lines.toString().equals(pieces.toString()), "lines", text, lines.toString(), pieces.toString());
+	}
+
+	/**
+	 * Compares the words of a file from an offset to its end as found by
+	 * {@link TextFileReader} and by reading its lines.
+	 *
+	 * @param path  the file
+	 * @param start the offset of the start of a line
+	 * @throws IOException if unable to read the file
+	 */
+	private static void checkFile(Path path, long start) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+				FileChannel reference = FileChannel.open(path, StandardOpenOption.READ)) {
+			reference.position(start);
+			compare(path.getFileName() + " from " + start, reader(reference),
+					consumer -> TextFileReader.tokenize(channel, start, channel.size(), consumer));
+		}
+	}
+
+	/**
+	 * Checks that bytes that are not valid UTF-8 are reported like the line reader
+	 * reports them.
+	 *
+	 * @param directory the directory to write files to
+	 * @throws IOException if unable to write the files
+	 */
+	private static void checkInvalid(Path directory) throws IOException {
+		byte[][] invalid = { { 'a', ' ', (byte) 0xC3, 'b' }, { 'a', ' ', (byte) 0xE2, (byte) 0x82 },
+				{ (byte) 0xFF, '\n' } };
+		for (int i = 0; i < invalid.length; i++) {
+			Path path = directory.resolve("invalid" + i + ".txt");
+			Files.write(path, invalid[i]);
+			boolean expected = false;
+			try (BufferedReader reader = Files.newBufferedReader(path)) {
+				while (reader.readLine() != null) {
+					continue;
+				}
+			} catch (IOException e) {
+				expected = true;
+			}
+			boolean found = false;
+			try {
+				TextFileReader.tokenize(path, word -> {
+				});
+			} catch (IOException e) {
+				found = true;
+			}
+			check(expected && found, "invalid", path.getFileName().toString(), "exception", found ? "exception" : "none");
+		}
+	}
+
+	/**
+	 * Checks the ranges a file is split into for every range length from a single
+	 * byte up. The words of the ranges must be the words of the whole file, and
+	 * their indexes shifted and merged in order must be the index of the whole
+	 * file.
+	 *
+	 * @param path the file
+	 * @throws IOException if unable to read the file
+	 */
+	private static void checkRanges(Path path) throws IOException {
+		InvertedIndex whole = new InvertedIndex();
+		InvertedIndexBuilder.addFile(path, whole);
+		byte[] bytes = Files.readAllBytes(path);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			for (long length : new long[] { 1, 2, 7, 33, 100, 1000, channel.size() }) {
+				long[] offsets = TextFileReader.split(channel, length);
+				boolean aligned = offsets[0] == 0 && offsets[offsets.length - 1] == channel.size();
+				for (int i = 1; i < offsets.length - 1 && aligned; i++) {
+					aligned = offsets[i] > offsets[i - 1] && offsets[i] < channel.size()
+							&& bytes[(int) offsets[i] - 1] == '\n';
+				}
+				check(aligned, "split", "length " + length, "ranges after line breaks", Arrays.toString(offsets));
+
+				try (FileChannel reference = FileChannel.open(path, StandardOpenOption.READ)) {
+					compare("ranges of " + length, reader(reference), consumer -> {
+						for (int i = 0; i < offsets.length - 1; i++) {
+							TextFileReader.tokenize(channel, offsets[i], offsets[i + 1], consumer);
+						}
+					});
+				}
+
+				InvertedIndex merged = new InvertedIndex();
+				for (int i = 0; i < offsets.length - 1; i++) {
+					InvertedIndex range = new InvertedIndex();
+					InvertedIndexBuilder.addRange(channel, offsets[i], offsets[i + 1], path.toString(), range);
+					int id = merged.documents().id(path.toString());
+					if (id >= 0) {
+						int offset = merged.documents().wordCount(id);
+						for (TermPostings postings : range.terms().values()) {
+							for (int j = 0; j < postings.size(); j++) {
+								postings.positions(j).shift(offset);
+							}
+						}
+					}
+					merged.addAll(range);
+				}
+				String difference = difference(whole, merged);
+				check(difference == null, "merged ranges", "length " + length, "same index", difference);
+			}
+		}
+	}
+
+	/**
+	 * Checks that a large file indexed in parallel ranges has the same index as
+	 * when indexed in order.
+	 *
+	 * @param path the file, at least {@link InvertedIndexBuilderThread#SPLIT_THRESHOLD}
+	 *             bytes
+	 * @throws IOException if unable to read the file
+	 */
+	private static void checkSplitFile(Path path) throws IOException {
+		check(Files.size(path) >= InvertedIndexBuilderThread.SPLIT_THRESHOLD, "split file", path.toString(),
+				"large enough to split", Long.toString(Files.size(path)));
+		InvertedIndex whole = new InvertedIndex();
+		InvertedIndexBuilder.addFile(path, whole);
+		InvertedIndex split = new InvertedIndex();
+		InvertedIndexBuilderThread.addFile(path, split);
+		String difference = difference(whole, split);
+		check(difference == null, "split file", path.getFileName().toString(), "same index", difference);
+	}
+
+	/**
+	 * Checks shifting open and sealed posting lists, including shifts that change
+	 * the length of the first encoded delta.
+	 */
+	private static void checkShift() {
+		int[][] lists = { { 1 }, { 1, 2, 3 }, { 100, 130, 1000 }, { 127 }, { 1, 16384, 16385 } };
+		int[] offsets = { 0, 1, 27, 28, 16383, 1 << 21 };
+		for (int[] values : lists) {
+			for (int offset : offsets) {
+				int[] expected = Arrays.stream(values).map(value -> value + offset).toArray();
+				for (boolean sealed : new boolean[] { false, true }) {
+					PostingList list = new PostingList();
+					for (int value : values) {
+						list.add(value);
+					}
+					if (sealed) {
+						list.seal();
+					}
+					list.shift(offset);
+					boolean same = Arrays.equals(expected, list.toArray()) && list.size() == expected.length
+							&& list.first() == expected[0] && list.last() == expected[expected.length - 1]
+							&& list.isSealed() == sealed;
+					for (int value : expected) {
+						same &= list.contains(value);
+					}
+					same &= !list.contains(expected[0] - 1) || Arrays.binarySearch(expected, expected[0] - 1) >= 0;
+					if (sealed) {
+						same &= Arrays.equals(PostingList.encode(expected, expected.length), list.encoded());
+					}
+					list.add(expected[expected.length - 1] + 1);
+					same &= list.last() == expected[expected.length - 1] + 1 && list.size() == expected.length + 1;
+					check(same, "shift", Arrays.toString(values) + (sealed ? " sealed" : " open") + " by " + offset,
+							Arrays.toString(expected), Arrays.toString(list.toArray()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a file just larger than a mapped window. Its first lines are filler of
+	 * a fixed length, so {@link #STARTS} are the starts of lines, and the window
+	 * of a range from each start ends on a different tricky spot: within a
+	 * multi-byte character, within a surrogate pair, between a capital sigma and
+	 * the letters before it, and between a {@code \r} and its {@code \n}. The
+	 * corpus follows the tricky spots.
+	 *
+	 * @param path the file to write
+	 * @throws IOException if unable to write the file
+	 */
+	private static void writeLarge(Path path) throws IOException {
+		String[][] spots = {
+				{ "word ab", "\u4E2D", "cd more\n" },
+				{ "x ", "\uD835\uDC00", "\uD835\uDC01c\n" },
+				{ "\u039F\u0394\u03A5", "\u03A3", " \u0391\u03A3\n" },
+				{ "line end", "\r\n", "next line\n" }
+		};
+		byte[][] filler = new byte[64][];
+		Random random = new Random(2);
+		for (int i = 0; i < filler.length; i++) {
+			StringBuilder line = new StringBuilder();
+			while (line.toString().getBytes(StandardCharsets.UTF_8).length < LINE - 12) {
+				line.append(CORPUS[random.nextInt(3)].split(" ")[random.nextInt(3)]).append(' ');
+			}
+			while (line.toString().getBytes(StandardCharsets.UTF_8).length < LINE - 1) {
+				line.append('x');
+			}
+			filler[i] = (line + "\n").getBytes(StandardCharsets.UTF_8);
+		}
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+			long offset = 0;
+			for (int i = 0; i < spots.length; i++) {
+				byte[] before = spots[i][0].getBytes(StandardCharsets.UTF_8);
+				byte[] split = spots[i][1].getBytes(StandardCharsets.UTF_8);
+				long target = STARTS[i] + TextFileReader.WINDOW - before.length - split.length / 2;
+				while (offset + LINE <= target - 2) {
+					out.write(filler[(int) (offset / LINE % filler.length)]);
+					offset += LINE;
+				}
+				byte[] pad = new byte[(int) (target - offset)];
+				Arrays.fill(pad, (byte) 'y');
+				pad[pad.length - 1] = '\n';
+				out.write(pad);
+				for (String part : spots[i]) {
+					byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+					out.write(bytes);
+					offset += bytes.length;
+				}
+				offset += pad.length;
+			}
+			out.write(String.join("\n", CORPUS).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Finds words and passes each to a consumer.
+	 */
+	@FunctionalInterface
+	private interface Tokenizing {
+		/**
+		 * Finds the words.
+		 *
+		 * @param consumer receives each word
+		 * @throws IOException if unable to read the words
+		 */
+		public void tokenize(Consumer<? super TextTokenizer> consumer) throws IOException;
+	}
+
+	/**
+	 * Compares the words found with the words of the lines of a reader, one word
+	 * at a time, so large files are not held in memory.
+	 *
+	 * @param name     the name of the check
+	 * @param reader   the reader of the expected lines
+	 * @param tokenize finds the words to check
+	 * @throws IOException if unable to read the words
+	 */
+	private static void compare(String name, BufferedReader reader, Tokenizing tokenize) throws IOException {
+		String[][] line = { new String[0] };
+		int[] next = { 0 };
+		long[] count = { 0 };
+		String[] mismatch = { null };
+		tokenize.tokenize(word -> {
+			String expected = nextWord(reader, line, next);
+			if (mismatch[0] == null && (expected == null || !expected.contentEquals(word))) {
+				mismatch[0] = "word " + count[0] + ": expected " + expected + ", found " + word;
+			}
+			count[0]++;
+		});
+		String extra = nextWord(reader, line, next);
+		if (mismatch[0] == null && extra != null) {
+			mismatch[0] = "word " + count[0] + ": expected " + extra + ", found the end";
+		}
+		reader.close();
+		check(mismatch[0] == null, "file", name, count[0] + " matching words", mismatch[0]);
+	}
+
+	/**
+	 * Returns the next expected word.
+	 *
+	 * @param reader the reader of the lines
+	 * @param line   holds the words of the current line
+	 * @param next   holds the index of the next word of the line
+	 * @return the word, or null if there are no words left
+	 */
+	private static String nextWord(BufferedReader reader, String[][] line, int[] next) {
+		try {
+			while (next[0] == line[0].length) {
+				String text = reader.readLine();
+				if (text == null) {
+					return null;
+				}
+				line[0] = reference(text);
+				next[0] = 0;
+			}
+			return line[0][next[0]++];
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns a reader of a file from the position of a channel that decodes
+	 * UTF-8 like {@link Files#newBufferedReader(Path)}.
+	 *
+	 * @param channel the open file
+	 * @return the reader
+	 */
+	private static BufferedReader reader(FileChannel channel) {
+		Reader reader = new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8.newDecoder());
+		return new BufferedReader(reader);
+	}
+
+	/** The words of each line seen, as the filler of the large file repeats */
+	private static final HashMap<String, String[]> REFERENCE = new HashMap<String, String[]>();
+
+	/**
+	 * Returns the words of a line as found by cleaning and splitting it with
+	 * regular expressions.
+	 *
+	 * @param line the line
+	 * @return the words
+	 */
+	private static String[] reference(String line) {
+		return REFERENCE.computeIfAbsent(line, text -> TextParser.split(TextParser.clean(text)));
+	}
+
+	/**
+	 * Describes the first difference between two indexes of the same files.
+	 *
+	 * @param expected the expected index
+	 * @param found    the index to check
+	 * @return the difference, or null if the indexes are the same
+	 */
+	private static String difference(InvertedIndex expected, InvertedIndex found) {
+		if (!expected.terms().keySet().equals(found.terms().keySet())) {
+			return "words differ: " + expected.terms().size() + " and " + found.terms().size() + " words";
+		}
+		for (Entry<String, TermPostings> entry : expected.terms().entrySet()) {
+			TermPostings a = entry.getValue();
+			TermPostings b = found.terms().get(entry.getKey());
+			if (a.size() != b.size()) {
+				return entry.getKey() + " is in " + a.size() + " and " + b.size() + " locations";
+			}
+			for (int i = 0; i < a.size(); i++) {
+				String location = expected.documents().location(a.document(i));
+				if (!location.equals(found.documents().location(b.document(i)))
+						|| !Arrays.equals(a.positions(i).toArray(), b.positions(i).toArray())) {
+					return entry.getKey() + " has different positions in " + location;
+				}
+			}
+		}
+		for (int i = 0; i < expected.documents().size(); i++) {
+			String location = expected.documents().location(i);
+			int id = found.documents().id(location);
+			if (id < 0 || expected.documents().wordCount(i) != found.documents().wordCount(id)) {
+				return location + " has a different word count";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Records the outcome of a check, printing it if it failed.
+	 *
+	 * @param passed   whether the check passed
+	 * @param name     the name of the check
+	 * @param input    what was checked
+	 * @param expected the expected outcome
+	 * @param found    the outcome found
+	 */
+	private static void check(boolean passed, String name, String input, String expected, String found) {
+		checked++;
+		if (!passed) {
+			failed++;
+			if (failed <= 20) {
+				System.out.printf("FAILED %s on %s%n  expected %s%n  found    %s%n", name, escape(input), escape(expected),
+						escape(found));
+			}
+		}
+	}
+
+	/**
+	 * Escapes the control and non-ASCII characters of text so it prints on any
+	 * console.
+	 *
+	 * @param text the text
+	 * @return the escaped text
+	 */
+	private static String escape(String text) {
+		if (text == null) {
+			return "null";
+		}
+		StringBuilder escaped = new StringBuilder();
+		for (char c : text.toCharArray()) {
+			escaped.append(c < 0x20 || c > 0x7E ? String.format("\\u%04x", (int) c) : String.valueOf(c));
+		}
+		return escaped.toString();
+	}
+}
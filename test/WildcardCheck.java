@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks wildcard search against a brute-force expansion of the dictionary, one
+ * char at a time. Terms are random over a small alphabet, so patterns
+ * share many grams, and include letters outside the Basic Multilingual Plane,
+ * whose surrogate pairs are split between grams. Compares the in-memory
+ * {@link KGramIndex}, the {@link KGramTable} of a {@link SealedSegment} and of a
+ * saved and loaded {@link MappedSegment}, and scanning a loaded index without
+ * its gram table.
+ *
+ * Run with the classes and libraries of the project on the class path, for
+ * example:
+ *
+ * <pre>
+ * javac -encoding UTF-8 -cp "lib/*" -d bin src/*.java test/*.java
+ * java -cp "bin:lib/*" WildcardCheck
+ * </pre>
+ *
+ * Exits with status 1 if any check fails.
+ *
+ * @author Rugved Mavidipalli
+ */
+public class WildcardCheck {
+
+	/** The letters of the random terms, with two outside the BMP */
+	private static final String[] LETTERS = { "a", "b", "c", "d", "e", "\u00E9", "\u4E2D", "\uD835\uDC1A",
+			"\uD840\uDC00" };
+
+	/** Patterns that must be checked whatever the random ones are */
+	private static final String[] PATTERNS = { "*bcb", "*aed*", "*dd", "a*", "*a", "*", "ab*e", "*\uD835\uDC1A*",
+			"*\uD840\uDC00", "\uD835\uDC1A*", "*\u4E2D\uD840\uDC00*", "*\uDC1A*", "*e\uD835*" };
+
+	/** The number of checks that failed */
+	private static int failed = 0;
+
+	/** The number of checks run */
+	private static int checked = 0;
+
+	/**
+	 * Runs every check.
+	 *
+	 * @param args unused
+	 * @throws IOException if unable to save or load the index
+	 */
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(5);
+		TreeSet<String> terms = new TreeSet<String>();
+		InvertedIndex memory = new InvertedIndex();
+		SegmentedIndex sealed = new SegmentedIndex();
+		for (int location = 0; location < 40; location++) {
+			InvertedIndex local = new InvertedIndex();
+			for (int position = 1; position <= 50; position++) {
+				String term = term(random);
+				terms.add(term);
+				memory.add(term, "file" + location, position);
+				local.add(term, "file" + location, position);
+			}
+			sealed.addAll(local);
+		}
+		sealed.seal();
+
+		Path directory = Files.createTempDirectory("wildcard-check");
+		try {
+			memory.save(directory);
+			InvertedIndex mapped = new InvertedIndex();
+			mapped.load(directory);
+			Files.delete(directory.resolve(IndexFile.GRAMS));
+			InvertedIndex scanned = new InvertedIndex();
+			scanned.load(directory);
+
+			ArrayList<String> patterns = new ArrayList<String>(List.of(PATTERNS));
+			ArrayList<String> all = new ArrayList<String>(terms);
+			for (int i = 0; i < 500; i++) {
+				patterns.add(pattern(all.get(random.nextInt(all.size())), random));
+			}
+			for (String pattern : patterns) {
+				TreeSet<String> expanded = expand(pattern, terms);
+				String expected = results(memory, expanded, false);
+				TreeSet<String> query = new TreeSet<String>(List.of(pattern));
+				check(expected, results(memory, query, false), "memory", pattern);
+				check(expected, results(sealed, query, false), "sealed", pattern);
+				check(expected, results(mapped, query, false), "mapped", pattern);
+				check(expected, results(scanned, query, false), "scanned", pattern);
+				check(expected, results(mapped, query, true), "mapped partial", pattern);
+			}
+		} finally {
+			try (var files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		}
+		System.out.printf("%d checks, %d failed%n", checked, failed);
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns a random term of one to six letters.
+	 *
+	 * @param random chooses the letters
+	 * @return the term
+	 */
+	private static String term(Random random) {
+		StringBuilder term = new StringBuilder();
+		int length = 1 + random.nextInt(6);
+		for (int i = 0; i < length; i++) {
+			term.append(LETTERS[random.nextInt(LETTERS.length)]);
+		}
+		return term.toString();
+	}
+
+	/**
+	 * Returns a pattern matching a term, made by replacing up to two ranges of its
+	 * chars with a *. A range may start or end within a surrogate pair.
+	 *
+	 * @param term   the term
+	 * @param random chooses the ranges
+	 * @return the pattern
+	 */
+	private static String pattern(String term, Random random) {
+		int start = random.nextInt(term.length() + 1);
+		int end = start + random.nextInt(term.length() - start + 1);
+		String pattern = term.substring(0, start) + "*" + term.substring(end);
+		if (random.nextBoolean()) {
+			int star = random.nextInt(pattern.length() + 1);
+			pattern = pattern.substring(0, star) + "*" + pattern.substring(star);
+		}
+		return pattern.replaceAll("\\*+", "*");
+	}
+
+	/**
+	 * Returns the terms a pattern matches, checking every term.
+	 *
+	 * @param pattern the pattern
+	 * @param terms   every term
+	 * @return the matching terms
+	 */
+	private static TreeSet<String> expand(String pattern, TreeSet<String> terms) {
+		TreeSet<String> found = new TreeSet<String>();
+		for (String term : terms) {
+			if (matches(pattern, term)) {
+				found.add(term);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Checks if a pattern matches a term one char at a time, so a * can match half
+	 * of a surrogate pair, by filling in which prefixes of the pattern match which
+	 * prefixes of the term.
+	 *
+	 * @param pattern the pattern
+	 * @param term    the term
+	 * @return true if the whole term matches the whole pattern
+	 */
+	private static boolean matches(String pattern, String term) {
+		boolean[] previous = new boolean[term.length() + 1];
+		previous[0] = true;
+		for (int i = 0; i < pattern.length(); i++) {
+			boolean[] current = new boolean[term.length() + 1];
+			char p = pattern.charAt(i);
+			current[0] = p == '*' && previous[0];
+			for (int j = 1; j <= term.length(); j++) {
+				if (p == '*') {
+					current[j] = previous[j] || current[j - 1];
+				} else {
+					current[j] = previous[j - 1] && term.charAt(j - 1) == p;
+				}
+			}
+			previous = current;
+		}
+		return previous[term.length()];
+	}
+
+	/**
+	 * Returns the results of a search as text.
+	 *
+	 * @param index   the index
+	 * @param query   the query words
+	 * @param partial whether to search by prefix
+	 * @return the location and count of each result
+	 */
+	private static String results(InvertedIndex index, TreeSet<String> query, boolean partial) {
+		StringBuilder text = new StringBuilder();
+		List<SearchResult> results = partial ? index.partialSearch(query, IndexSearcher.ALL)
+				: index.exactSearch(query, IndexSearcher.ALL);
+		for (SearchResult result : results) {
+			text.append(result.location()).append(':').append(result.queryCount()).append(' ');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Records the outcome of a check, printing it if it failed.
+	 *
+	 * @param expected the expected results
+	 * @param found    the results found
+	 * @param name     the index searched
+	 * @param pattern  the pattern searched for
+	 */
+	private static void check(String expected, String found, String name, String pattern) {
+		checked++;
+		if (!expected.equals(found)) {
+			failed++;
+			if (failed <= 20) {
+				System.out.printf("FAILED %s on %s%n  expected %s%n  found    %s%n", name, escape(pattern), expected,
+						found);
+			}
+		}
+	}
+
+	/**
+	 * Escapes the non-ASCII chars of a pattern so it prints on any console.
+	 *
+	 * @param text the pattern
+	 * @return the escaped pattern
+	 */
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder();
+		for (char c : text.toCharArray()) {
+			escaped.append(c > 0x7E ? String.format("\\u%04x", (int) c) : String.valueOf(c));
+		}
+		return escaped.toString();
+	}
+}